@@ -0,0 +1,1301 @@
+package ch.epfl.flamemaker.flame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.LegacyRandomSource;
+import ch.epfl.flamemaker.random.RandomSource;
+import ch.epfl.flamemaker.random.SplittableRandomSource;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Classe de mesures de performance du calcul des fractales. Chaque mesure est
+ * précédée d'un préchauffage pour laisser le compilateur JIT optimiser le code
+ * mesuré. Les noms des mesures à lancer sont passés en argument (toutes les
+ * mesures sont lancées si aucun argument n'est donné).
+ *
+ * @author Hadrien Milano				<hadrien.milano@epfl.ch>
+ * @author Christophe Tafani-Dereeper 	<christophe.tafani-dereeper@epfl.ch>
+ */
+public class FlameBenchmark {
+
+	/**
+	 * Le nombre de tirages effectués pour mesurer un générateur aléatoire
+	 */
+	private static final int RANDOM_DRAWS = 200000000;
+
+	/**
+	 * La palette utilisée pour mesurer la coloration
+	 */
+	private static final Palette PALETTE = new InterpolatedPalette(
+			Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+
+	/**
+	 * Point d'entrée des mesures
+	 *
+	 * @param args
+	 *            Les noms des mesures à lancer
+	 */
+	public static void main(String[] args) throws IOException {
+		List<String> benchmarks = Arrays.asList(args);
+		boolean all = benchmarks.isEmpty();
+
+		if (all || benchmarks.contains("random")) {
+			benchmarkRandom();
+		}
+		if (all || benchmarks.contains("accumulator")) {
+			benchmarkAccumulator();
+		}
+		if (all || benchmarks.contains("mapped")) {
+			benchmarkMapped();
+		}
+		if (all || benchmarks.contains("tiled")) {
+			benchmarkTiled();
+		}
+		if (all || benchmarks.contains("binning")) {
+			benchmarkBinning();
+		}
+		if (all || benchmarks.contains("layout")) {
+			benchmarkLayout();
+		}
+		if (all || benchmarks.contains("colors")) {
+			benchmarkColors();
+		}
+		if (all || benchmarks.contains("counters")) {
+			benchmarkCounters();
+		}
+		if (all || benchmarks.contains("sparse")) {
+			benchmarkSparse();
+		}
+		if (all || benchmarks.contains("merge")) {
+			benchmarkMerge();
+		}
+		if (all || benchmarks.contains("concurrent")) {
+			benchmarkConcurrent();
+		}
+		if (all || benchmarks.contains("reseed")) {
+			benchmarkReseed();
+		}
+		if (all || benchmarks.contains("variations")) {
+			benchmarkVariations();
+		}
+		if (all || benchmarks.contains("fastmath")) {
+			benchmarkFastMath();
+		}
+		if (all || benchmarks.contains("lanes")) {
+			benchmarkLanes();
+		}
+		if (all || benchmarks.contains("vector")) {
+			benchmarkVector();
+		}
+		if (all || benchmarks.contains("specialize")) {
+			benchmarkSpecialize();
+		}
+	}
+
+	/**
+	 * Compare les générateurs aléatoires : débit brut de nextInt(3), puis
+	 * temps de calcul des fractales de référence avec chacun d'eux
+	 */
+	private static void benchmarkRandom() {
+		System.out.println("== Générateurs aléatoires ==");
+
+		String[] names = { "java.util.Random", "SplittableRandom",
+				"xoroshiro128++" };
+
+		for (int i = 0; i < names.length; i++) {
+			// Préchauffage
+			drawInts(newRandom(i), RANDOM_DRAWS / 10);
+
+			long start = System.nanoTime();
+			int checksum = drawInts(newRandom(i), RANDOM_DRAWS);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%-18s nextInt(3) : %7.1f M tirages/s (%d)%n",
+					names[i], RANDOM_DRAWS / seconds / 1e6, checksum);
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			System.out.printf("%-18s turbulence : %5d ms, shark fin : %5d ms%n",
+					names[i],
+					timeCompute(FlamePPMMaker.turbulence(),
+							FlamePPMMaker.TURBULENCE_FRAME, newRandom(i)),
+					timeCompute(FlamePPMMaker.sharkFin(),
+							FlamePPMMaker.SHARK_FIN_FRAME, newRandom(i)));
+		}
+	}
+
+	/**
+	 * Mesure l'empreinte mémoire d'un bâtisseur d'accumulateur en 4K et en 8K,
+	 * le débit de hit() pour des points uniformément répartis dans le cadre
+	 * (pire cas pour les caches du processeur), le temps de construction de
+	 * l'accumulateur et celui de sa coloration. Nécessite un tas d'environ 2 Go (-Xmx2g).
+	 */
+	private static void benchmarkAccumulator() {
+		System.out.println("== Accumulateur ==");
+
+		int[][] sizes = { { 3840, 2160 }, { 7680, 4320 } };
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+
+		for (int[] size : sizes) {
+			long before = usedMemory();
+			FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+					frame, size[0], size[1]);
+			long footprint = usedMemory() - before;
+
+			int hits = 100000000;
+			RandomSource random = new XoroshiroRandomSource(Flame.DEFAULT_SEED);
+			double left = frame.left(), bottom = frame.bottom();
+			double width = frame.width(), height = frame.height();
+
+			// Préchauffage
+			for (int i = 0; i < hits / 10; i++) {
+				builder.hit(left + random.nextDouble() * width, bottom
+						+ random.nextDouble() * height, random.nextDouble());
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < hits; i++) {
+				builder.hit(left + random.nextDouble() * width, bottom
+						+ random.nextDouble() * height, random.nextDouble());
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			FlameAccumulator accumulator = builder.build();
+			long buildTime = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			int[] row = new int[accumulator.width()];
+			for (int r = 0; r < accumulator.height(); r++) {
+				accumulator.colorRow(PALETTE, Color.BLACK, r, row);
+			}
+			long colorTime = (System.nanoTime() - start) / 1000000;
+
+			System.out.printf(
+					"%dx%d : bâtisseur %4d Mo, hit() %6.1f M/s, build() %5d ms, coloration %5d ms%n",
+					size[0], size[1], footprint >> 20, hits / seconds / 1e6,
+					buildTime, colorTime);
+		}
+	}
+
+	/**
+	 * Compare le stockage dans le tas et le stockage projeté en mémoire en 4K,
+	 * puis calcule la fractale turbulence dans un accumulateur projeté de
+	 * 20000x20000 (4,8 Go sur le disque). Prévu pour être lancé avec un petit
+	 * tas (-Xmx256m) pour montrer que la taille du rendu n'en dépend plus.
+	 */
+	private static void benchmarkMapped() throws IOException {
+		System.out.println("== Accumulateur projeté en mémoire ==");
+
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		Flame flame = FlamePPMMaker.turbulence();
+		int[][] sizes = { { 3840, 2160 }, { 20000, 20000 } };
+
+		for (int[] size : sizes) {
+			for (int mapped = 0; mapped < 2; mapped++) {
+				if (mapped == 0
+						&& (long) size[0] * size[1] * 12 > Runtime.getRuntime()
+								.maxMemory() / 2) {
+					System.out.printf("%dx%d tas    : trop grand pour le tas%n",
+							size[0], size[1]);
+					continue;
+				}
+
+				long start = System.nanoTime();
+				FlameAccumulator.Builder builder = mapped == 0 ? new FlameAccumulator.Builder(
+						frame, size[0], size[1])
+						: new FlameAccumulator.Builder(frame, size[0], size[1],
+								(File) null);
+				long createTime = (System.nanoTime() - start) / 1000000;
+
+				long iterations = 50000000;
+				FlameWalker walker = new FlameWalker(flame, frame,
+						new XoroshiroRandomSource(Flame.DEFAULT_SEED), builder);
+
+				start = System.nanoTime();
+				walker.run(iterations);
+				double seconds = (System.nanoTime() - start) / 1e9;
+
+				FlameAccumulator accumulator = builder.build();
+
+				start = System.nanoTime();
+				int[] row = new int[accumulator.width()];
+				for (int r = 0; r < accumulator.height(); r++) {
+					accumulator.colorRow(PALETTE, Color.BLACK, r, row);
+				}
+				long colorTime = (System.nanoTime() - start) / 1000000;
+
+				System.out.printf(
+						"%dx%d %s : création %5d ms, %6.1f M itérations/s, coloration %6d ms, tas occupé %4d Mo%n",
+						size[0], size[1], mapped == 0 ? "tas   " : "projeté",
+						createTime, iterations / seconds / 1e6, colorTime,
+						usedMemory() >> 20);
+			}
+		}
+	}
+
+	/**
+	 * Calcule la fractale turbulence en 8000x8000 par tuiles de 1024 cases de
+	 * côté, avec des budgets mémoire de plus en plus petits, sur un fil
+	 * d'exécution puis sur tous les processeurs, et mesure le temps de
+	 * calcul, le nombre de bandes et le temps d'écriture de l'image (dans un
+	 * flot qui ignore les octets écrits).
+	 */
+	private static void benchmarkTiled() throws IOException {
+		System.out.println("== Rendu par tuiles ==");
+
+		int size = 8000, density = 2;
+		System.out.printf(
+				"7000x7000, densité 50 : %d itérations (%d en int)%n",
+				(long) 50 * 7000 * 7000, 50 * 7000 * 7000);
+
+		File directory = new File(System.getProperty("java.io.tmpdir"));
+		long[] budgets = { 1L << 30, 256L << 20, 64L << 20 };
+
+		int[] threadCounts = { 1, Runtime.getRuntime().availableProcessors() };
+		for (long budget : budgets) {
+			for (int threads : threadCounts) {
+				TiledFlameRenderer renderer = new TiledFlameRenderer(
+						FlamePPMMaker.turbulence(), FlamePPMMaker.TURBULENCE_FRAME,
+						size, size, 1024, directory);
+
+				long start = System.nanoTime();
+				int bands = renderer.render(renderer.iterations(density),
+						Flame.DEFAULT_SEED, budget, threads);
+				long renderTime = (System.nanoTime() - start) / 1000000;
+
+				start = System.nanoTime();
+				renderer.writePPM(PALETTE, Color.BLACK, new OutputStream() {
+					@Override
+					public void write(int b) {
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) {
+					}
+				});
+				long writeTime = (System.nanoTime() - start) / 1000000;
+				renderer.deleteTiles();
+
+				System.out.printf(
+						"budget %5d Mo, %2d fil(s) : %d bande(s), calcul %6d ms, écriture %6d ms%n",
+						budget >> 20, threads, bands, renderTime, writeTime);
+			}
+		}
+	}
+
+	/**
+	 * Mesure le débit de hit() selon la taille de l'accumulateur, avec et
+	 * sans regroupement des points par région : d'abord pour des points
+	 * uniformément répartis dans le cadre (pire cas), puis pour l'orbite de
+	 * la fractale turbulence (temps de calcul complet, itérations comprises).
+	 */
+	private static void benchmarkBinning() {
+		System.out.println("== Regroupement des points ==");
+
+		int[] sizes = { 512, 1024, 2048, 4096, 8192 };
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int hits = 50000000;
+
+		for (int size : sizes) {
+			double[] rates = new double[4];
+
+			for (int binning = 0; binning < 2; binning++) {
+				FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+						frame, size, size);
+				builder.setBinning(binning == 1);
+
+				// Préchauffage, puis mesure
+				uniformHits(builder, frame, hits / 10);
+				long start = System.nanoTime();
+				uniformHits(builder, frame, hits);
+				builder.build();
+				rates[binning] = hits / ((System.nanoTime() - start) / 1e9) / 1e6;
+
+				builder = new FlameAccumulator.Builder(frame, size, size);
+				builder.setBinning(binning == 1);
+				FlameWalker walker = new FlameWalker(FlamePPMMaker.turbulence(),
+						frame, new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+						builder);
+
+				walker.run(hits / 10);
+				start = System.nanoTime();
+				walker.run(hits);
+				builder.build();
+				rates[2 + binning] = hits / ((System.nanoTime() - start) / 1e9) / 1e6;
+			}
+
+			System.out.printf(
+					"%5dx%-5d uniforme : %5.1f -> %5.1f M/s, turbulence : %5.1f -> %5.1f M it/s%n",
+					size, size, rates[0], rates[1], rates[2], rates[3]);
+		}
+	}
+
+	/**
+	 * Compare les dispositions des cases en 4K et en 8K sur les fractales
+	 * shark fin et turbulence : débit de l'orbite (sans puis avec
+	 * regroupement des points) et temps de coloration de l'image entière.
+	 * Nécessite un tas d'environ 2 Go (-Xmx2g).
+	 */
+	private static void benchmarkLayout() {
+		System.out.println("== Disposition des cases ==");
+
+		int[][] sizes = { { 3840, 2160 }, { 7680, 4320 } };
+		Flame[] flames = { FlamePPMMaker.sharkFin(), FlamePPMMaker.turbulence() };
+		Rectangle[] frames = { FlamePPMMaker.SHARK_FIN_FRAME,
+				FlamePPMMaker.TURBULENCE_FRAME };
+		String[] names = { "shark fin", "turbulence" };
+		int iterations = 30000000;
+
+		for (int[] size : sizes) {
+			for (int f = 0; f < flames.length; f++) {
+				for (AccumulatorLayout layout : AccumulatorLayout.values()) {
+					double[] rates = new double[2];
+					long colorTime = 0;
+
+					for (int binning = 0; binning < 2; binning++) {
+						FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+								frames[f], size[0], size[1], layout);
+						builder.setBinning(binning == 1);
+						FlameWalker walker = new FlameWalker(flames[f],
+								frames[f], new XoroshiroRandomSource(
+										Flame.DEFAULT_SEED), builder);
+
+						// Préchauffage, puis mesure
+						walker.run(iterations / 10);
+						long start = System.nanoTime();
+						walker.run(iterations);
+						FlameAccumulator accumulator = builder.build();
+						rates[binning] = iterations
+								/ ((System.nanoTime() - start) / 1e9) / 1e6;
+
+						start = System.nanoTime();
+						int[] row = new int[accumulator.width()];
+						for (int r = 0; r < accumulator.height(); r++) {
+							accumulator.colorRow(PALETTE, Color.BLACK, r, row);
+						}
+						colorTime = (System.nanoTime() - start) / 1000000;
+					}
+
+					System.out.printf(
+							"%dx%d %-10s %-9s : %5.1f M it/s, regroupés %5.1f M it/s, coloration %5d ms%n",
+							size[0], size[1], names[f], layout, rates[0],
+							rates[1], colorTime);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compare les manières d'accumuler les index de couleur : empreinte
+	 * mémoire et débit en 4K (points uniformes puis orbite de la fractale
+	 * turbulence), puis écart entre les images obtenues avec chacune pour les
+	 * fractales de référence en 500x500 à une densité de 500. Nécessite un
+	 * tas d'environ 2 Go (-Xmx2g).
+	 */
+	private static void benchmarkColors() {
+		System.out.println("== Accumulation des couleurs ==");
+
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int hits = 50000000;
+
+		for (ColorAccumulation colors : ColorAccumulation.values()) {
+			long before = usedMemory();
+			FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+					frame, 3840, 2160, AccumulatorLayout.ROW_MAJOR, colors);
+			long footprint = usedMemory() - before;
+
+			uniformHits(builder, frame, hits / 10);
+			long start = System.nanoTime();
+			uniformHits(builder, frame, hits);
+			builder.build();
+			double uniform = hits / ((System.nanoTime() - start) / 1e9) / 1e6;
+
+			builder = new FlameAccumulator.Builder(frame, 3840, 2160,
+					AccumulatorLayout.ROW_MAJOR, colors);
+			FlameWalker walker = new FlameWalker(FlamePPMMaker.turbulence(),
+					frame, new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+					builder);
+			walker.run(hits / 10);
+			start = System.nanoTime();
+			walker.run(hits);
+			builder.build();
+			double orbit = hits / ((System.nanoTime() - start) / 1e9) / 1e6;
+
+			System.out.printf(
+					"%-12s 4K : bâtisseur %4d Mo, uniforme %5.1f M/s, turbulence %5.1f M it/s%n",
+					colors, footprint >> 20, uniform, orbit);
+		}
+
+		Flame[] flames = { FlamePPMMaker.sharkFin(), FlamePPMMaker.turbulence() };
+		Rectangle[] frames = { FlamePPMMaker.SHARK_FIN_FRAME,
+				FlamePPMMaker.TURBULENCE_FRAME };
+		String[] names = { "shark fin", "turbulence" };
+		int size = 500, density = 500;
+
+		for (int f = 0; f < flames.length; f++) {
+			FlameAccumulator.Builder[] builders = new FlameAccumulator.Builder[2];
+			for (ColorAccumulation colors : ColorAccumulation.values()) {
+				builders[colors.ordinal()] = new FlameAccumulator.Builder(
+						frames[f], size, size, AccumulatorLayout.ROW_MAJOR,
+						colors);
+				new FlameWalker(flames[f], frames[f], new XoroshiroRandomSource(
+						Flame.DEFAULT_SEED), builders[colors.ordinal()])
+						.run((long) density * size * size);
+			}
+
+			AccumulatorStorage mean = builders[0].storage();
+			AccumulatorStorage sum = builders[1].storage();
+			double maxIndexError = 0;
+			for (long i = 0; i < mean.size(); i++) {
+				maxIndexError = Math.max(maxIndexError,
+						Math.abs(mean.colorIndex(i) - sum.colorIndex(i)));
+			}
+
+			FlameAccumulator reference = builders[0].build();
+			FlameAccumulator tested = builders[1].build();
+			int[] expected = new int[size], actual = new int[size];
+			int maxChannelError = 0, differentPixels = 0;
+			for (int r = 0; r < size; r++) {
+				reference.colorRow(PALETTE, Color.BLACK, r, expected);
+				tested.colorRow(PALETTE, Color.BLACK, r, actual);
+				for (int x = 0; x < size; x++) {
+					if (expected[x] != actual[x]) {
+						differentPixels++;
+					}
+					for (int shift = 0; shift < 24; shift += 8) {
+						maxChannelError = Math.max(maxChannelError, Math
+								.abs((expected[x] >> shift & 0xFF)
+										- (actual[x] >> shift & 0xFF)));
+					}
+				}
+			}
+
+			System.out.printf(
+					"%-10s %dx%d, densité %d (max %d points) : écart d'index %.2e, %d pixel(s) différent(s), écart max %d/255%n",
+					names[f], size, size, density, builders[0].maxHit(),
+					maxIndexError, differentPixels, maxChannelError);
+		}
+	}
+
+	/**
+	 * Compare les compteurs de points en 4K (densité 10) et en 8K (densité
+	 * 3) sur les fractales shark fin et turbulence : mémoire occupée par le
+	 * bâtisseur une fois la fractale calculée, et débit de l'orbite.
+	 * Nécessite un tas d'environ 2 Go (-Xmx2g).
+	 */
+	private static void benchmarkCounters() {
+		System.out.println("== Compteurs de points ==");
+
+		int[][] sizes = { { 3840, 2160, 10 }, { 7680, 4320, 3 } };
+		Flame[] flames = { FlamePPMMaker.sharkFin(), FlamePPMMaker.turbulence() };
+		Rectangle[] frames = { FlamePPMMaker.SHARK_FIN_FRAME,
+				FlamePPMMaker.TURBULENCE_FRAME };
+		String[] names = { "shark fin", "turbulence" };
+		HitCounters[] counters = { HitCounters.INT, HitCounters.INT,
+				HitCounters.TIERED };
+		ColorAccumulation[] colors = { ColorAccumulation.RUNNING_MEAN,
+				ColorAccumulation.FLOAT_SUM, ColorAccumulation.FLOAT_SUM };
+
+		for (int[] size : sizes) {
+			for (int f = 0; f < flames.length; f++) {
+				for (int c = 0; c < counters.length; c++) {
+					long before = usedMemory();
+					FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+							frames[f], size[0], size[1],
+							AccumulatorLayout.ROW_MAJOR, colors[c], counters[c]);
+					FlameWalker walker = new FlameWalker(flames[f], frames[f],
+							new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+							builder);
+
+					long iterations = (long) size[2] * size[0] * size[1];
+					long start = System.nanoTime();
+					walker.run(iterations);
+					double rate = iterations
+							/ ((System.nanoTime() - start) / 1e9) / 1e6;
+					long footprint = usedMemory() - before;
+
+					System.out.printf(
+							"%dx%d %-10s %-6s %-12s : %5d Mo (%4.1f o/case), %5.1f M it/s, max %d points%n",
+							size[0], size[1], names[f], counters[c],
+							colors[c], footprint >> 20, (double) footprint
+									/ size[0] / size[1], rate,
+							builder.maxHit());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compare le stockage choisi automatiquement (creux au départ) à un
+	 * stockage dense, en 4K et en 8K, pour la fractale shark fin dans son
+	 * cadre habituel et dans un cadre trois fois plus grand (la fractale ne
+	 * couvre alors qu'une petite partie de l'image) : mémoire occupée,
+	 * débit de l'orbite, temps de construction et de coloration.
+	 * Nécessite un tas d'environ 2 Go (-Xmx2g).
+	 */
+	private static void benchmarkSparse() {
+		System.out.println("== Stockage creux ==");
+
+		int[][] sizes = { { 3840, 2160 }, { 7680, 4320 } };
+		Rectangle frame = FlamePPMMaker.SHARK_FIN_FRAME;
+		Rectangle[] frames = {
+				frame,
+				new Rectangle(frame.center(), frame.width() * 3,
+						frame.height() * 3) };
+		String[] names = { "cadre normal", "cadre x3" };
+		long iterations = 20000000;
+
+		for (int[] size : sizes) {
+			for (int f = 0; f < frames.length; f++) {
+				for (AccumulatorLayout layout : AccumulatorLayout.values()) {
+					for (int sparse = 0; sparse < 2; sparse++) {
+						long before = usedMemory();
+						FlameAccumulator.Builder builder = sparse == 1 ? new FlameAccumulator.Builder(
+								frames[f], size[0], size[1], layout)
+								: new FlameAccumulator.Builder(
+										new HeapAccumulatorStorage(layout.cells(
+												size[0], size[1])), layout,
+										frames[f], size[0], size[1]);
+						FlameWalker walker = new FlameWalker(
+								FlamePPMMaker.sharkFin(), frames[f],
+								new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+								builder);
+
+						long start = System.nanoTime();
+						walker.run(iterations);
+						double rate = iterations
+								/ ((System.nanoTime() - start) / 1e9) / 1e6;
+
+						start = System.nanoTime();
+						FlameAccumulator accumulator = builder.build();
+						long buildTime = (System.nanoTime() - start) / 1000000;
+						long footprint = usedMemory() - before;
+
+						start = System.nanoTime();
+						int[] row = new int[accumulator.width()];
+						for (int r = 0; r < accumulator.height(); r++) {
+							accumulator.colorRow(PALETTE, Color.BLACK, r, row);
+						}
+						long colorTime = (System.nanoTime() - start) / 1000000;
+
+						AccumulatorStorage storage = builder.storage();
+						System.out.printf(
+								"%dx%d %-12s %-9s %-6s : %4d Mo, %5.1f M it/s, build() %3d ms, coloration %4d ms%s%n",
+								size[0], size[1], names[f], layout,
+								sparse == 1 ? "auto" : "dense", footprint >> 20,
+								rate, buildTime, colorTime,
+								storage instanceof SparseAccumulatorStorage ? String
+										.format(" (creux, %.0f %% des blocs)",
+												100 * ((SparseAccumulatorStorage) storage)
+														.occupancy())
+										: "");
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mesure la fusion de 32 bâtisseurs 4K remplis chacun par une orbite de
+	 * la fractale turbulence : case par case au travers de l'interface des
+	 * stockages (la fusion d'origine), bâtisseur par bâtisseur avec
+	 * {@link FlameAccumulator.Builder#merge}, puis tous à la fois avec
+	 * {@link FlameAccumulator.Builder#mergeAll}, séquentiellement et sur 1 à
+	 * 8 fils d'exécution. Nécessite un tas d'environ 4,5 Go (-Xmx4500m).
+	 */
+	private static void benchmarkMerge() {
+		System.out.println("== Fusion de bâtisseurs ==");
+
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int width = 3840, height = 2160, partials = 32;
+		long iterations = 2000000;
+
+		List<FlameAccumulator.Builder> builders = new ArrayList<FlameAccumulator.Builder>();
+		long start = System.nanoTime();
+		for (int i = 0; i < partials; i++) {
+			FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+					frame, width, height);
+			new FlameWalker(FlamePPMMaker.turbulence(), frame,
+					new XoroshiroRandomSource(i + 1), builder).run(iterations);
+			builder.build();
+			builders.add(builder);
+		}
+		long renderTime = (System.nanoTime() - start) / 1000000;
+		System.out.printf(
+				"%d bâtisseurs %dx%d de %d itérations (%s) : rendu en %d ms%n",
+				partials, width, height, iterations, builders.get(0).storage()
+						.getClass().getSimpleName(), renderTime);
+
+		String[] names = { "case par case", "merge() x 32", "mergeAll()" };
+		for (int mode = 0; mode < names.length; mode++) {
+			FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+					frame, width, height);
+			start = System.nanoTime();
+			if (mode == 0) {
+				AccumulatorStorage storage = new HeapAccumulatorStorage(
+						AccumulatorLayout.ROW_MAJOR.cells(width, height));
+				for (FlameAccumulator.Builder builder : builders) {
+					AccumulatorStorages.addAll(storage, builder.storage(), 0,
+							storage.size());
+				}
+			} else if (mode == 1) {
+				for (FlameAccumulator.Builder builder : builders) {
+					merged.merge(builder);
+				}
+			} else {
+				merged.mergeAll(builders);
+			}
+			long time = (System.nanoTime() - start) / 1000000;
+			System.out.printf("%-24s : %5d ms%n", names[mode], time);
+		}
+
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+					frame, width, height);
+			start = System.nanoTime();
+			merged.mergeAll(builders, executor);
+			long time = (System.nanoTime() - start) / 1000000;
+			executor.shutdown();
+			System.out.printf("mergeAll(), %d fil(s)     : %5d ms%n", threads,
+					time);
+		}
+	}
+
+	/**
+	 * Compare, de 1 à 32 fils d'exécution, un bâtisseur par orbite (fusionnés
+	 * à la fin) à un seul bâtisseur partagé par toutes les orbites, en mode
+	 * {@link ConcurrentUpdates#ATOMIC} et {@link ConcurrentUpdates#STRIPED},
+	 * pour la fractale turbulence en 4K et en 500 x 500 (où les orbites se
+	 * disputent bien plus souvent les mêmes cases). Nécessite un tas
+	 * d'environ 4,5 Go (-Xmx4500m).
+	 */
+	private static void benchmarkConcurrent() {
+		System.out.println("== Bâtisseur partagé ==");
+
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int[][] sizes = { { 500, 500 }, { 3840, 2160 } };
+		long iterations = 32000000;
+		String[] names = { "privés", "ATOMIC", "STRIPED" };
+
+		for (int[] size : sizes) {
+			for (int threads = 1; threads <= 32; threads *= 2) {
+				for (int mode = 0; mode < names.length; mode++) {
+					ExecutorService executor = Executors
+							.newFixedThreadPool(threads);
+					List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+					List<FlameAccumulator.Builder> builders = new ArrayList<FlameAccumulator.Builder>();
+					long before = usedMemory();
+					FlameAccumulator.ConcurrentBuilder shared = mode == 0 ? null
+							: new FlameAccumulator.ConcurrentBuilder(frame,
+									size[0], size[1],
+									AccumulatorLayout.ROW_MAJOR,
+									ConcurrentUpdates.values()[mode - 1]);
+
+					for (int t = 0; t < threads; t++) {
+						HitSink sink = shared;
+						if (mode == 0) {
+							FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+									frame, size[0], size[1]);
+							builders.add(builder);
+							sink = builder;
+						}
+						final FlameWalker walker = new FlameWalker(
+								FlamePPMMaker.turbulence(), frame,
+								new XoroshiroRandomSource(t + 1), sink);
+						final long share = iterations / threads;
+						tasks.add(new Callable<Void>() {
+							@Override
+							public Void call() {
+								walker.run(share);
+								return null;
+							}
+						});
+					}
+
+					long start = System.nanoTime();
+					try {
+						executor.invokeAll(tasks);
+					} catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+					if (mode == 0) {
+						FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+								frame, size[0], size[1]);
+						merged.mergeAll(builders, executor);
+						merged.build();
+					} else {
+						shared.build();
+					}
+					double rate = iterations
+							/ ((System.nanoTime() - start) / 1e9) / 1e6;
+					long footprint = usedMemory() - before;
+					executor.shutdown();
+
+					System.out.printf(
+							"%dx%d %2d fil(s) %-7s : %5.1f M it/s, %5d Mo%n",
+							size[0], size[1], threads, names[mode], rate,
+							footprint >> 20);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calcule la fractale turbulence augmentée d'une transformation rarement
+	 * tirée qui envoie tout point à l'origine avant de lui appliquer la
+	 * variation sphérique, ce qui le rend non fini : sans relance, l'orbite
+	 * meurt après un millier d'itérations en moyenne. Affiche le nombre de
+	 * relances et la proportion des itérations qui ont donné un point dans le
+	 * cadre, comparée à celle de la fractale turbulence seule, puis le temps
+	 * de calcul de cette dernière, où aucune orbite ne meurt.
+	 */
+	private static void benchmarkReseed() {
+		System.out.println("== Relance des orbites mortes ==");
+
+		Flame turbulence = FlamePPMMaker.turbulence();
+		List<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
+		for (int i = 0; i < turbulence.transformationsCount(); i++) {
+			transformations.add(turbulence.transformation(i));
+		}
+		transformations.add(new FlameTransformation(new AffineTransformation(
+				0, 0, 0, 0, 0, 0), new double[] { 0, 0, 1, 0, 0, 0 }));
+		Flame[] flames = { turbulence,
+				new Flame(transformations, new double[] { 1, 1, 1, 0.003 }) };
+		String[] names = { "turbulence", "turbulence + origine sphérique" };
+
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int size = 500, density = 50;
+		long iterations = (long) density * size * size;
+
+		for (int f = 0; f < flames.length; f++) {
+			FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+					frame, size, size);
+			FlameWalker walker = new FlameWalker(flames[f], frame,
+					new XoroshiroRandomSource(Flame.DEFAULT_SEED), builder);
+			long start = System.nanoTime();
+			walker.run(iterations);
+			long time = (System.nanoTime() - start) / 1000000;
+
+			long hits = 0;
+			AccumulatorStorage storage = builder.storage();
+			for (long i = 0; i < storage.size(); i++) {
+				hits += storage.hits(i);
+			}
+			System.out.printf(
+					"%-32s : %5d ms, %6d relances, %.1f %% des itérations dans le cadre%n",
+					names[f], time, walker.reseeds(), 100.0 * hits / iterations);
+		}
+	}
+
+	/**
+	 * Mesure le débit des itérations seules (les points sont ignorés) pour
+	 * les fractales turbulence et shark fin, et pour une variante de
+	 * turbulence dont chaque transformation combine plusieurs variations
+	 * polaires, dont toujours la variation tourbillon : c'est là que le
+	 * partage des grandeurs polaires entre variations compte le plus.
+	 */
+	private static void benchmarkVariations() {
+		System.out.println("== Variations ==");
+
+		Flame[] flames = { FlamePPMMaker.turbulence(),
+				FlamePPMMaker.sharkFin(), polarTurbulence() };
+		String[] names = { "turbulence", "shark fin", "turbulence polaire" };
+		HitSink ignored = new HitSink() {
+			@Override
+			public void hit(double px, double py, double colorIndex) {
+			}
+		};
+		Rectangle everything = new Rectangle(new Point(0, 0), 1e9, 1e9);
+		long iterations = 50000000;
+
+		for (int f = 0; f < flames.length; f++) {
+			FlameWalker walker = new FlameWalker(flames[f], everything,
+					new XoroshiroRandomSource(Flame.DEFAULT_SEED), ignored);
+			walker.run(iterations / 10);
+
+			long start = System.nanoTime();
+			walker.run(iterations);
+			double rate = iterations / ((System.nanoTime() - start) / 1e9)
+					/ 1e6;
+			System.out.printf("%-20s : %5.1f M it/s%n", names[f], rate);
+		}
+	}
+
+	/**
+	 * Compare le mode de calcul rapide des variations (voir
+	 * {@link Flame#withFastMath(boolean)}) au mode exact. Chaque fractale de
+	 * référence est calculée trois fois avec la même taille et la même
+	 * densité : en mode exact, en mode exact avec une autre graine, et
+	 * en mode rapide avec la graine du premier calcul. Les deux derniers
+	 * rendus sont comparés pixel par pixel au premier (composantes sRGB sur 8
+	 * bits) : le rendu rapide est acceptable lorsque ses différences sont du
+	 * même ordre que celles dues au seul changement de graine, c'est-à-dire
+	 * au bruit d'échantillonnage.
+	 */
+	private static void benchmarkFastMath() {
+		System.out.println("== Calcul rapide des variations ==");
+
+		Flame[] flames = { FlamePPMMaker.turbulence(),
+				FlamePPMMaker.sharkFin(), polarTurbulence() };
+		Rectangle[] frames = { FlamePPMMaker.TURBULENCE_FRAME,
+				FlamePPMMaker.SHARK_FIN_FRAME, FlamePPMMaker.TURBULENCE_FRAME };
+		String[] names = { "turbulence", "shark fin", "turbulence polaire" };
+		int size = 800, density = 50;
+
+		for (int f = 0; f < flames.length; f++) {
+			long start = System.nanoTime();
+			int[] reference = render(flames[f], frames[f], size, density,
+					Flame.DEFAULT_SEED);
+			long exactTime = (System.nanoTime() - start) / 1000000;
+
+			int[] reseeded = render(flames[f], frames[f], size, density,
+					Flame.DEFAULT_SEED + 1);
+
+			start = System.nanoTime();
+			int[] fast = render(flames[f].withFastMath(true), frames[f],
+					size, density, Flame.DEFAULT_SEED);
+			long fastTime = (System.nanoTime() - start) / 1000000;
+
+			System.out.printf("%s %dx%d, densité %d : exact %d ms, rapide %d ms%n",
+					names[f], size, size, density, exactTime, fastTime);
+			printDifference("  autre graine", reference, reseeded);
+			printDifference("  mode rapide ", reference, fast);
+		}
+	}
+
+	/**
+	 * Compare les marcheurs à 1, 4, 16 et 64 orbites entremêlées : débit brut
+	 * des itérations sur un seul fil (points ignorés), puis rendu complet de
+	 * chaque fractale de référence en 800x800 avec 1 et 4 orbites par
+	 * marcheur. Le rendu entremêlé suit d'autres orbites que le rendu à une
+	 * seule orbite ; il est acceptable lorsque ses différences restent du
+	 * même ordre que celles dues au changement de graine.
+	 */
+	private static void benchmarkLanes() {
+		System.out.println("== Orbites entremêlées ==");
+
+		Flame[] flames = { FlamePPMMaker.turbulence(),
+				FlamePPMMaker.sharkFin(), polarTurbulence() };
+		Rectangle[] frames = { FlamePPMMaker.TURBULENCE_FRAME,
+				FlamePPMMaker.SHARK_FIN_FRAME, FlamePPMMaker.TURBULENCE_FRAME };
+		String[] names = { "turbulence", "shark fin", "turbulence polaire" };
+		int[] laneCounts = { 1, 4, 16, 64 };
+		HitSink ignored = new HitSink() {
+			@Override
+			public void hit(double px, double py, double colorIndex) {
+			}
+		};
+		Rectangle everything = new Rectangle(new Point(0, 0), 1e9, 1e9);
+		long iterations = 50000000;
+
+		for (int f = 0; f < flames.length; f++) {
+			System.out.printf("%-20s :", names[f]);
+			for (int lanes : laneCounts) {
+				FlameWalker walker = new FlameWalker(flames[f], everything,
+						new XoroshiroRandomSource(Flame.DEFAULT_SEED), ignored,
+						lanes);
+				walker.run(iterations / 10);
+
+				long start = System.nanoTime();
+				walker.run(iterations);
+				double rate = iterations
+						/ ((System.nanoTime() - start) / 1e9) / 1e6;
+				System.out.printf("  %d voie(s) %5.1f M it/s", lanes, rate);
+			}
+			System.out.println();
+		}
+
+		int size = 800, density = 50;
+		for (int f = 0; f < flames.length; f++) {
+			int[] reference = render(flames[f], frames[f], size, density,
+					Flame.DEFAULT_SEED);
+			int[] reseeded = render(flames[f], frames[f], size, density,
+					Flame.DEFAULT_SEED + 1);
+
+			long[] times = new long[2];
+			int[] interleaved = null;
+			for (int run = 0; run < 2; run++) {
+				int lanes = run == 0 ? 1 : 4;
+				long start = System.nanoTime();
+				FlameRenderSession session = new FlameRenderSession(
+						flames[f], frames[f], size, size,
+						new XoroshiroRandomSource(Flame.DEFAULT_SEED), 1,
+						Long.MAX_VALUE, ConcurrentUpdates.ATOMIC, lanes);
+				session.runPass((long) density * size * size);
+				FlameAccumulator accumulator = session.snapshot();
+				times[run] = (System.nanoTime() - start) / 1000000;
+				if (lanes > 1) {
+					interleaved = toComponents(accumulator);
+				}
+			}
+
+			System.out.printf("%s %dx%d, densité %d : 1 voie %d ms, 4 voies %d ms%n",
+					names[f], size, size, density, times[0], times[1]);
+			printDifference("  autre graine", reference, reseeded);
+			printDifference("  4 voies     ", reference, interleaved);
+		}
+	}
+
+	/**
+	 * Compare le noyau de calcul par lots disponible (vectoriel si la machine
+	 * virtuelle a été lancée avec {@code --add-modules jdk.incubator.vector})
+	 * au noyau scalaire : temps par point de chaque variation seule, précédée
+	 * d'une composante affine, sur des lots de 4096 points, et écart maximal
+	 * entre les résultats des deux noyaux ; puis débit des marcheurs à 64
+	 * voies avec chacun des noyaux, comparé à celui d'un marcheur à une voie.
+	 * Les variations étant mesurées l'une après l'autre dans la même machine
+	 * virtuelle, les noyaux sont compilés avec un profil mélangé : les temps
+	 * des dernières variations sont pessimistes pour les deux noyaux, et ne
+	 * sont comparables qu'entre eux.
+	 */
+	private static void benchmarkVector() {
+		System.out.println("== Noyau de calcul par lots ==");
+
+		BatchKernel best = BatchKernel.best();
+		System.out.println("noyau disponible : " + best.name());
+
+		int count = 4096, rounds = 5000;
+		RandomSource random = new XoroshiroRandomSource(Flame.DEFAULT_SEED);
+		double[] xs = new double[count], ys = new double[count];
+		for (int i = 0; i < count; i++) {
+			xs[i] = 2 * random.nextDouble() - 1;
+			ys[i] = 2 * random.nextDouble() - 1;
+		}
+		AffineTransformation affine = new AffineTransformation(0.7, -0.3,
+				0.1, 0.3, 0.7, -0.2);
+
+		for (Variation variation : Variation.values()) {
+			double[] weights = new double[Variation.values().length];
+			weights[variation.index()] = 1;
+			FlameTransformation transformation = new FlameTransformation(
+					affine, weights);
+
+			double[][] results = new double[2][];
+			double[] times = new double[2];
+			BatchKernel[] kernels = { BatchKernel.SCALAR, best };
+			for (int k = 0; k < kernels.length; k++) {
+				double[] bx = new double[count], by = new double[count];
+				for (int warmup = 0; warmup < 2; warmup++) {
+					long start = System.nanoTime();
+					for (int round = 0; round < rounds; round++) {
+						System.arraycopy(xs, 0, bx, 0, count);
+						System.arraycopy(ys, 0, by, 0, count);
+						kernels[k].transform(transformation, bx, by, 0,
+								count, false);
+					}
+					times[k] = (System.nanoTime() - start)
+							/ ((double) rounds * count);
+				}
+				results[k] = bx;
+			}
+
+			double maxError = 0;
+			for (int i = 0; i < count; i++) {
+				maxError = Math.max(maxError,
+						Math.abs(results[0][i] - results[1][i]));
+			}
+			System.out.printf(
+					"%-12s : scalaire %5.2f ns/point, %s %5.2f ns/point, x%.2f, écart max %.1e%n",
+					variation.printableName(), times[0], best.name(),
+					times[1], times[0] / times[1], maxError);
+		}
+
+		Flame[] flames = { FlamePPMMaker.turbulence(),
+				FlamePPMMaker.sharkFin(), polarTurbulence() };
+		String[] names = { "turbulence", "shark fin", "turbulence polaire" };
+		HitSink ignored = new HitSink() {
+			@Override
+			public void hit(double px, double py, double colorIndex) {
+			}
+		};
+		Rectangle everything = new Rectangle(new Point(0, 0), 1e9, 1e9);
+		long iterations = 50000000;
+
+		for (int f = 0; f < flames.length; f++) {
+			FlameWalker[] walkers = {
+					new FlameWalker(flames[f], everything,
+							new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+							ignored),
+					new FlameWalker(flames[f], everything,
+							new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+							ignored, 64, BatchKernel.SCALAR),
+					new FlameWalker(flames[f], everything,
+							new XoroshiroRandomSource(Flame.DEFAULT_SEED),
+							ignored, 64, best) };
+			double[] rates = new double[walkers.length];
+			for (int w = 0; w < walkers.length; w++) {
+				walkers[w].run(iterations / 10);
+				long start = System.nanoTime();
+				walkers[w].run(iterations);
+				rates[w] = iterations / ((System.nanoTime() - start) / 1e9)
+						/ 1e6;
+			}
+			System.out.printf(
+					"%-20s : 1 voie %5.1f M it/s, 64 voies scalaire %5.1f M it/s, 64 voies %s %5.1f M it/s%n",
+					names[f], rates[0], rates[1], best.name(), rates[2]);
+		}
+	}
+
+	/**
+	 * Mesure la boucle spécialisée par fractale (voir
+	 * {@link Flame#withSpecializedLoop(boolean)}) : coût de la génération du
+	 * code source, de sa compilation et du chargement de la classe cachée
+	 * pour des fractales aléatoires de 3, 20 et 100 transformations (après
+	 * un premier appel à froid, qui inclut le démarrage du compilateur),
+	 * puis débit des itérations sur un seul fil, points ignorés, avec la
+	 * boucle habituelle et la boucle spécialisée, une fois les deux compilées
+	 * par la machine virtuelle.
+	 */
+	private static void benchmarkSpecialize() {
+		System.out.println("== Boucle spécialisée par fractale ==");
+
+		int[] sizes = { 3, 3, 20, 100 };
+		Flame[] randomFlames = new Flame[sizes.length];
+		for (int f = 0; f < sizes.length; f++) {
+			randomFlames[f] = randomFlame(sizes[f], f);
+
+			long start = System.nanoTime();
+			String source = FlameSpecializer.generateSource(randomFlames[f]);
+			long generated = System.nanoTime();
+			byte[] bytecode = FlameSpecializer.compile(source);
+			long compiled = System.nanoTime();
+			if (bytecode == null) {
+				System.out.println("compilateur Java indisponible");
+				return;
+			}
+			FlameSpecializer.define(bytecode);
+			long defined = System.nanoTime();
+
+			System.out.printf(
+					"%3d transformations%s : source %.1f ms (%d car.), compilation %.1f ms (%d octets), chargement %.1f ms%n",
+					sizes[f], f == 0 ? " (à froid)" : "           ",
+					(generated - start) / 1e6, source.length(),
+					(compiled - generated) / 1e6, bytecode.length,
+					(defined - compiled) / 1e6);
+		}
+
+		Flame[] flames = { FlamePPMMaker.turbulence(),
+				FlamePPMMaker.sharkFin(), polarTurbulence(), randomFlames[1],
+				randomFlames[2], randomFlames[3] };
+		String[] names = { "turbulence", "shark fin", "turbulence polaire",
+				"aléatoire (3)", "aléatoire (20)", "aléatoire (100)" };
+		HitSink ignored = new HitSink() {
+			@Override
+			public void hit(double px, double py, double colorIndex) {
+			}
+		};
+		Rectangle everything = new Rectangle(new Point(0, 0), 1e9, 1e9);
+		long iterations = 50000000;
+
+		for (int f = 0; f < flames.length; f++) {
+			Flame[] variants = { flames[f],
+					flames[f].withSpecializedLoop(true) };
+			double[] rates = new double[variants.length];
+			for (int v = 0; v < variants.length; v++) {
+				FlameWalker walker = new FlameWalker(variants[v], everything,
+						new XoroshiroRandomSource(Flame.DEFAULT_SEED), ignored);
+				walker.run(iterations / 5);
+
+				long start = System.nanoTime();
+				walker.run(iterations);
+				rates[v] = iterations / ((System.nanoTime() - start) / 1e9)
+						/ 1e6;
+			}
+			System.out.printf(
+					"%-20s : habituelle %5.1f M it/s, spécialisée %5.1f M it/s, x%.2f%n",
+					names[f], rates[0], rates[1], rates[1] / rates[0]);
+		}
+	}
+
+	/**
+	 * @return Les composantes sRGB sur 8 bits (rouge, vert, bleu) de chaque
+	 *         pixel du rendu d'une fractale sur fond noir, rangée par rangée
+	 */
+	private static int[] render(Flame flame, Rectangle frame, int size,
+			int density, long seed) {
+		return toComponents(flame.compute(frame, size, size, density,
+				new XoroshiroRandomSource(seed)));
+	}
+
+	/**
+	 * @return Les composantes sRGB sur 8 bits (rouge, vert, bleu) de chaque
+	 *         pixel d'un accumulateur sur fond noir, rangée par rangée
+	 */
+	private static int[] toComponents(FlameAccumulator accumulator) {
+		int width = accumulator.width(), height = accumulator.height();
+		int[] components = new int[3 * width * height];
+		for (int y = 0, i = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Color color = accumulator.color(PALETTE, Color.BLACK, x, y);
+				components[i++] = Color.sRGBEncode(color.red(), 255);
+				components[i++] = Color.sRGBEncode(color.green(), 255);
+				components[i++] = Color.sRGBEncode(color.blue(), 255);
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Affiche l'écart moyen et l'écart maximal entre les composantes de deux
+	 * rendus, leur rapport signal sur bruit de crête, et la proportion de
+	 * pixels dont une composante diffère de plus de 8 niveaux
+	 */
+	private static void printDifference(String name, int[] reference,
+			int[] tested) {
+		long sum = 0, squares = 0, visible = 0;
+		int max = 0;
+		for (int i = 0; i < reference.length; i += 3) {
+			int pixelMax = 0;
+			for (int c = i; c < i + 3; c++) {
+				int difference = Math.abs(reference[c] - tested[c]);
+				sum += difference;
+				squares += difference * difference;
+				pixelMax = Math.max(pixelMax, difference);
+			}
+			max = Math.max(max, pixelMax);
+			if (pixelMax > 8) {
+				visible++;
+			}
+		}
+
+		double mse = (double) squares / reference.length;
+		System.out.printf(
+				"%s : écart moyen %.2f, max %3d, PSNR %.1f dB, %.2f %% des pixels à plus de 8 niveaux%n",
+				name, (double) sum / reference.length, max,
+				10 * Math.log10(255 * 255 / mse), 300.0 * visible
+						/ reference.length);
+	}
+
+	/**
+	 * @return Une variante de la fractale turbulence dont chaque
+	 *         transformation combine plusieurs variations polaires, dont
+	 *         toujours la variation tourbillon
+	 */
+	private static Flame polarTurbulence() {
+		Flame turbulence = FlamePPMMaker.turbulence();
+		double[][] weights = { { 0.3, 0, 0.2, 0.6, 0.2, 0.1 },
+				{ 0.2, 0, 0.1, 0.8, 0.1, 0.3 }, { 0.5, 0, 0, 1, 0, 0 } };
+
+		List<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
+		for (int i = 0; i < weights.length; i++) {
+			FlameTransformation.Builder builder = new FlameTransformation.Builder(
+					turbulence.transformation(i));
+			for (int v = 0; v < weights[i].length; v++) {
+				builder.setWeight(v, weights[i][v]);
+			}
+			transformations.add(builder.build());
+		}
+		return new Flame(transformations);
+	}
+
+	/**
+	 * @return Une fractale de <i>count</i> transformations tirées au hasard,
+	 *         de composantes affines contractantes et de une à trois
+	 *         variations actives chacune
+	 */
+	private static Flame randomFlame(int count, long seed) {
+		RandomSource random = new XoroshiroRandomSource(seed);
+		int variations = Variation.values().length;
+		List<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
+		for (int t = 0; t < count; t++) {
+			double[] weights = new double[variations];
+			for (int v = 1 + random.nextInt(3); v > 0; v--) {
+				weights[random.nextInt(variations)] = random.nextDouble();
+			}
+			AffineTransformation affine = new AffineTransformation(
+					random.nextDouble() - 0.5, random.nextDouble() - 0.5,
+					2 * random.nextDouble() - 1, random.nextDouble() - 0.5,
+					random.nextDouble() - 0.5, 2 * random.nextDouble() - 1);
+			transformations.add(new FlameTransformation(affine, weights));
+		}
+		return new Flame(transformations);
+	}
+
+	/**
+	 * Ajoute à un bâtisseur <i>count</i> points uniformément répartis dans
+	 * le cadre
+	 */
+	private static void uniformHits(FlameAccumulator.Builder builder,
+			Rectangle frame, int count) {
+		RandomSource random = new XoroshiroRandomSource(Flame.DEFAULT_SEED);
+		double left = frame.left(), bottom = frame.bottom();
+		double width = frame.width(), height = frame.height();
+
+		for (int i = 0; i < count; i++) {
+			builder.hit(left + random.nextDouble() * width, bottom
+					+ random.nextDouble() * height, random.nextDouble());
+		}
+	}
+
+	/**
+	 * @return La mémoire occupée dans le tas après un passage du ramasse-miettes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * @param kind
+	 *            Le type de générateur (0 : java.util.Random, 1 :
+	 *            SplittableRandom, 2 : xoroshiro128++)
+	 * @return Un nouveau générateur du type demandé
+	 */
+	private static RandomSource newRandom(int kind) {
+		switch (kind) {
+		case 0:
+			return new LegacyRandomSource(Flame.DEFAULT_SEED);
+		case 1:
+			return new SplittableRandomSource(Flame.DEFAULT_SEED);
+		default:
+			return new XoroshiroRandomSource(Flame.DEFAULT_SEED);
+		}
+	}
+
+	/**
+	 * Effectue <i>count</i> tirages de nextInt(3)
+	 *
+	 * @return La somme des tirages, pour que le calcul ne soit pas éliminé
+	 */
+	private static int drawInts(RandomSource random, int count) {
+		int sum = 0;
+		for (int i = 0; i < count; i++) {
+			sum += random.nextInt(3);
+		}
+		return sum;
+	}
+
+	/**
+	 * Calcule une fractale en 500x500 avec une densité de 50 (après un
+	 * premier calcul de préchauffage)
+	 *
+	 * @return Le temps du second calcul, en millisecondes
+	 */
+	private static long timeCompute(Flame flame, Rectangle frame,
+			RandomSource random) {
+		flame.compute(frame, 500, 500, 10, random);
+
+		long start = System.nanoTime();
+		flame.compute(frame, 500, 500, 50, random);
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Noyau de calcul par lots utilisant l'API vectorielle de Java
+ * ({@code jdk.incubator.vector}) : la composante affine et les variations
+ * sont appliquées à autant de points à la fois que le processeur a de
+ * doubles par registre vectoriel (4 avec AVX2, 8 avec AVX-512). Les points
+ * restants, moins nombreux qu'un registre, sont transformés un par un.<br />
+ * La composante affine et les variations sans fonction trigonométrique
+ * donnent exactement les mêmes résultats que
+ * {@link FlameTransformation#transform(double[])}, les opérations étant
+ * effectuées dans le même ordre. Le sinus et le cosinus vectoriels peuvent
+ * en revanche différer de ceux de {@link Math} de quelques unités sur le
+ * dernier chiffre.<br />
+ * Les lots que ce noyau ne sait pas vectoriser sont transformés par le
+ * noyau scalaire : ceux d'une transformation ayant une variation sans forme
+ * vectorielle, et, en mode de calcul rapide, ceux d'une transformation
+ * ayant une variation trigonométrique, dont le résultat doit être celui des
+ * approximations de {@link FastMath}.<br />
+ * Cette classe se trouve dans un dossier de sources à part, compilé avec le
+ * module incubé par la cible {@code compile-vector}, et n'est chargée que
+ * par réflexion (voir {@link BatchKernel}).
+ */
+final class VectorBatchKernel extends BatchKernel {
+
+	/**
+	 * La forme de vecteur préférée du processeur
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Construit le noyau vectoriel
+	 *
+	 * @throws UnsupportedOperationException
+	 *             Si un registre vectoriel ne contient qu'un seul double
+	 */
+	VectorBatchKernel() {
+		if (SPECIES.length() < 2) {
+			throw new UnsupportedOperationException(
+					"no vector instructions for doubles");
+		}
+	}
+
+	@Override
+	void transform(FlameTransformation transformation, double[] xs,
+			double[] ys, int from, int to, boolean fast) {
+		Variation[] variations = transformation.activeVariations();
+		if (!vectorizable(variations, fast)) {
+			SCALAR.transform(transformation, xs, ys, from, to, fast);
+			return;
+		}
+
+		double[] c = transformation.affineCoefficients();
+		double[] weights = transformation.activeWeights();
+
+		int bound = from + SPECIES.loopBound(to - from);
+		int i = from;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector px = DoubleVector.fromArray(SPECIES, xs, i);
+			DoubleVector py = DoubleVector.fromArray(SPECIES, ys, i);
+
+			DoubleVector x = px.mul(c[0]).add(py.mul(c[1])).add(c[2]);
+			DoubleVector y = px.mul(c[3]).add(py.mul(c[4])).add(c[5]);
+			DoubleVector r2 = x.mul(x).add(y.mul(y));
+
+			DoubleVector sumX = DoubleVector.zero(SPECIES);
+			DoubleVector sumY = sumX;
+			for (int v = 0; v < variations.length; v++) {
+				double weight = weights[v];
+				switch (variations[v]) {
+				case LINEAR:
+					sumX = sumX.add(x.mul(weight));
+					sumY = sumY.add(y.mul(weight));
+					break;
+				case SINUSOIDAL:
+					sumX = sumX.add(x.lanewise(VectorOperators.SIN).mul(weight));
+					sumY = sumY.add(y.lanewise(VectorOperators.SIN).mul(weight));
+					break;
+				case SPHERICAL:
+					sumX = sumX.add(x.div(r2).mul(weight));
+					sumY = sumY.add(y.div(r2).mul(weight));
+					break;
+				case SWIRL: {
+					DoubleVector sin = r2.lanewise(VectorOperators.SIN);
+					DoubleVector cos = r2.lanewise(VectorOperators.COS);
+					sumX = sumX.add(x.mul(sin).sub(y.mul(cos)).mul(weight));
+					sumY = sumY.add(x.mul(cos).add(y.mul(sin)).mul(weight));
+					break;
+				}
+				case HORSESHOE: {
+					DoubleVector r = r2.lanewise(VectorOperators.SQRT);
+					sumX = sumX.add(x.sub(y).mul(x.add(y)).div(r).mul(weight));
+					sumY = sumY.add(x.mul(2).mul(y).div(r).mul(weight));
+					break;
+				}
+				case BUBBLE: {
+					DoubleVector denominator = r2.add(4);
+					sumX = sumX.add(x.mul(4).div(denominator).mul(weight));
+					sumY = sumY.add(y.mul(4).div(denominator).mul(weight));
+					break;
+				}
+				default:
+					// Exclu par vectorizable()
+					break;
+				}
+			}
+
+			sumX.intoArray(xs, i);
+			sumY.intoArray(ys, i);
+		}
+
+		SCALAR.transform(transformation, xs, ys, i, to, fast);
+	}
+
+	/**
+	 * @return Vrai si toutes les variations ont une forme vectorielle donnant
+	 *         le résultat attendu dans le mode de calcul donné
+	 */
+	private static boolean vectorizable(Variation[] variations, boolean fast) {
+		for (Variation variation : variations) {
+			switch (variation) {
+			case LINEAR:
+			case SPHERICAL:
+			case HORSESHOE:
+			case BUBBLE:
+				break;
+			case SINUSOIDAL:
+			case SWIRL:
+				if (fast) {
+					return false;
+				}
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	String name() {
+		return "vectoriel (" + SPECIES.length() + " doubles)";
+	}
+}
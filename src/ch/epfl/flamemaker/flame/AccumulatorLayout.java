@@ -0,0 +1,181 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Enumération des dispositions possibles des cases d'un accumulateur dans
+ * son stockage. L'index d'une case est toujours la somme d'une base ne
+ * dépendant que de sa rangée d'image et d'un décalage ne dépendant que de sa
+ * colonne : les accumulateurs précalculent ces deux tables, et passer d'une
+ * disposition à l'autre ne coûte rien lors de la lecture d'une rangée.
+ */
+public enum AccumulatorLayout {
+
+	/**
+	 * Cases rangée d'image par rangée d'image : la case (x, row) se trouve à
+	 * l'index row * largeur + x
+	 */
+	ROW_MAJOR {
+		@Override
+		long cells(int width, int height) {
+			return (long) width * height;
+		}
+
+		@Override
+		long rowBase(int width, int row) {
+			return (long) row * width;
+		}
+
+		@Override
+		long columnOffset(int x) {
+			return x;
+		}
+
+		@Override
+		int blockShift() {
+			return 12;
+		}
+	},
+
+	/**
+	 * Cases groupées en blocs carrés de {@link #BLOCK_SIZE} cases de côté,
+	 * parcourus selon la courbe de Morton (ordre Z) à l'intérieur d'un bloc,
+	 * les blocs étant rangés rangée par rangée. Deux cases voisines dans
+	 * l'image sont presque toujours proches dans le stockage, ce qui profite
+	 * aux orbites qui se déplacent par petits pas. La largeur et la hauteur
+	 * du stockage sont arrondies au multiple de {@link #BLOCK_SIZE} supérieur.
+	 */
+	MORTON {
+		@Override
+		long cells(int width, int height) {
+			return (long) blocks(width) * blocks(height) << BLOCK_BITS;
+		}
+
+		@Override
+		long rowBase(int width, int row) {
+			return ((long) (row >>> BLOCK_SHIFT) * blocks(width) << BLOCK_BITS)
+					| (MORTON_SPREAD[row & BLOCK_MASK] << 1);
+		}
+
+		@Override
+		long columnOffset(int x) {
+			return ((long) (x >>> BLOCK_SHIFT) << BLOCK_BITS)
+					| MORTON_SPREAD[x & BLOCK_MASK];
+		}
+
+		@Override
+		int blockShift() {
+			return BLOCK_BITS;
+		}
+	};
+
+	/**
+	 * Le logarithme en base 2 du côté d'un bloc de la disposition
+	 * {@link #MORTON}
+	 */
+	private static final int BLOCK_SHIFT = 7;
+
+	/**
+	 * Le côté d'un bloc de la disposition {@link #MORTON}
+	 */
+	public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	/**
+	 * Le masque donnant la position d'une case dans son bloc
+	 */
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'un bloc
+	 */
+	private static final int BLOCK_BITS = 2 * BLOCK_SHIFT;
+
+	/**
+	 * Pour chaque coordonnée dans un bloc, ses bits écartés d'un rang (le
+	 * bit i passe au rang 2i), ce qui donne les bits pairs de l'index de
+	 * Morton
+	 */
+	private static final long[] MORTON_SPREAD = new long[BLOCK_SIZE];
+
+	static {
+		for (int v = 0; v < BLOCK_SIZE; v++) {
+			long spread = 0;
+			for (int bit = 0; bit < BLOCK_SHIFT; bit++) {
+				spread |= (long) ((v >>> bit) & 1) << (2 * bit);
+			}
+			MORTON_SPREAD[v] = spread;
+		}
+	}
+
+	/**
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @return Le nombre de cases du stockage d'un accumulateur de cette
+	 *         taille, cases de remplissage comprises
+	 */
+	abstract long cells(int width, int height);
+
+	/**
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param row
+	 *            Une rangée d'image, 0 étant celle du haut
+	 * @return La partie de l'index des cases de cette rangée qui ne dépend
+	 *         que de la rangée
+	 */
+	abstract long rowBase(int width, int row);
+
+	/**
+	 * @param x
+	 *            Une colonne
+	 * @return La partie de l'index des cases de cette colonne qui ne dépend
+	 *         que de la colonne
+	 */
+	abstract long columnOffset(int x);
+
+	/**
+	 * @return Le logarithme en base 2 du nombre de cases des blocs d'un
+	 *         stockage creux (voir {@link SparseAccumulatorStorage}) : 4096
+	 *         cases consécutives d'une même rangée en disposition
+	 *         {@link #ROW_MAJOR}, un bloc carré de 128 x 128 cases en
+	 *         disposition {@link #MORTON}, qui se prête donc mieux aux
+	 *         fractales n'occupant qu'une petite partie du cadre
+	 */
+	abstract int blockShift();
+
+	/**
+	 * @return La base de l'index de chaque rangée d'un accumulateur de la
+	 *         taille donnée
+	 */
+	long[] rowBases(int width, int height) {
+		long[] bases = new long[height];
+		for (int row = 0; row < height; row++) {
+			bases[row] = rowBase(width, row);
+		}
+		return bases;
+	}
+
+	/**
+	 * @return Le décalage de l'index de chaque colonne d'un accumulateur de
+	 *         largeur <i>width</i>
+	 */
+	long[] columnOffsets(int width) {
+		long[] offsets = new long[width];
+		for (int x = 0; x < width; x++) {
+			offsets[x] = columnOffset(x);
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return Le nombre de blocs nécessaires pour couvrir <i>length</i> cases
+	 */
+	private static int blocks(int length) {
+		return (length + BLOCK_MASK) >>> BLOCK_SHIFT;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Interface modélisant le stockage des cases d'un accumulateur : pour chaque
+ * case, le nombre de points qu'elle contient et la moyenne des index de
+ * couleur de ces points. Les cases sont désignées par un index de type long,
+ * pour que les accumulateurs de plus de 2<sup>31</sup> cases puissent être
+ * représentés, et les nombres de points sont de type long pour les stockages
+ * capables de compter plus de 2<sup>31</sup> points par case.<br />
+ * Un stockage n'est pas prévu pour être modifié par plusieurs fils
+ * d'exécution à la fois, sauf par {@link #addAll} sur des intervalles de cases
+ * disjoints alignés sur {@link #ALIGNMENT}.
+ */
+interface AccumulatorStorage {
+
+	/**
+	 * L'alignement des intervalles de cases que plusieurs fils d'exécution
+	 * peuvent fusionner en même temps dans un stockage : un multiple de la
+	 * taille des blocs de tous les stockages
+	 */
+	long ALIGNMENT = 1 << 14;
+
+	/**
+	 * @return Le nombre de cases du stockage
+	 */
+	long size();
+
+	/**
+	 * @param index
+	 *            L'index de la case
+	 * @return Le nombre de points contenus dans la case
+	 */
+	long hits(long index);
+
+	/**
+	 * @param index
+	 *            L'index de la case
+	 * @return La moyenne des index de couleur des points de la case (0 si la
+	 *         case est vide)
+	 */
+	double colorIndex(long index);
+
+	/**
+	 * Ajoute un point à une case
+	 * 
+	 * @param index
+	 *            L'index de la case
+	 * @param colorIndex
+	 *            L'index de couleur du point
+	 * @return Le nouveau nombre de points de la case
+	 */
+	long hit(long index, double colorIndex);
+
+	/**
+	 * Ajoute plusieurs points à une case ; la moyenne des index de couleur
+	 * est pondérée par le nombre de points
+	 * 
+	 * @param index
+	 *            L'index de la case
+	 * @param hits
+	 *            Le nombre de points ajoutés
+	 * @param colorIndex
+	 *            La moyenne des index de couleur des points ajoutés
+	 * @return Le nouveau nombre de points de la case
+	 */
+	long add(long index, long hits, double colorIndex);
+
+	/**
+	 * Ajoute à ce stockage les points des cases de <i>other</i> d'index
+	 * compris entre <i>from</i> (inclus) et <i>to</i> (exclu), comme le ferait
+	 * {@link #add} pour chacune de ces cases, mais sans passer par
+	 * l'interface lorsque les deux stockages sont du même type
+	 * 
+	 * @param other
+	 *            Le stockage dont on ajoute les points, de même taille
+	 * @param from
+	 *            L'index de la première case
+	 * @param to
+	 *            L'index suivant celui de la dernière case
+	 * @return Le plus grand nombre de points des cases modifiées (0 si
+	 *         aucune ne l'est)
+	 */
+	long addAll(AccumulatorStorage other, long from, long to);
+
+	/**
+	 * @return Une copie indépendante de ce stockage, du même type
+	 */
+	AccumulatorStorage copy();
+}
@@ -0,0 +1,41 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Méthodes communes aux différents stockages d'accumulateur
+ */
+final class AccumulatorStorages {
+
+	private AccumulatorStorages() {
+	}
+
+	/**
+	 * Ajoute à <i>storage</i> les points des cases de <i>other</i> d'index
+	 * compris entre <i>from</i> (inclus) et <i>to</i> (exclu), case par case
+	 * au travers de l'interface : c'est la fusion utilisée entre stockages de
+	 * types différents
+	 * 
+	 * @return Le plus grand nombre de points des cases modifiées
+	 * @see AccumulatorStorage#addAll(AccumulatorStorage, long, long)
+	 */
+	static long addAll(AccumulatorStorage storage, AccumulatorStorage other,
+			long from, long to) {
+		long maxHit = 0;
+		for (long i = from; i < to; i++) {
+			long hits = other.hits(i);
+			if (hits == 0) {
+				continue;
+			}
+
+			long total = storage.add(i, hits, other.colorIndex(i));
+			if (total > maxHit) {
+				maxHit = total;
+			}
+		}
+		return maxHit;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import ch.epfl.flamemaker.random.RandomSource;
+
+/**
+ * Classe non mutable permettant de tirer un index au hasard selon une
+ * distribution discrète donnée par des poids, en temps constant (méthode des
+ * alias de Vose). La table est construite une fois pour toutes en temps
+ * linéaire.
+ */
+final class AliasSampler {
+
+	/**
+	 * La probabilité de garder l'index tiré dans chaque colonne de la table
+	 */
+	private final double[] m_probability;
+
+	/**
+	 * L'index de remplacement de chaque colonne de la table
+	 */
+	private final int[] m_alias;
+
+	/**
+	 * Vrai si tous les poids sont égaux : un seul tirage suffit alors
+	 */
+	private final boolean m_uniform;
+
+	/**
+	 * Construit la table des alias correspondant aux poids donnés
+	 *
+	 * @param weights
+	 *            Les poids (positifs ou nuls) de chaque index
+	 * @throws IllegalArgumentException
+	 *             Si un poids est négatif ou non fini, ou si la somme des
+	 *             poids est nulle alors que le tableau n'est pas vide
+	 */
+	AliasSampler(double[] weights) {
+		int n = weights.length;
+		double sum = 0;
+		boolean uniform = true;
+
+		for (int i = 0; i < n; i++) {
+			if (weights[i] < 0 || Double.isInfinite(weights[i])
+					|| Double.isNaN(weights[i])) {
+				throw new IllegalArgumentException(
+						"weights must be positive and finite");
+			}
+			sum += weights[i];
+			uniform &= weights[i] == weights[0];
+		}
+
+		if (n > 0 && sum <= 0) {
+			throw new IllegalArgumentException(
+					"at least one weight must be strictly positive");
+		}
+
+		m_probability = new double[n];
+		m_alias = new int[n];
+		m_uniform = uniform;
+
+		// Probabilités mises à l'échelle : une colonne "pleine" vaut 1
+		double[] scaled = new double[n];
+		int[] small = new int[n], large = new int[n];
+		int smallCount = 0, largeCount = 0;
+
+		for (int i = 0; i < n; i++) {
+			scaled[i] = weights[i] * n / sum;
+			if (scaled[i] < 1) {
+				small[smallCount++] = i;
+			} else {
+				large[largeCount++] = i;
+			}
+		}
+
+		/*
+		 * Chaque colonne trop petite est complétée par une colonne trop
+		 * grande, dont l'excédent diminue d'autant
+		 */
+		while (smallCount > 0 && largeCount > 0) {
+			int s = small[--smallCount];
+			int l = large[--largeCount];
+
+			m_probability[s] = scaled[s];
+			m_alias[s] = l;
+
+			scaled[l] = (scaled[l] + scaled[s]) - 1;
+			if (scaled[l] < 1) {
+				small[smallCount++] = l;
+			} else {
+				large[largeCount++] = l;
+			}
+		}
+
+		// Les colonnes restantes sont pleines (aux erreurs d'arrondi près)
+		while (largeCount > 0) {
+			m_probability[large[--largeCount]] = 1;
+		}
+		while (smallCount > 0) {
+			m_probability[small[--smallCount]] = 1;
+		}
+	}
+
+	/**
+	 * @return Le nombre d'index pouvant être tirés
+	 */
+	int size() {
+		return m_probability.length;
+	}
+
+	/**
+	 * Tire un index au hasard selon la distribution de la table
+	 *
+	 * @param randomizer
+	 *            Le générateur aléatoire à utiliser
+	 * @return L'index tiré
+	 */
+	int sample(RandomSource randomizer) {
+		int column = randomizer.nextInt(m_probability.length);
+		if (m_uniform) {
+			return column;
+		}
+
+		return randomizer.nextDouble() < m_probability[column] ? column
+				: m_alias[column];
+	}
+}
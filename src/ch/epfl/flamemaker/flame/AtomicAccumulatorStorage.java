@@ -0,0 +1,107 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Stockage des cases d'un accumulateur dans le tas dont les points peuvent
+ * être ajoutés par plusieurs fils d'exécution à la fois. Comme dans
+ * {@link FloatSumAccumulatorStorage}, chaque case garde son nombre de points
+ * et la somme de leurs index de couleur, ici toujours en double précision
+ * (une somme en simple précision cesserait de croître au-delà de
+ * 2<sup>24</sup> points) : ajouter un point revient à deux additions
+ * atomiques indépendantes, sans verrou. Les lectures ne sont cohérentes que
+ * lorsque plus aucun point n'est ajouté.
+ */
+final class AtomicAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Les accès atomiques aux éléments des tableaux
+	 */
+	private static final VarHandle HITS = MethodHandles
+			.arrayElementVarHandle(int[].class);
+	private static final VarHandle SUMS = MethodHandles
+			.arrayElementVarHandle(double[].class);
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final int[] m_hits;
+
+	/**
+	 * La somme des index de couleur de chaque case
+	 */
+	private final double[] m_sums;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	AtomicAccumulatorStorage(long size) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		m_hits = new int[(int) size];
+		m_sums = new double[(int) size];
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private AtomicAccumulatorStorage(AtomicAccumulatorStorage other) {
+		m_hits = other.m_hits.clone();
+		m_sums = other.m_sums.clone();
+	}
+
+	@Override
+	public long size() {
+		return m_hits.length;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) index];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		int i = (int) index;
+		return m_hits[i] == 0 ? 0 : m_sums[i] / m_hits[i];
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int i = (int) index;
+		SUMS.getAndAdd(m_sums, i, colorIndex);
+		return (int) HITS.getAndAdd(m_hits, i, 1) + 1;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int i = (int) index;
+		SUMS.getAndAdd(m_sums, i, colorIndex * hits);
+		return (int) HITS.getAndAdd(m_hits, i, (int) hits) + hits;
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		return AccumulatorStorages.addAll(this, other, from, to);
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new AtomicAccumulatorStorage(this);
+	}
+}
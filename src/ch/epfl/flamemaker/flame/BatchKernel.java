@@ -0,0 +1,114 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Noyau de calcul appliquant une transformation Flame à un lot de points,
+ * rangés par tableaux de coordonnées (abscisses, ordonnées). Les marcheurs à
+ * plusieurs orbites (voir {@link Flame#withLanes(int)}) regroupent leurs
+ * orbites par transformation tirée avant de les transformer par lots (voir
+ * {@link FlameWalker}) ; {@link FlameRenderSession#vectorKernel()} indique
+ * si le noyau vectoriel est utilisé.<br />
+ * Le noyau vectoriel ({@code VectorBatchKernel}) utilise le module incubé
+ * {@code jdk.incubator.vector}, qui n'est présent qu'à partir de Java 16 et
+ * doit être ajouté explicitement à la machine virtuelle
+ * ({@code --add-modules jdk.incubator.vector}). Ses sources sont donc à
+ * part (dossier {@code src-vector}, cible {@code compile-vector}) et il est
+ * chargé par réflexion : {@link #best()} se rabat sur le noyau scalaire
+ * lorsqu'il n'a pas été compilé, que le module est absent ou que le
+ * processeur n'a pas d'instructions vectorielles.
+ */
+abstract class BatchKernel {
+
+	/**
+	 * Le noyau scalaire, qui transforme les points un par un
+	 */
+	static final BatchKernel SCALAR = new BatchKernel() {
+		@Override
+		void transform(FlameTransformation transformation, double[] xs,
+				double[] ys, int from, int to, boolean fast) {
+			double[] point = new double[2];
+			for (int i = from; i < to; i++) {
+				point[0] = xs[i];
+				point[1] = ys[i];
+				if (fast) {
+					transformation.transformFast(point);
+				} else {
+					transformation.transform(point);
+				}
+				xs[i] = point[0];
+				ys[i] = point[1];
+			}
+		}
+
+		@Override
+		String name() {
+			return "scalaire";
+		}
+	};
+
+	/**
+	 * Le nom de la classe du noyau vectoriel
+	 */
+	private static final String VECTOR_KERNEL = "ch.epfl.flamemaker.flame.VectorBatchKernel";
+
+	/**
+	 * Le meilleur noyau disponible
+	 */
+	private static final BatchKernel BEST = load();
+
+	/**
+	 * @return Le noyau vectoriel s'il est disponible, le noyau scalaire sinon
+	 */
+	static BatchKernel best() {
+		return BEST;
+	}
+
+	/**
+	 * Applique <i>transformation</i> aux points d'indices <i>from</i>
+	 * (inclus) à <i>to</i> (exclu) des tableaux <i>xs</i> et <i>ys</i>, et y
+	 * écrit les résultats
+	 *
+	 * @param transformation
+	 *            La transformation à appliquer
+	 * @param xs
+	 *            Les abscisses des points
+	 * @param ys
+	 *            Les ordonnées des points
+	 * @param from
+	 *            L'indice du premier point
+	 * @param to
+	 *            L'indice suivant celui du dernier point
+	 * @param fast
+	 *            Vrai pour utiliser les approximations rapides des
+	 *            variations (voir {@link Flame#withFastMath(boolean)})
+	 */
+	abstract void transform(FlameTransformation transformation, double[] xs,
+			double[] ys, int from, int to, boolean fast);
+
+	/**
+	 * @return Le nom affichable du noyau
+	 */
+	abstract String name();
+
+	/**
+	 * Charge le noyau vectoriel, ou retourne le noyau scalaire si son
+	 * chargement échoue
+	 */
+	private static BatchKernel load() {
+		try {
+			return (BatchKernel) Class.forName(VECTOR_KERNEL)
+					.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			// Constructeur refusant un processeur sans instructions
+			// vectorielles, ou classe absente
+			return SCALAR;
+		} catch (LinkageError e) {
+			// Module jdk.incubator.vector absent
+			return SCALAR;
+		}
+	}
+}
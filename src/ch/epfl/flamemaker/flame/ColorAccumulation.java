@@ -0,0 +1,46 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Enumération des manières d'accumuler les index de couleur des points d'une
+ * case d'un accumulateur
+ */
+public enum ColorAccumulation {
+
+	/**
+	 * Moyenne mise à jour à chaque point, en double précision (12 octets par
+	 * case). C'est le mode de référence.
+	 */
+	RUNNING_MEAN {
+		@Override
+		AccumulatorStorage newStorage(long cells) {
+			return new HeapAccumulatorStorage(cells);
+		}
+	},
+
+	/**
+	 * Somme en simple précision, divisée une seule fois à la lecture (8
+	 * octets par case, sans division par point). Les blocs de cases dont une
+	 * case atteint {@link ColorSums#WIDE_HITS} points passent en double
+	 * précision (12 octets par case) : l'index moyen d'une case diffère de
+	 * celui de {@link #RUNNING_MEAN} d'au plus 2<sup>-12</sup>, quel que soit
+	 * son nombre de points (voir {@link ColorSums}).
+	 */
+	FLOAT_SUM {
+		@Override
+		AccumulatorStorage newStorage(long cells) {
+			return new FloatSumAccumulatorStorage(cells);
+		}
+	};
+
+	/**
+	 * @param cells
+	 *            Le nombre de cases
+	 * @return Un nouveau stockage dans le tas de <i>cells</i> cases vides
+	 */
+	abstract AccumulatorStorage newStorage(long cells);
+}
@@ -0,0 +1,194 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Classe modélisant les sommes des index de couleur des cases d'un
+ * accumulateur, gardées par blocs de cases contiguës. Un bloc commence en
+ * simple précision (et n'est alloué qu'à sa première somme), puis est promu
+ * en double précision dès qu'une de ses cases atteint {@link #WIDE_HITS}
+ * points.<br />
+ * La somme des index de couleur de n points d'une case est inférieure à n,
+ * et chaque addition en simple précision l'arrondit d'au plus la moitié de
+ * l'écart entre deux flottants consécutifs : l'erreur sur l'index moyen
+ * d'une case est donc bornée par n * 2<sup>-24</sup> tant qu'elle est en
+ * simple précision, soit au plus 2<sup>-12</sup>. Sans promotion, cette
+ * borne dépasserait 1 au-delà de 2<sup>24</sup> points : la somme cesse
+ * alors de croître, et l'index moyen tend vers 0.
+ */
+final class ColorSums {
+
+	/**
+	 * Le nombre de points d'une case à partir duquel son bloc est gardé en
+	 * double précision
+	 */
+	static final long WIDE_HITS = 1 << 12;
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'un bloc par défaut
+	 */
+	private static final int BLOCK_SHIFT = 12;
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'un bloc, et le masque
+	 * donnant la position d'une case dans son bloc
+	 */
+	private final int m_blockShift, m_blockMask;
+
+	/**
+	 * Les sommes de chaque bloc, en simple ou en double précision ; seul le
+	 * tableau correspondant à la précision du bloc est alloué (aucun pour un
+	 * bloc encore vide)
+	 */
+	private final float[][] m_floats;
+	private final double[][] m_doubles;
+
+	/**
+	 * Construit les sommes nulles de <i>size</i> cases, par blocs de
+	 * 2<sup>{@value #BLOCK_SHIFT}</sup> cases
+	 *
+	 * @param size
+	 *            Le nombre de cases
+	 */
+	ColorSums(long size) {
+		this(size, BLOCK_SHIFT);
+	}
+
+	/**
+	 * Construit les sommes nulles de <i>size</i> cases
+	 *
+	 * @param size
+	 *            Le nombre de cases
+	 * @param blockShift
+	 *            Le logarithme en base 2 du nombre de cases d'un bloc, au
+	 *            plus celui de {@link AccumulatorStorage#ALIGNMENT} pour que
+	 *            des intervalles alignés puissent être fusionnés en parallèle
+	 */
+	ColorSums(long size, int blockShift) {
+		int blocks = (int) ((size + (1L << blockShift) - 1) >>> blockShift);
+
+		m_blockShift = blockShift;
+		m_blockMask = (1 << blockShift) - 1;
+		m_floats = new float[blocks][];
+		m_doubles = new double[blocks][];
+	}
+
+	/**
+	 * Construit une copie de sommes
+	 */
+	private ColorSums(ColorSums other) {
+		m_blockShift = other.m_blockShift;
+		m_blockMask = other.m_blockMask;
+		m_floats = new float[other.m_floats.length][];
+		m_doubles = new double[other.m_doubles.length][];
+
+		for (int b = 0; b < m_floats.length; b++) {
+			copyBlock(other, b);
+		}
+	}
+
+	/**
+	 * @param index
+	 *            L'index de la case
+	 * @return La somme des index de couleur de la case
+	 */
+	double get(long index) {
+		int block = (int) (index >>> m_blockShift);
+		int i = (int) index & m_blockMask;
+
+		double[] doubles = m_doubles[block];
+		if (doubles != null) {
+			return doubles[i];
+		}
+		float[] floats = m_floats[block];
+		return floats == null ? 0 : floats[i];
+	}
+
+	/**
+	 * Ajoute une valeur à la somme d'une case, en promouvant son bloc en
+	 * double précision si nécessaire
+	 *
+	 * @param index
+	 *            L'index de la case
+	 * @param value
+	 *            La valeur à ajouter
+	 * @param hits
+	 *            Le nombre de points de la case, ceux de <i>value</i> compris
+	 */
+	void add(long index, double value, long hits) {
+		int block = (int) (index >>> m_blockShift);
+		int i = (int) index & m_blockMask;
+
+		double[] doubles = m_doubles[block];
+		if (doubles == null) {
+			if (hits < WIDE_HITS) {
+				float[] floats = m_floats[block];
+				if (floats == null) {
+					floats = m_floats[block] = new float[m_blockMask + 1];
+				}
+				floats[i] += (float) value;
+				return;
+			}
+			doubles = widen(block);
+		}
+		doubles[i] += value;
+	}
+
+	/**
+	 * Remplace un bloc par celui d'autres sommes de mêmes blocs
+	 *
+	 * @param other
+	 *            Les sommes à copier
+	 * @param block
+	 *            L'index du bloc
+	 */
+	void copyBlock(ColorSums other, int block) {
+		float[] floats = other.m_floats[block];
+		double[] doubles = other.m_doubles[block];
+		m_floats[block] = floats == null ? null : floats.clone();
+		m_doubles[block] = doubles == null ? null : doubles.clone();
+	}
+
+	/**
+	 * @return Le nombre d'octets occupés par les blocs alloués (sans compter
+	 *         les en-têtes des tableaux)
+	 */
+	long bytes() {
+		long bytes = m_floats.length * 8L * 2;
+		for (int b = 0; b < m_floats.length; b++) {
+			if (m_doubles[b] != null) {
+				bytes += 8L * (m_blockMask + 1);
+			} else if (m_floats[b] != null) {
+				bytes += 4L * (m_blockMask + 1);
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return Une copie indépendante de ces sommes
+	 */
+	ColorSums copy() {
+		return new ColorSums(this);
+	}
+
+	/**
+	 * Promeut un bloc en double précision
+	 *
+	 * @return Le tableau des sommes du bloc
+	 */
+	private double[] widen(int block) {
+		double[] doubles = new double[m_blockMask + 1];
+		float[] floats = m_floats[block];
+		if (floats != null) {
+			for (int i = 0; i < doubles.length; i++) {
+				doubles[i] = floats[i];
+			}
+		}
+		m_floats[block] = null;
+		return m_doubles[block] = doubles;
+	}
+}
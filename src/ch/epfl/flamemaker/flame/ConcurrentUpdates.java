@@ -0,0 +1,64 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Enumération des manières de rendre sûrs les ajouts de points simultanés de
+ * plusieurs fils d'exécution dans un même accumulateur (voir
+ * {@link FlameAccumulator.ConcurrentBuilder})
+ */
+public enum ConcurrentUpdates {
+
+	/**
+	 * Chaque point est ajouté par deux additions atomiques : l'une sur le
+	 * nombre de points de la case, l'autre sur la somme en double précision
+	 * de ses index de couleur (12 octets par case). Aucun verrou n'est pris.
+	 */
+	ATOMIC {
+		@Override
+		AccumulatorStorage newStorage(long cells) {
+			return new AtomicAccumulatorStorage(cells);
+		}
+
+		@Override
+		int bytesPerCell() {
+			return 12;
+		}
+	},
+
+	/**
+	 * Les cases sont réparties en tuiles de 4096 cases, protégées chacune par
+	 * son propre verrou, et gardent la moyenne en double précision de leurs
+	 * index de couleur comme en mode {@link ColorAccumulation#RUNNING_MEAN}
+	 * (12 octets par case).
+	 */
+	STRIPED {
+		@Override
+		AccumulatorStorage newStorage(long cells) {
+			return new StripedAccumulatorStorage(cells);
+		}
+
+		@Override
+		int bytesPerCell() {
+			return 12;
+		}
+	};
+
+	/**
+	 * @param cells
+	 *            Le nombre de cases
+	 * @return Un nouveau stockage de <i>cells</i> cases vides, dont les
+	 *         méthodes {@link AccumulatorStorage#hit} et
+	 *         {@link AccumulatorStorage#add} peuvent être appelées par
+	 *         plusieurs fils d'exécution à la fois
+	 */
+	abstract AccumulatorStorage newStorage(long cells);
+
+	/**
+	 * @return Le nombre d'octets occupés par chaque case du stockage
+	 */
+	abstract int bytesPerCell();
+}
@@ -0,0 +1,95 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Approximations rapides du sinus et du cosinus utilisées par les variations
+ * en mode de calcul rapide (voir {@link Flame#withFastMath(boolean)}). Les
+ * valeurs sont interpolées linéairement dans une table de
+ * {@value #TABLE_SIZE} valeurs du sinus sur une période : l'erreur absolue
+ * est au plus h²/8 avec h = 2π / {@value #TABLE_SIZE}, soit
+ * {@value #MAX_ERROR}, pour tout |x| ≤ {@value #TABLE_LIMIT}. Au-delà, où
+ * la réduction de l'argument perdrait en précision, ce sont les fonctions de
+ * {@link Math} qui sont utilisées.
+ */
+final class FastMath {
+
+	/**
+	 * Le nombre d'intervalles de la table sur une période
+	 */
+	static final int TABLE_SIZE = 1 << 12;
+
+	/**
+	 * L'erreur absolue maximale des approximations
+	 */
+	static final double MAX_ERROR = 3e-7;
+
+	/**
+	 * La valeur absolue au-delà de laquelle les fonctions de {@link Math}
+	 * sont utilisées
+	 */
+	static final double TABLE_LIMIT = 1 << 20;
+
+	/**
+	 * Le masque donnant la position d'un intervalle dans la période
+	 */
+	private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+	/**
+	 * Le nombre d'intervalles de la table par radian
+	 */
+	private static final double SCALE = TABLE_SIZE / (2 * Math.PI);
+
+	/**
+	 * Le sinus au début de chaque intervalle, et la pente du sinus sur
+	 * chaque intervalle ; le cosinus se lit un quart de période plus loin
+	 */
+	private static final double[] SIN = new double[TABLE_SIZE];
+	private static final double[] SLOPE = new double[TABLE_SIZE];
+
+	static {
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			SIN[i] = Math.sin(i / SCALE);
+		}
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			SLOPE[i] = SIN[(i + 1) & TABLE_MASK] - SIN[i];
+		}
+	}
+
+	private FastMath() {
+	}
+
+	/**
+	 * @return Une approximation de sin(x), à {@link #MAX_ERROR} près
+	 */
+	static double sin(double x) {
+		if (!(Math.abs(x) <= TABLE_LIMIT)) {
+			return Math.sin(x);
+		}
+		return interpolate(x * SCALE);
+	}
+
+	/**
+	 * @return Une approximation de cos(x), à {@link #MAX_ERROR} près
+	 */
+	static double cos(double x) {
+		if (!(Math.abs(x) <= TABLE_LIMIT)) {
+			return Math.cos(x);
+		}
+		return interpolate(x * SCALE + TABLE_SIZE / 4);
+	}
+
+	/**
+	 * @param position
+	 *            La position dans la table, en intervalles depuis 0
+	 * @return La valeur interpolée du sinus à cette position
+	 */
+	private static double interpolate(double position) {
+		double floor = Math.floor(position);
+		int i = (int) (long) floor & TABLE_MASK;
+		return SIN[i] + (position - floor) * SLOPE[i];
+	}
+}
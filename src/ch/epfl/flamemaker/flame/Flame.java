@@ -5,19 +5,31 @@
 
 package ch.epfl.flamemaker.flame;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import ch.epfl.flamemaker.geometry2d.AffineTransformation;
-import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+import ch.epfl.flamemaker.random.LegacyRandomSource;
 
 /**
  * Classe modélisant une fractale de type Flame
  */
 public class Flame {
 
+	/**
+	 * La graine du générateur aléatoire utilisé lorsqu'aucun générateur n'est
+	 * fourni au calcul
+	 */
+	public static final long DEFAULT_SEED = 2013;
+
 	/**
 	 * Contient la liste des transformations caractérisant la fractale
 	 */
@@ -25,23 +37,208 @@ public class Flame {
 	
 	final private double[] m_colorIndexes;
 
+	/**
+	 * Les poids de sélection de chaque transformation : la probabilité de
+	 * choisir une transformation à chaque itération est proportionnelle à son
+	 * poids
+	 */
+	final private double[] m_selectionWeights;
+
+	/**
+	 * La table permettant de tirer une transformation selon son poids de
+	 * sélection en temps constant
+	 */
+	final private AliasSampler m_sampler;
+
+	/**
+	 * Vrai si les variations sont calculées avec les approximations rapides
+	 * de {@link FastMath}
+	 */
+	final private boolean m_fastMath;
+
+	/**
+	 * Vrai si les orbites sont calculées par une boucle spécialisée pour la
+	 * fractale (voir {@link FlameSpecializer})
+	 */
+	final private boolean m_specialized;
+
+	/**
+	 * Le nombre d'orbites entremêlées par chaque marcheur (voir
+	 * {@link #withLanes(int)})
+	 */
+	final private int m_lanes;
+
 	/**
 	 * Construit une nouvelle fractale à partir d'une liste de transformation la
-	 * caractérisant
+	 * caractérisant. Toutes les transformations ont la même probabilité d'être
+	 * choisies.
 	 * 
 	 * @param transforms
 	 *            La liste des transformation
 	 */
 	public Flame(List<FlameTransformation> transforms) {
+		this(transforms, uniformWeights(transforms.size()));
+	}
+
+	/**
+	 * Construit une nouvelle fractale à partir d'une liste de transformation la
+	 * caractérisant et du poids de sélection de chacune d'elles
+	 * 
+	 * @param transforms
+	 *            La liste des transformation
+	 * @param selectionWeights
+	 *            Les poids de sélection des transformations, dans le même
+	 *            ordre que celles-ci
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de poids ne correspond pas au nombre de
+	 *             transformations, si un poids est négatif ou si tous les
+	 *             poids sont nuls
+	 */
+	public Flame(List<FlameTransformation> transforms, double[] selectionWeights) {
+		if (selectionWeights.length != transforms.size()) {
+			throw new IllegalArgumentException(
+					"selectionWeights must have length " + transforms.size());
+		}
+
 		m_transforms = new ArrayList<FlameTransformation>(transforms);
+		m_selectionWeights = selectionWeights.clone();
+		m_sampler = new AliasSampler(m_selectionWeights);
 		
 		m_colorIndexes = new double[m_transforms.size()];
 		for(int i = 0 ; i < transforms.size() ; i++){
 			m_colorIndexes[i] = getColorIndex(i);
 		}
+		m_fastMath = false;
+		m_specialized = false;
+		m_lanes = 1;
+	}
+
+	/**
+	 * Construit une copie d'une fractale dont seul le mode de calcul change
+	 */
+	private Flame(Flame other, boolean fastMath, boolean specialized,
+			int lanes) {
+		m_transforms = other.m_transforms;
+		m_selectionWeights = other.m_selectionWeights;
+		m_sampler = other.m_sampler;
+		m_colorIndexes = other.m_colorIndexes;
+		m_fastMath = fastMath;
+		m_specialized = specialized;
+		m_lanes = lanes;
+	}
+
+	/**
+	 * Retourne la même fractale en mode de calcul rapide ou exact. En mode
+	 * rapide, les sinus et cosinus des variations sinusoïdale et tourbillon
+	 * sont approchés à 3·10<sup>-7</sup> près (voir {@link FastMath}). Les
+	 * transformations d'une fractale usuelle étant contractantes, ces erreurs
+	 * ne s'accumulent pas le long de l'orbite : l'image ne diffère du rendu
+	 * exact de même graine que sur quelques pixels, bien moins qu'entre deux
+	 * graines différentes, ce qui convient aux aperçus et aux brouillons. Le
+	 * test {@code FastMathTest} vérifie ces deux propriétés, et la mesure
+	 * "fastmath" de {@code FlameBenchmark} le gain de temps.
+	 * 
+	 * @param enabled
+	 *            Vrai pour le mode rapide, faux pour le mode exact
+	 * @return La fractale dans le mode demandé
+	 */
+	public Flame withFastMath(boolean enabled) {
+		return enabled == m_fastMath ? this : new Flame(this, enabled,
+				m_specialized, m_lanes);
+	}
+
+	/**
+	 * @return Vrai si la fractale est calculée en mode rapide
+	 * @see #withFastMath(boolean)
+	 */
+	public boolean fastMath() {
+		return m_fastMath;
+	}
+
+	/**
+	 * Retourne la même fractale calculée, ou non, par une boucle spécialisée :
+	 * au premier calcul, une classe propre à la fractale est générée,
+	 * compilée et chargée, avec les coefficients et les variations actives de
+	 * chaque transformation écrits en dur (voir {@link FlameSpecializer}),
+	 * puis réutilisée par les calculs des fractales égales. Les points
+	 * calculés sont exactement les mêmes ; seule la vitesse change, au prix
+	 * d'une compilation de quelques dizaines à quelques centaines de
+	 * millisecondes. Si la classe ne peut pas être compilée (par exemple sans
+	 * compilateur Java à l'exécution), la cause est journalisée et la boucle
+	 * habituelle est utilisée : {@link FlameRenderSession#specializedLoop()}
+	 * indique laquelle l'a été. Seules les orbites seules en profitent, pas
+	 * les marcheurs à plusieurs orbites entremêlées.
+	 * 
+	 * @param enabled
+	 *            Vrai pour utiliser une boucle spécialisée
+	 * @return La fractale avec ou sans boucle spécialisée
+	 */
+	public Flame withSpecializedLoop(boolean enabled) {
+		return enabled == m_specialized ? this : new Flame(this, m_fastMath,
+				enabled, m_lanes);
+	}
+
+	/**
+	 * @return Vrai si la fractale est calculée par une boucle spécialisée
+	 * @see #withSpecializedLoop(boolean)
+	 */
+	public boolean specializedLoop() {
+		return m_specialized;
+	}
+
+	/**
+	 * Retourne la même fractale dont chaque orbite des calculs est remplacée
+	 * par un marcheur avançant à tour de rôle <i>lanes</i> orbites
+	 * indépendantes, dont les points sont transformés par lots par le
+	 * meilleur noyau disponible (voir {@link BatchKernel}). Entremêler les
+	 * orbites laisse le processeur chevaucher leurs calculs, sans bâtisseur
+	 * supplémentaire ; ce n'est un gain qu'avec le noyau vectoriel, à partir
+	 * d'environ 16 orbites par marcheur. Les orbites ne sont pas celles d'un
+	 * calcul à une seule voie : les images diffèrent comme entre deux
+	 * graines, mais la répartition des points est la même.
+	 * 
+	 * @param lanes
+	 *            Le nombre d'orbites de chaque marcheur, 1 pour une seule
+	 *            orbite
+	 * @return La fractale calculée avec ce nombre d'orbites par marcheur
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'orbites n'est pas compris entre 1 et 256
+	 */
+	public Flame withLanes(int lanes) {
+		if (lanes < 1 || lanes > FlameWalker.MAX_LANES) {
+			throw new IllegalArgumentException("lanes must be between 1 and "
+					+ FlameWalker.MAX_LANES);
+		}
+
+		return lanes == m_lanes ? this : new Flame(this, m_fastMath,
+				m_specialized, lanes);
 	}
 
 	/**
+	 * @return Le nombre d'orbites de chaque marcheur des calculs
+	 * @see #withLanes(int)
+	 */
+	public int lanes() {
+		return m_lanes;
+	}
+
+	/**
+	 * @param index
+	 *            L'index de la transformation
+	 * @return Le poids de sélection de la transformation d'index <i>index</i>
+	 * @throws IndexOutOfBoundsException
+	 *             Si l'index n'est pas valide
+	 */
+	public double selectionWeight(int index) {
+		return m_selectionWeights[index];
+	}
+
+	/**
+	 * Calcule la fractale en tirant les transformations avec le générateur
+	 * de {@link java.util.Random} de graine {@link #DEFAULT_SEED}, comme l'a
+	 * toujours fait cette méthode : le rendu ne change pas d'une version à
+	 * l'autre.
+	 * 
 	 * @param frame
 	 *            La région du plan dans laquelle calculer la fractale
 	 * @param width
@@ -55,47 +252,266 @@ public class Flame {
 	 */
 	public FlameAccumulator compute(Rectangle frame, int width, int height,
 			int density) {
-		// On initialise un random déterminé par la graine 2013
-		Random randomizer = new Random(2013);
+		return compute(frame, width, height, density, defaultRandom());
+	}
 
-		// Création des variables utilisées dans les boucles de calcul
-		Point point = new Point(0, 0);
-		int k = 20;
-		int transformationNum;
+	/**
+	 * Calcule la fractale en tirant les transformations avec le générateur
+	 * <i>random</i>. Deux calculs avec des générateurs de même état donnent
+	 * le même accumulateur.
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param random
+	 *            Le générateur aléatoire à utiliser
+	 * @return L'accumulateur contenant les points de la fractale
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, RandomSource random) {
+		FlameRenderSession session = new FlameRenderSession(this, frame,
+				width, height, random);
+		session.runPass((long) density * width * height);
 
-		// On récupère une fois pour toutes la taille de la liste de
-		// transformations
-		int size = m_transforms.size();
-		
-		// Création du builder
-		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(frame,
-				width, height);
-		
-		if (size == 0) return builder.build();
-		
-		// Garde en mémoire la couleur du dernier point accumulé
-		double lastColor = 0;
-
-		// 20 premières itérations dans le vide pour l'algorithme du chaos
-		for (int i = 0; i < k; i++) {
-			transformationNum = randomizer.nextInt(size);
-			point = m_transforms.get(transformationNum).transformPoint(point);
-			lastColor = (lastColor + m_colorIndexes[transformationNum]) / 2.0;
+		return session.snapshot();
+	}
+
+	/**
+	 * Calcule la fractale comme {@link #compute(Rectangle, int, int, int)},
+	 * mais dans un accumulateur stocké hors du tas, dans un fichier
+	 * temporaire projeté en mémoire : la taille de l'accumulateur n'est alors
+	 * limitée que par l'espace disque (12 octets par case). Le rendu est le
+	 * même que dans le tas.
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param directory
+	 *            Le dossier dans lequel créer le fichier, ou null pour le
+	 *            dossier temporaire du système
+	 * @return L'accumulateur contenant les points de la fractale
+	 * @throws IOException
+	 *             Si le fichier ne peut pas être créé
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, File directory) throws IOException {
+		FlameRenderSession session = new FlameRenderSession(this, frame,
+				width, height, defaultRandom(), directory);
+		session.runPass((long) density * width * height);
+
+		return session.snapshot();
+	}
+
+	/**
+	 * Calcule la fractale en répartissant les itérations sur <i>threads</i>
+	 * fils d'exécution. Chaque fil possède son propre générateur aléatoire et
+	 * son propre bâtisseur d'accumulateur ; ceux-ci sont fusionnés une fois
+	 * tous les calculs terminés. Les générateurs des fils dérivent de celui
+	 * de {@link #compute(Rectangle, int, int, int)} : avec un seul fil, le
+	 * rendu est le même.
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param threads
+	 *            Le nombre de fils d'exécution à utiliser
+	 * @return L'accumulateur contenant les points de la fractale
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de fils d'exécution n'est pas strictement
+	 *             positif
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, int threads) {
+		return compute(frame, width, height, density, defaultRandom(), threads);
+	}
+
+	/**
+	 * Calcule la fractale en répartissant les itérations sur <i>threads</i>
+	 * fils d'exécution, chacun utilisant un générateur obtenu par division de
+	 * <i>random</i>
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param random
+	 *            Le générateur dont sont dérivés ceux des fils d'exécution
+	 * @param threads
+	 *            Le nombre de fils d'exécution à utiliser
+	 * @return L'accumulateur contenant les points de la fractale
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de fils d'exécution n'est pas strictement
+	 *             positif
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, RandomSource random, int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException(
+					"threads must be strictly positive");
 		}
 
-		// Iterations accumulées pour le rendu
-		int m = density * width * height;
-		for (int i = 0; i < m; i++) {
-			transformationNum = randomizer.nextInt(size);
-			point = m_transforms.get(transformationNum).transformPoint(point);
-			lastColor = (lastColor + m_colorIndexes[transformationNum]) / 2.0;
-			
-			if(frame.contains(point))
-				builder.hit(point, lastColor);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			return compute(frame, width, height, density, random, executor,
+					threads);
+		} finally {
+			executor.shutdownNow();
 		}
+	}
+
+	/**
+	 * Calcule la fractale en découpant les itérations en <i>tasks</i> tâches
+	 * indépendantes, exécutées par <i>executor</i>. Chaque tâche parcourt sa
+	 * propre orbite (avec son propre générateur aléatoire) et accumule ses
+	 * points dans son propre bâtisseur ; les bâtisseurs sont fusionnés à la
+	 * fin du calcul.
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param executor
+	 *            L'exécuteur sur lequel lancer les tâches
+	 * @param tasks
+	 *            Le nombre de tâches entre lesquelles répartir les itérations
+	 * @return L'accumulateur contenant les points de la fractale
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de tâches n'est pas strictement positif
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant le calcul
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, ExecutorService executor, int tasks) {
+		return compute(frame, width, height, density, defaultRandom(),
+				executor, tasks);
+	}
+
+	/**
+	 * Calcule la fractale en découpant les itérations en <i>tasks</i> tâches
+	 * exécutées par <i>executor</i>. S'il y a plusieurs tâches, le générateur
+	 * de chacune est obtenu par division de <i>random</i>, dans l'ordre des
+	 * tâches : le résultat est donc reproductible pour un même générateur et
+	 * un même nombre de tâches.
+	 * 
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur à générer
+	 * @param height
+	 *            La hauteur de l'accumulateur à générer
+	 * @param density
+	 *            La densité utilisée pour générer les points de la fractale
+	 * @param random
+	 *            Le générateur dont sont dérivés ceux des tâches
+	 * @param executor
+	 *            L'exécuteur sur lequel lancer les tâches
+	 * @param tasks
+	 *            Le nombre de tâches entre lesquelles répartir les itérations
+	 * @return L'accumulateur contenant les points de la fractale
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de tâches n'est pas strictement positif
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant le calcul
+	 */
+	public FlameAccumulator compute(Rectangle frame, int width, int height,
+			int density, RandomSource random,
+			ExecutorService executor, int tasks) {
+		if (tasks <= 0) {
+			throw new IllegalArgumentException(
+					"tasks must be strictly positive");
+		}
+
+		FlameRenderSession session = new FlameRenderSession(this, frame,
+				width, height, random, tasks);
+		session.runPass((long) density * width * height, executor);
+
+		return session.snapshot(executor);
+	}
+
+	/**
+	 * Deux fractales sont égales si elles ont les mêmes transformations, dans
+	 * le même ordre, avec les mêmes poids de sélection, le même mode de
+	 * calcul et le même nombre d'orbites par marcheur : elles produisent
+	 * alors le même accumulateur pour un même calcul. L'usage d'une boucle spécialisée, qui ne change pas les points
+	 * calculés, n'est pas comparé.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Flame)) {
+			return false;
+		}
+
+		Flame that = (Flame) other;
+		return m_transforms.equals(that.m_transforms)
+				&& Arrays.equals(m_selectionWeights, that.m_selectionWeights)
+				&& m_fastMath == that.m_fastMath && m_lanes == that.m_lanes;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * m_transforms.hashCode()
+				+ Arrays.hashCode(m_selectionWeights);
+	}
+
+	/**
+	 * @return Le nombre de transformations de la fractale
+	 */
+	int transformationsCount() {
+		return m_transforms.size();
+	}
+
+	/**
+	 * @param index
+	 *            L'index de la transformation
+	 * @return La transformation d'index <i>index</i>
+	 */
+	FlameTransformation transformation(int index) {
+		return m_transforms.get(index);
+	}
+
+	/**
+	 * @param index
+	 *            L'index de la transformation
+	 * @return L'index de couleur associé à la transformation
+	 */
+	double colorIndex(int index) {
+		return m_colorIndexes[index];
+	}
+
 
-		// On construit l'accumulateur
-		return builder.build();
+	/**
+	 * Tire au hasard l'index d'une transformation selon les poids de
+	 * sélection
+	 * 
+	 * @param random
+	 *            Le générateur aléatoire à utiliser
+	 * @return L'index de la transformation tirée
+	 */
+	int sampleTransformation(RandomSource random) {
+		return m_sampler.sample(random);
 	}
 
 	/**
@@ -116,6 +532,29 @@ public class Flame {
 		}
 	}
 
+	/**
+	 * @return Le générateur utilisé lorsqu'aucun n'est fourni au calcul :
+	 *         celui de {@link java.util.Random}, afin qu'un calcul sans
+	 *         générateur explicite donne le même rendu qu'avant
+	 *         l'introduction des générateurs interchangeables. Un générateur
+	 *         plus rapide peut être passé aux variantes de
+	 *         {@link #compute(Rectangle, int, int, int, RandomSource)}.
+	 */
+	private static RandomSource defaultRandom() {
+		return new LegacyRandomSource(DEFAULT_SEED);
+	}
+
+	/**
+	 * @param count
+	 *            Le nombre de transformations
+	 * @return Un tableau de <i>count</i> poids de sélection égaux à 1
+	 */
+	private static double[] uniformWeights(int count) {
+		double[] weights = new double[count];
+		Arrays.fill(weights, 1);
+		return weights;
+	}
+
 	/**
 	 * Classe modélisant un bâtisseur pour une fractale Flame
 	 */
@@ -128,17 +567,33 @@ public class Flame {
 		private List<FlameTransformation.Builder> m_transformationsBuilders;
 
 		/**
-		 * Construit un bâtisseur à partir d'une fractale existante
+		 * Les poids de sélection des transformations, dans le même ordre que
+		 * leurs bâtisseurs
+		 */
+		private List<Double> m_selectionWeights;
+
+		/**
+		 * Le mode de calcul de la fractale qui sera construite
+		 */
+		private final boolean m_fastMath, m_specialized;
+
+		/**
+		 * Construit un bâtisseur à partir d'une fractale existante, dont le
+		 * mode de calcul est conservé
 		 * 
 		 * @param flame
 		 *            La fractale flame
 		 */
 		public Builder(Flame flame) {
 			m_transformationsBuilders = new ArrayList<FlameTransformation.Builder>();
-			for (FlameTransformation transformation : flame.m_transforms) {
+			m_selectionWeights = new ArrayList<Double>();
+			for (int i = 0; i < flame.m_transforms.size(); i++) {
 				m_transformationsBuilders.add(new FlameTransformation.Builder(
-						transformation));
+						flame.m_transforms.get(i)));
+				m_selectionWeights.add(flame.m_selectionWeights[i]);
 			}
+			m_fastMath = flame.m_fastMath;
+			m_specialized = flame.m_specialized;
 		}
 
 		/**
@@ -155,8 +610,59 @@ public class Flame {
 		 *            La transformation
 		 */
 		public void addTransformation(FlameTransformation transformation) {
+			addTransformation(transformation, 1);
+		}
+
+		/**
+		 * Ajoute une transformation de type flame à la fractale, avec le poids
+		 * de sélection donné
+		 * 
+		 * @param transformation
+		 *            La transformation
+		 * @param selectionWeight
+		 *            Le poids de sélection de la transformation
+		 * @throws IllegalArgumentException
+		 *             Si le poids est négatif
+		 */
+		public void addTransformation(FlameTransformation transformation,
+				double selectionWeight) {
+			checkSelectionWeight(selectionWeight);
+
 			m_transformationsBuilders.add(new FlameTransformation.Builder(
 					transformation));
+			m_selectionWeights.add(selectionWeight);
+		}
+
+		/**
+		 * @param index
+		 *            L'index de la transformation
+		 * @return Le poids de sélection de la transformation d'index
+		 *         <i>index</i>
+		 * @throws IllegalArgumentException
+		 *             Si l'index n'est pas valide
+		 */
+		public double selectionWeight(int index) {
+			checkIndex(index);
+
+			return m_selectionWeights.get(index);
+		}
+
+		/**
+		 * Modifie le poids de sélection de la transformation d'index
+		 * <i>index</i>
+		 * 
+		 * @param index
+		 *            L'index de la transformation
+		 * @param newWeight
+		 *            Le nouveau poids de sélection
+		 * @throws IllegalArgumentException
+		 *             Si l'index n'est pas valide ou si le poids est négatif
+		 */
+		public void setSelectionWeight(int index, double newWeight) {
+			checkIndex(index);
+			checkSelectionWeight(newWeight);
+
+			m_selectionWeights.set(index, newWeight);
 		}
 
 		/**
@@ -242,10 +748,17 @@ public class Flame {
 		public void removeTransformation(int index) {
 			checkIndex(index);
 			m_transformationsBuilders.remove(index);
+			m_selectionWeights.remove(index);
 		}
 
 		/**
-		 * Construit une fractale Flame à partir des informations récoltées
+		 * Construit une fractale Flame à partir des informations récoltées.
+		 * Si aucune transformation n'a un poids de sélection strictement
+		 * positif (par exemple après avoir mis à zéro le dernier poids non
+		 * nul), toutes les transformations sont choisies avec la même
+		 * probabilité, comme si leurs poids valaient 1 : la fractale reste
+		 * calculable pendant son édition. Les poids du bâtisseur ne sont pas
+		 * modifiés.
 		 * 
 		 * @return La fractale Flame construite
 		 */
@@ -255,7 +768,18 @@ public class Flame {
 				builtTransformations.add(transfoBuilder.build());
 			}
 
-			return new Flame(builtTransformations);
+			double[] selectionWeights = new double[m_selectionWeights.size()];
+			double sum = 0;
+			for (int i = 0; i < selectionWeights.length; i++) {
+				selectionWeights[i] = m_selectionWeights.get(i);
+				sum += selectionWeights[i];
+			}
+			if (sum <= 0) {
+				selectionWeights = uniformWeights(selectionWeights.length);
+			}
+
+			return new Flame(builtTransformations, selectionWeights)
+					.withFastMath(m_fastMath).withSpecializedLoop(m_specialized);
 		}
 
 		/**
@@ -273,6 +797,21 @@ public class Flame {
 			}
 		}
 
+		/**
+		 * Vérifie qu'un poids de sélection est valide
+		 * 
+		 * @param weight
+		 *            Le poids à vérifier
+		 * @throws IllegalArgumentException
+		 *             Si le poids est négatif ou non fini
+		 */
+		private void checkSelectionWeight(double weight) {
+			if (!(weight >= 0) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException(
+						"selection weight must be positive and finite");
+			}
+		}
+
 		public FlameTransformation getTransformation(int index) {
 			return m_transformationsBuilders.get(index).build();
 		}
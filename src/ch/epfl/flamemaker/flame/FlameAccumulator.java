@@ -5,82 +5,152 @@
 
 package ch.epfl.flamemaker.flame;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
 import ch.epfl.flamemaker.color.Palette;
 import ch.epfl.flamemaker.color.Color;
 import ch.epfl.flamemaker.geometry2d.AffineTransformation;
 import ch.epfl.flamemaker.geometry2d.Point;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
-import ch.epfl.flamemaker.geometry2d.Transformation;
 
 /**
- * Classe modélisant un accumulateur pour une fractale Flame
+ * Classe modélisant un accumulateur pour une fractale Flame.<br />
+ * Par défaut, les cases sont stockées rangée par rangée, dans l'ordre des
+ * rangées d'une image : la première rangée stockée est celle du haut
+ * (y = hauteur - 1) et la case (x, y) se trouve à l'index
+ * (hauteur - 1 - y) * largeur + x. D'autres dispositions peuvent être
+ * choisies à la création du bâtisseur (voir {@link AccumulatorLayout}). Les
+ * méthodes {@link #intensityRow} et {@link #colorRow} permettent de lire une
+ * rangée d'image entière quelle que soit la disposition.<br />
+ * Les cases sont conservées soit dans le tas (par défaut), soit dans un
+ * fichier projeté en mémoire pour les accumulateurs trop grands pour le tas
+ * (voir {@link Builder#Builder(Rectangle, int, int, File)}).
  */
 public class FlameAccumulator {
 
 	/**
-	 * Le nombre de points de chaque case de l'accumulateur
+	 * Le nombre de points et l'index de couleur de chaque case
 	 */
-	private int[][] m_hitCount;
+	private final AccumulatorStorage m_storage;
 
 	/**
-	 * La somme des index de couleur de l'accumulateur
+	 * Les dimensions de l'accumulateur ; la largeur est aussi l'écart entre
+	 * deux rangées dans le stockage
 	 */
-	private double[][] m_colorIndexes;
+	private final int m_width, m_height;
 
 	/**
-	 * Le dénominateur utilisé pour le calcul de l'intensité d'une case
+	 * La disposition des cases dans le stockage, et les deux parties de
+	 * l'index de chaque case : l'index de la case (x, row) est
+	 * m_rowBases[row] + m_columnOffsets[x]
 	 */
-	private double m_denominator;
+	private final AccumulatorLayout m_layout;
+	private final long[] m_rowBases, m_columnOffsets;
 
 	/**
-	 * Construit un accumulateur à partir d'un tableau contenant le nombre de
-	 * points de chaque case de l'accumulateur et de la somme des index de
-	 * couleur de chaque case
-	 * 
-	 * @param hitCount
-	 *            Le nombre de points contenu par chaque case
-	 * @param colorIndexSum
-	 *            La somme des index de couleur de chaque case
+	 * Le dénominateur utilisé pour le calcul de l'intensité d'une case
 	 */
-	private FlameAccumulator(int[][] hitCount, double[][] colorIndexSum) {
-
-		int maxHit = 0;
-		int width = hitCount.length;
-		int height = hitCount[0].length;
-
-		m_hitCount = new int[width][];
-		m_colorIndexes = new double[width][];
+	private final double m_denominator;
 
-		for (int i = 0; i < width; i++) {
-			m_hitCount[i] = new int[height];
-			m_colorIndexes[i] = new double[height];
+	/**
+	 * Le nombre de relances des orbites du calcul
+	 */
+	private final long m_reseeds;
 
-			for (int j = 0; j < height; j++) {
-				m_hitCount[i][j] = hitCount[i][j];
-				m_colorIndexes[i][j] = colorIndexSum[i][j];
+	/**
+	 * Construit un accumulateur à partir du stockage des cases. Le stockage
+	 * n'est pas copié : il ne doit plus être modifié ensuite.
+	 * 
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param layout
+	 *            La disposition des cases dans le stockage
+	 * @param storage
+	 *            Le nombre de points et l'index de couleur de chaque case
+	 * @param maxHit
+	 *            Le plus grand nombre de points d'une case
+	 */
+	FlameAccumulator(int width, int height, AccumulatorLayout layout,
+			AccumulatorStorage storage, long maxHit) {
+		m_width = width;
+		m_height = height;
+		m_layout = layout;
+		m_rowBases = layout.rowBases(width, height);
+		m_columnOffsets = layout.columnOffsets(width);
+		m_storage = storage;
 
-				if (maxHit < hitCount[i][j]) {
-					maxHit = hitCount[i][j];
-				}
+		m_denominator = Math.log(maxHit + 1);
+		m_reseeds = 0;
+	}
 
-			}
-		}
+	/**
+	 * Construit un accumulateur partageant les cases d'un autre
+	 * 
+	 * @param other
+	 *            L'accumulateur dont on reprend les cases
+	 * @param reseeds
+	 *            Le nombre de relances des orbites du calcul
+	 */
+	private FlameAccumulator(FlameAccumulator other, long reseeds) {
+		m_width = other.m_width;
+		m_height = other.m_height;
+		m_layout = other.m_layout;
+		m_rowBases = other.m_rowBases;
+		m_columnOffsets = other.m_columnOffsets;
+		m_storage = other.m_storage;
+		m_denominator = other.m_denominator;
+		m_reseeds = reseeds;
+	}
 
-		m_denominator = Math.log(maxHit + 1);
+	/**
+	 * @param reseeds
+	 *            Le nombre de relances des orbites du calcul
+	 * @return Un accumulateur identique à celui-ci (sans copie des cases),
+	 *         rapportant <i>reseeds</i> relances
+	 */
+	FlameAccumulator withReseeds(long reseeds) {
+		return new FlameAccumulator(this, reseeds);
 	}
 
 	/**
 	 * @return La largeur de l'accumulateur
 	 */
 	public int width() {
-		return m_hitCount.length;
+		return m_width;
 	}
 
 	/**
 	 * @return La hauteur de l'accumulateur
 	 */
 	public int height() {
-		return m_hitCount[0].length;
+		return m_height;
+	}
+
+	/**
+	 * @return Le nombre de fois qu'une orbite du calcul a été relancée parce
+	 *         que son point était devenu non fini ou s'était échappé (0 si
+	 *         aucune orbite n'est morte)
+	 */
+	public long reseeds() {
+		return m_reseeds;
+	}
+
+	/**
+	 * @return La disposition des cases de l'accumulateur dans son stockage
+	 */
+	public AccumulatorLayout layout() {
+		return m_layout;
 	}
 
 	/**
@@ -89,11 +159,7 @@ public class FlameAccumulator {
 	 * @return L'intensité de la case de coordonnées x, y de l'accumulateur
 	 */
 	public double intensity(int x, int y) {
-		if (x < 0 || y < 0 || x > m_hitCount.length || y > m_hitCount[0].length) {
-			throw new IndexOutOfBoundsException();
-		}
-
-		return Math.log(m_hitCount[x][y] + 1) / m_denominator;
+		return intensity(index(x, y));
 	}
 
 	/**
@@ -113,37 +179,192 @@ public class FlameAccumulator {
 	 *             Si les coordonnées du point sont invalides
 	 */
 	public Color color(Palette palette, Color background, int x, int y) {
-		if (x < 0 || y < 0 || x > m_colorIndexes.length
-				|| y > m_colorIndexes[0].length) {
+		long index = index(x, y);
+
+		return palette.colorForIndex(m_storage.colorIndex(index)).mixWith(
+				background, intensity(index));
+	}
+
+	/**
+	 * Lit les intensités d'une rangée d'image entière
+	 * 
+	 * @param row
+	 *            L'index de la rangée d'image, 0 étant la rangée du haut
+	 *            (c'est-à-dire y = hauteur - 1 - row)
+	 * @param intensities
+	 *            Tableau d'au moins {@link #width()} éléments dans lequel
+	 *            écrire les intensités
+	 * @throws IndexOutOfBoundsException
+	 *             Si la rangée est invalide ou si le tableau est trop petit
+	 */
+	public void intensityRow(int row, double[] intensities) {
+		long base = rowBase(row);
+		long[] columns = m_columnOffsets;
+		for (int x = 0; x < m_width; x++) {
+			intensities[x] = intensity(base + columns[x]);
+		}
+	}
+
+	/**
+	 * Calcule les couleurs d'une rangée d'image entière, au format RGB
+	 * compacté de {@link Color#asPackedRGB()}. Le résultat est identique à
+	 * celui de {@link #color(Palette, Color, int, int)}, mais les cases vides
+	 * sont directement remplies avec la couleur de fond. Avec la disposition
+	 * {@link AccumulatorLayout#MORTON}, les cases sont remises dans l'ordre
+	 * de l'image à l'aide des tables d'index précalculées.
+	 * 
+	 * @param palette
+	 *            La palette à utiliser
+	 * @param background
+	 *            La couleur de fond à utiliser
+	 * @param row
+	 *            L'index de la rangée d'image, 0 étant la rangée du haut
+	 *            (c'est-à-dire y = hauteur - 1 - row)
+	 * @param packedRGB
+	 *            Tableau d'au moins {@link #width()} éléments dans lequel
+	 *            écrire les couleurs
+	 * @throws IndexOutOfBoundsException
+	 *             Si la rangée est invalide ou si le tableau est trop petit
+	 */
+	public void colorRow(Palette palette, Color background, int row,
+			int[] packedRGB) {
+		long base = rowBase(row);
+		long[] columns = m_columnOffsets;
+		int packedBackground = background.asPackedRGB();
+
+		for (int x = 0; x < m_width; x++) {
+			long index = base + columns[x];
+			long hits = m_storage.hits(index);
+			if (hits == 0) {
+				packedRGB[x] = packedBackground;
+			} else {
+				packedRGB[x] = palette
+						.colorForIndex(m_storage.colorIndex(index))
+						.mixWith(background,
+								Math.log(hits + 1) / m_denominator)
+						.asPackedRGB();
+			}
+		}
+	}
+
+	/**
+	 * @param index
+	 *            L'index d'une case dans le stockage
+	 * @return L'intensité de cette case
+	 */
+	private double intensity(long index) {
+		return Math.log(m_storage.hits(index) + 1) / m_denominator;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @return L'index de la case (x, y) dans le stockage
+	 * @throws IndexOutOfBoundsException
+	 *             Si les coordonnées sont invalides
+	 */
+	private long index(int x, int y) {
+		if (x < 0 || y < 0 || x >= m_width || y >= m_height) {
 			throw new IndexOutOfBoundsException();
 		}
 
-		return palette.colorForIndex(m_colorIndexes[x][y]).mixWith(background,
-				intensity(x, y));
+		return m_rowBases[m_height - 1 - y] + m_columnOffsets[x];
+	}
+
+	/**
+	 * @param row
+	 *            L'index d'une rangée d'image
+	 * @return La partie de l'index des cases de cette rangée qui ne dépend
+	 *         que de la rangée
+	 * @throws IndexOutOfBoundsException
+	 *             Si la rangée est invalide
+	 */
+	private long rowBase(int row) {
+		if (row < 0 || row >= m_height) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		return m_rowBases[row];
 	}
 
 	/**
 	 * Classe modélisant un bâtisseur d'un accumulateur pour une fractale Flame
 	 */
-	public static class Builder {
+	public static class Builder implements HitSink {
+
+		/**
+		 * Le nombre de cases à partir duquel les points sont regroupés par
+		 * région avant d'être accumulés
+		 */
+		static final long BINNING_THRESHOLD = 1 << 17;
+
+		/**
+		 * Le nombre de cases à partir duquel un bâtisseur à compteurs
+		 * {@link HitCounters#INT} commence avec un stockage creux
+		 */
+		static final long SPARSE_THRESHOLD = 1 << 17;
+
+		/**
+		 * La proportion de blocs alloués au-delà de laquelle un stockage creux
+		 * est remplacé par un stockage dense, plus rapide et alors à peine
+		 * plus gros
+		 */
+		static final double DENSE_OCCUPANCY = 0.5;
+
+		/**
+		 * Le nombre de cases fusionnées par chaque tâche de
+		 * {@link #mergeAll(List, ExecutorService)}
+		 */
+		static final long MERGE_TASK_CELLS = 1 << 18;
 
 		/**
-		 * Le nombre de points de chaque case du futur accumulateur qui sera
-		 * construit
+		 * Le nombre de points et l'index de couleur de chaque case du futur
+		 * accumulateur, rangée d'image par rangée d'image
 		 */
-		private int[][] m_grid;
+		private AccumulatorStorage m_storage;
 
 		/**
-		 * La somme des index de couleur de chaque case du futur accumulateur
-		 * qui sera construit
+		 * Le stockage des cases s'il est creux, null sinon
 		 */
-		private double[][] m_colors;
+		private SparseAccumulatorStorage m_sparse;
+
+		/**
+		 * Les dimensions du futur accumulateur
+		 */
+		private final int m_width, m_height;
+
+		/**
+		 * La disposition des cases dans le stockage, et les deux parties de
+		 * l'index de chaque case
+		 */
+		private final AccumulatorLayout m_layout;
+		private final long[] m_rowBases, m_columnOffsets;
+
+		/**
+		 * Le plus grand nombre de points d'une case, tenu à jour à chaque
+		 * point ajouté
+		 */
+		private long m_maxHit = 0;
+
+		/**
+		 * Vrai si le stockage est partagé avec un accumulateur construit par
+		 * {@link #build()} : il doit alors être copié avant toute
+		 * modification
+		 */
+		private boolean m_shared = false;
 
 		/**
 		 * La transformation permettant d'associer un point du plan à un point
 		 * de l'accumulateur
 		 */
-		private Transformation m_transform;
+		private AffineTransformation m_transform;
+
+		/**
+		 * Les casiers dans lesquels les points sont regroupés par région
+		 * avant d'être accumulés, ou null si les points sont accumulés
+		 * directement
+		 */
+		private HitBinner m_binner;
 
 		/**
 		 * Construit un nouveau bâtisseur pour un accumulateur de largeur et
@@ -159,23 +380,194 @@ public class FlameAccumulator {
 		 *             Si la largeur ou la hauteur est invalide
 		 */
 		public Builder(Rectangle frame, int width, int height) {
-			if (width <= 0 || height <= 0) {
-				throw new IllegalArgumentException(
-						"width and height must be positive");
+			this(frame, width, height, AccumulatorLayout.ROW_MAJOR);
+		}
+
+		/**
+		 * Construit un nouveau bâtisseur dont les cases sont disposées dans
+		 * le stockage selon <i>layout</i>
+		 * 
+		 * @param frame
+		 *            La région du plan visée
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param layout
+		 *            La disposition des cases
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide
+		 */
+		public Builder(Rectangle frame, int width, int height,
+				AccumulatorLayout layout) {
+			this(frame, width, height, layout, ColorAccumulation.RUNNING_MEAN);
+		}
+
+		/**
+		 * Construit un nouveau bâtisseur dont les cases sont disposées dans
+		 * le stockage selon <i>layout</i> et dont les index de couleur sont
+		 * accumulés selon <i>colors</i>
+		 * 
+		 * @param frame
+		 *            La région du plan visée
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param layout
+		 *            La disposition des cases
+		 * @param colors
+		 *            La manière d'accumuler les index de couleur
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide
+		 */
+		public Builder(Rectangle frame, int width, int height,
+				AccumulatorLayout layout, ColorAccumulation colors) {
+			this(frame, width, height, layout, colors, HitCounters.INT);
+		}
+
+		/**
+		 * Construit un nouveau bâtisseur dont les cases sont disposées dans
+		 * le stockage selon <i>layout</i>, dont les index de couleur sont
+		 * accumulés selon <i>colors</i> et dont les points sont comptés selon
+		 * <i>counters</i>.<br />
+		 * Avec des compteurs {@link HitCounters#INT}, un grand accumulateur
+		 * commence avec un stockage creux dont seuls les blocs touchés par la
+		 * fractale sont alloués (voir {@link SparseAccumulatorStorage}) ; il
+		 * est remplacé par un stockage dense dès que la moitié des blocs sont
+		 * alloués.
+		 * 
+		 * @param frame
+		 *            La région du plan visée
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param layout
+		 *            La disposition des cases
+		 * @param colors
+		 *            La manière d'accumuler les index de couleur, ignorée
+		 *            avec des compteurs {@link HitCounters#TIERED} qui
+		 *            impliquent {@link ColorAccumulation#FLOAT_SUM}
+		 * @param counters
+		 *            La manière de compter les points
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide
+		 */
+		public Builder(Rectangle frame, int width, int height,
+				AccumulatorLayout layout, ColorAccumulation colors,
+				HitCounters counters) {
+			this(newStorage(cells(width, height, layout), layout, colors,
+					counters), layout, frame, width, height);
+		}
+
+		/**
+		 * @return Le stockage initial d'un bâtisseur de <i>cells</i> cases
+		 */
+		private static AccumulatorStorage newStorage(long cells,
+				AccumulatorLayout layout, ColorAccumulation colors,
+				HitCounters counters) {
+			if (counters == HitCounters.INT && cells >= SPARSE_THRESHOLD) {
+				return new SparseAccumulatorStorage(cells, layout.blockShift(),
+						colors);
 			}
+			return counters.newStorage(cells, colors);
+		}
+
+		/**
+		 * Construit un nouveau bâtisseur dont les cases sont stockées hors du
+		 * tas, dans un fichier temporaire projeté en mémoire. La taille de
+		 * l'accumulateur n'est alors limitée que par l'espace disque (12
+		 * octets par case) et non par la taille du tas, au prix d'accès un
+		 * peu plus lents. Le fichier est supprimé automatiquement.
+		 * 
+		 * @param frame
+		 *            La région du plan visée
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param directory
+		 *            Le dossier dans lequel créer le fichier, ou null pour le
+		 *            dossier temporaire du système
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide
+		 * @throws IOException
+		 *             Si le fichier ne peut pas être créé
+		 */
+		public Builder(Rectangle frame, int width, int height, File directory)
+				throws IOException {
+			this(new MappedAccumulatorStorage(directory, cells(width, height,
+					AccumulatorLayout.ROW_MAJOR)), AccumulatorLayout.ROW_MAJOR,
+					frame, width, height);
+		}
 
-			m_grid = new int[width][height];
-			m_colors = new double[width][height];
+		/**
+		 * Construit un nouveau bâtisseur utilisant le stockage donné
+		 * 
+		 * @param storage
+		 *            Le stockage des cases, vide et contenant le nombre de
+		 *            cases qu'exige <i>layout</i>
+		 * @param layout
+		 *            La disposition des cases
+		 */
+		Builder(AccumulatorStorage storage, AccumulatorLayout layout,
+				Rectangle frame, int width, int height) {
+			m_width = width;
+			m_height = height;
+			setStorage(storage);
+			m_layout = layout;
+			m_rowBases = layout.rowBases(width, height);
+			m_columnOffsets = layout.columnOffsets(width);
+
+			m_transform = gridTransformation(frame, width, height);
+			setBinning(storage.size() >= BINNING_THRESHOLD);
+		}
+
+		/**
+		 * Active ou désactive le regroupement des points par région avant
+		 * leur accumulation (voir {@link HitBinner}). Par défaut, il n'est
+		 * activé que pour les accumulateurs d'au moins
+		 * {@link #BINNING_THRESHOLD} cases, trop grands pour le cache du
+		 * processeur.
+		 * 
+		 * @param enabled
+		 *            Vrai pour regrouper les points
+		 */
+		void setBinning(boolean enabled) {
+			flushBins();
+			m_binner = enabled ? new HitBinner(m_storage.size(), this) : null;
+		}
 
-			// On crée la transformation qui passe d'un point du plan à un point
-			// de l'accumulateur
-			m_transform = AffineTransformation.newScaling(
+		/**
+		 * @return La transformation qui passe d'un point de la région du plan
+		 *         <i>frame</i> à un point d'un accumulateur de taille
+		 *         <i>width</i> x <i>height</i>
+		 */
+		static AffineTransformation gridTransformation(Rectangle frame,
+				int width, int height) {
+			return AffineTransformation.newScaling(
 					(double) width / frame.width(),
 					(double) height / frame.height()).composeWith(
 					AffineTransformation.newTranslation(-frame.left(),
 							-frame.bottom()));
 		}
 
+		/**
+		 * @return Le nombre de cases du stockage d'un accumulateur de la
+		 *         taille et de la disposition données
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide
+		 */
+		private static long cells(int width, int height,
+				AccumulatorLayout layout) {
+			if (width <= 0 || height <= 0) {
+				throw new IllegalArgumentException(
+						"width and height must be positive");
+			}
+			return layout.cells(width, height);
+		}
+
 		/**
 		 * Signale la présence d'un nouveau point p à partir de la position
 		 * définie par ce point et de sa couleur
@@ -187,21 +579,439 @@ public class FlameAccumulator {
 		 *            La couleur du point calculé
 		 */
 		public void hit(Point p, double colorIndex) {
-			Point coord = m_transform.transformPoint(p);
+			hit(p.x(), p.y(), colorIndex);
+		}
+
+		/**
+		 * Signale la présence d'un nouveau point de coordonnées (px, py) dans
+		 * le plan, sans créer d'instance de {@link Point}. Les points situés
+		 * hors de la région du plan visée sont ignorés.
+		 * 
+		 * @param px
+		 *            Abscisse du point dans le plan
+		 * @param py
+		 *            Ordonnée du point dans le plan
+		 * @param colorIndex
+		 *            La couleur du point calculé
+		 */
+		@Override
+		public void hit(double px, double py, double colorIndex) {
+			int x = (int) Math.floor(m_transform.transformX(px, py));
+			int y = (int) Math.floor(m_transform.transformY(px, py));
+
+			// Un point hors de l'accumulateur écraserait une case voisine
+			if (x < 0 || y < 0 || x >= m_width || y >= m_height) {
+				return;
+			}
+
+			hitCell(x, m_height - 1 - y, colorIndex);
+		}
+
+		/**
+		 * Ajoute un point à une case désignée par sa colonne et sa rangée
+		 * d'image, sans vérification
+		 * 
+		 * @param x
+		 *            La colonne de la case
+		 * @param row
+		 *            La rangée d'image de la case, 0 étant celle du haut
+		 * @param colorIndex
+		 *            La couleur du point calculé
+		 */
+		void hitCell(int x, int row, double colorIndex) {
+			long index = m_rowBases[row] + m_columnOffsets[x];
+
+			if (m_binner != null) {
+				m_binner.add(index, colorIndex);
+				return;
+			}
+
+			if (m_shared) {
+				unshare();
+			}
+
+			long hits = m_storage.hit(index, colorIndex);
+			if (hits > m_maxHit) {
+				m_maxHit = hits;
+			}
+		}
+
+		/**
+		 * Accumule un casier de points dont les cases appartiennent toutes à
+		 * la même région
+		 * 
+		 * @param base
+		 *            L'index de la première case de la région
+		 * @param offsets
+		 *            La position de la case de chaque point dans la région
+		 * @param colors
+		 *            L'index de couleur de chaque point
+		 * @param from
+		 *            La position du premier point dans les tableaux
+		 * @param count
+		 *            Le nombre de points
+		 */
+		void accumulate(long base, int[] offsets, double[] colors, int from,
+				int count) {
+			if (m_shared) {
+				unshare();
+			}
+
+			AccumulatorStorage storage = m_storage;
+			long maxHit = m_maxHit;
+			for (int i = from; i < from + count; i++) {
+				long hits = storage.hit(base + offsets[i], colors[i]);
+				if (hits > maxHit) {
+					maxHit = hits;
+				}
+			}
+			m_maxHit = maxHit;
+			densifyIfCrowded();
+		}
+
+		/**
+		 * Ajoute à ce bâtisseur les points accumulés par <i>other</i>. Les
+		 * index de couleur de chaque case sont combinés en moyenne pondérée
+		 * par le nombre de points de chaque bâtisseur.
+		 *
+		 * @param other
+		 *            Le bâtisseur dont on ajoute les points
+		 * @throws IllegalArgumentException
+		 *             Si les deux bâtisseurs n'ont pas la même taille ou la
+		 *             même disposition
+		 */
+		public void merge(Builder other) {
+			mergeAll(Collections.singletonList(other));
+		}
+
+		/**
+		 * Ajoute à ce bâtisseur les points accumulés par chacun des
+		 * bâtisseurs de <i>others</i>, dans l'ordre de la liste. Les cases sont
+		 * parcourues par intervalles de {@link AccumulatorStorage#ALIGNMENT}
+		 * cases, dans lesquels tous les bâtisseurs sont ajoutés l'un après
+		 * l'autre : l'intervalle courant de ce bâtisseur reste ainsi dans le
+		 * cache du processeur, et chacun des autres stockages n'est lu qu'une
+		 * fois.
+		 *
+		 * @param others
+		 *            Les bâtisseurs dont on ajoute les points
+		 * @throws IllegalArgumentException
+		 *             Si l'un des bâtisseurs n'a pas la même taille ou la même
+		 *             disposition que celui-ci
+		 */
+		public void mergeAll(List<Builder> others) {
+			AccumulatorStorage[] sources = prepareMerge(others);
+			updateMaxHit(mergeCells(m_storage, sources, 0, m_storage.size()));
+			densifyIfCrowded();
+		}
+
+		/**
+		 * Ajoute à ce bâtisseur les points accumulés par chacun des
+		 * bâtisseurs de <i>others</i>, comme {@link #mergeAll(List)}, en
+		 * répartissant les cases entre des tâches de
+		 * {@link #MERGE_TASK_CELLS} cases exécutées par <i>executor</i>.
+		 * Chaque case reçoit les points des bâtisseurs dans l'ordre de la
+		 * liste : le résultat est identique à celui de la fusion séquentielle,
+		 * quel que soit le nombre de fils d'exécution.
+		 *
+		 * @param others
+		 *            Les bâtisseurs dont on ajoute les points
+		 * @param executor
+		 *            L'exécuteur sur lequel lancer les tâches
+		 * @throws IllegalArgumentException
+		 *             Si l'un des bâtisseurs n'a pas la même taille ou la même
+		 *             disposition que celui-ci
+		 * @throws CancellationException
+		 *             Si le fil appelant est interrompu pendant la fusion. Le
+		 *             bâtisseur ne doit alors plus être utilisé.
+		 */
+		public void mergeAll(List<Builder> others, ExecutorService executor) {
+			final AccumulatorStorage[] sources = prepareMerge(others);
+			final AccumulatorStorage storage = m_storage;
+			long size = storage.size();
+
+			List<Future<Long>> futures = new ArrayList<Future<Long>>();
+			for (long from = 0; from < size; from += MERGE_TASK_CELLS) {
+				final long start = from, end = Math.min(size, from
+						+ MERGE_TASK_CELLS);
+				futures.add(executor.submit(new Callable<Long>() {
+					@Override
+					public Long call() {
+						return mergeCells(storage, sources, start, end);
+					}
+				}));
+			}
+
+			for (Long maxHit : Futures.getAll(futures,
+					"Fusion des accumulateurs interrompue")) {
+				updateMaxHit(maxHit);
+			}
+
+			densifyIfCrowded();
+		}
+
+		/**
+		 * Construit un accumulateur avec les données récoltées. Les données ne
+		 * sont pas copiées : l'accumulateur partage le stockage du bâtisseur,
+		 * qui ne le recopie que si des points lui sont ajoutés ensuite. La
+		 * construction ne demande donc ni mémoire supplémentaire ni parcours
+		 * des données.
+		 */
+		public FlameAccumulator build() {
+			flushBins();
+			m_shared = true;
+			return new FlameAccumulator(m_width, m_height, m_layout,
+					m_storage, m_maxHit);
+		}
+
+		/**
+		 * @return Le plus grand nombre de points d'une case
+		 */
+		long maxHit() {
+			flushBins();
+			return m_maxHit;
+		}
+
+		/**
+		 * @return Le stockage des cases de ce bâtisseur, à ne lire que
+		 *         lorsque plus aucun point ne lui est ajouté
+		 */
+		AccumulatorStorage storage() {
+			flushBins();
+			return m_storage;
+		}
+
+		/**
+		 * Prépare la fusion des bâtisseurs <i>others</i> dans celui-ci : vide
+		 * tous les casiers, rend le stockage propre à ce bâtisseur, et le rend
+		 * dense si l'un des autres stockages l'est déjà (la somme sera au
+		 * moins aussi occupée, et les fusions entre stockages de même type
+		 * sont les plus rapides)
+		 *
+		 * @return Les stockages des bâtisseurs à fusionner
+		 * @throws IllegalArgumentException
+		 *             Si l'un des bâtisseurs n'a pas la même taille ou la même
+		 *             disposition que celui-ci
+		 */
+		private AccumulatorStorage[] prepareMerge(List<Builder> others) {
+			for (Builder other : others) {
+				if (other.m_width != m_width || other.m_height != m_height
+						|| other.m_layout != m_layout) {
+					throw new IllegalArgumentException(
+							"builders must have the same size and layout");
+				}
+			}
+
+			flushBins();
+			if (m_shared) {
+				unshare();
+			}
+
+			AccumulatorStorage[] sources = new AccumulatorStorage[others.size()];
+			for (int i = 0; i < sources.length; i++) {
+				Builder other = others.get(i);
+				other.flushBins();
+				sources[i] = other.m_storage;
+
+				if (m_sparse != null
+						&& (sources[i] instanceof HeapAccumulatorStorage || sources[i] instanceof FloatSumAccumulatorStorage)) {
+					setStorage(m_sparse.toDense());
+				}
+			}
+			return sources;
+		}
+
+		/**
+		 * Ajoute à <i>storage</i> les points des cases de <i>sources</i>
+		 * d'index compris entre <i>from</i> (inclus) et <i>to</i> (exclu),
+		 * intervalle de {@link AccumulatorStorage#ALIGNMENT} cases par
+		 * intervalle
+		 *
+		 * @return Le plus grand nombre de points des cases modifiées
+		 */
+		private static long mergeCells(AccumulatorStorage storage,
+				AccumulatorStorage[] sources, long from, long to) {
+			long maxHit = 0;
+			for (long start = from; start < to; start += AccumulatorStorage.ALIGNMENT) {
+				long end = Math.min(to, start + AccumulatorStorage.ALIGNMENT);
+				for (AccumulatorStorage source : sources) {
+					maxHit = Math.max(maxHit, storage.addAll(source, start, end));
+				}
+			}
+			return maxHit;
+		}
 
-			int x = (int) Math.floor(coord.x());
-			int y = (int) Math.floor(coord.y());
+		/**
+		 * Tient compte d'une case ayant reçu <i>hits</i> points dans le plus
+		 * grand nombre de points d'une case
+		 */
+		private void updateMaxHit(long hits) {
+			if (hits > m_maxHit) {
+				m_maxHit = hits;
+			}
+		}
 
-			m_colors[x][y] = (colorIndex + m_colors[x][y] * m_grid[x][y])
-					/ (m_grid[x][y] + 1);
-			m_grid[x][y]++;
+		/**
+		 * Accumule les points en attente dans les casiers
+		 */
+		private void flushBins() {
+			if (m_binner != null) {
+				m_binner.flush();
+			}
 		}
 
 		/**
-		 * Construit un accumulateur avec les données récoltées
+		 * Remplace le stockage partagé avec un accumulateur par une copie
+		 * propre à ce bâtisseur
+		 */
+		private void unshare() {
+			setStorage(m_storage.copy());
+			m_shared = false;
+		}
+
+		/**
+		 * Remplace un stockage creux par un stockage dense si plus de
+		 * {@link #DENSE_OCCUPANCY} de ses blocs sont alloués
+		 */
+		private void densifyIfCrowded() {
+			if (m_sparse != null && m_sparse.occupancy() > DENSE_OCCUPANCY) {
+				setStorage(m_sparse.toDense());
+			}
+		}
+
+		/**
+		 * Remplace le stockage des cases
+		 */
+		private void setStorage(AccumulatorStorage storage) {
+			m_storage = storage;
+			m_sparse = storage instanceof SparseAccumulatorStorage ? (SparseAccumulatorStorage) storage
+					: null;
+		}
+	}
+
+	/**
+	 * Bâtisseur d'accumulateur dans lequel plusieurs fils d'exécution peuvent
+	 * ajouter des points à la fois : toutes les orbites d'un calcul
+	 * parallèle partagent alors une seule grille au lieu d'avoir chacune son
+	 * propre {@link Builder}, ce qui divise la mémoire nécessaire par le
+	 * nombre d'orbites, au prix d'ajouts de points plus coûteux (voir
+	 * {@link ConcurrentUpdates}).
+	 */
+	public static class ConcurrentBuilder implements HitSink {
+
+		/**
+		 * Le stockage des cases, sûr pour les ajouts simultanés
+		 */
+		private final AccumulatorStorage m_storage;
+
+		/**
+		 * Les dimensions du futur accumulateur
+		 */
+		private final int m_width, m_height;
+
+		/**
+		 * La disposition des cases dans le stockage, et les deux parties de
+		 * l'index de chaque case
+		 */
+		private final AccumulatorLayout m_layout;
+		private final long[] m_rowBases, m_columnOffsets;
+
+		/**
+		 * Le plus grand nombre de points d'une case
+		 */
+		private final AtomicLong m_maxHit = new AtomicLong();
+
+		/**
+		 * La transformation permettant d'associer un point du plan à un point
+		 * de l'accumulateur
+		 */
+		private final AffineTransformation m_transform;
+
+		/**
+		 * Construit un nouveau bâtisseur partagé
+		 * 
+		 * @param frame
+		 *            La région du plan visée
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param layout
+		 *            La disposition des cases dans le stockage
+		 * @param updates
+		 *            La manière de rendre sûrs les ajouts simultanés
+		 * @throws IllegalArgumentException
+		 *             Si la largeur ou la hauteur est invalide, ou si
+		 *             l'accumulateur a trop de cases pour le tas
+		 */
+		public ConcurrentBuilder(Rectangle frame, int width, int height,
+				AccumulatorLayout layout, ConcurrentUpdates updates) {
+			m_storage = updates.newStorage(Builder.cells(width, height,
+					layout));
+			m_width = width;
+			m_height = height;
+			m_layout = layout;
+			m_rowBases = layout.rowBases(width, height);
+			m_columnOffsets = layout.columnOffsets(width);
+			m_transform = Builder.gridTransformation(frame, width, height);
+		}
+
+		/**
+		 * Signale la présence d'un nouveau point de coordonnées (px, py) dans
+		 * le plan. Peut être appelée par plusieurs fils d'exécution à la fois.
+		 * Les points situés hors de la région du plan visée sont ignorés.
+		 * 
+		 * @param px
+		 *            Abscisse du point dans le plan
+		 * @param py
+		 *            Ordonnée du point dans le plan
+		 * @param colorIndex
+		 *            La couleur du point calculé
+		 */
+		@Override
+		public void hit(double px, double py, double colorIndex) {
+			int x = (int) Math.floor(m_transform.transformX(px, py));
+			int y = (int) Math.floor(m_transform.transformY(px, py));
+
+			if (x < 0 || y < 0 || x >= m_width || y >= m_height) {
+				return;
+			}
+
+			long hits = m_storage.hit(m_rowBases[m_height - 1 - y]
+					+ m_columnOffsets[x], colorIndex);
+
+			// Le maximum n'est écrit que lorsqu'il augmente, ce qui est rare
+			long maxHit = m_maxHit.get();
+			while (hits > maxHit && !m_maxHit.compareAndSet(maxHit, hits)) {
+				maxHit = m_maxHit.get();
+			}
+		}
+
+		/**
+		 * Construit un accumulateur à partir d'une copie des données
+		 * récoltées. Ne doit être appelée que lorsqu'aucun fil n'ajoute de
+		 * points ; le bâtisseur peut recevoir d'autres points ensuite sans
+		 * affecter l'accumulateur retourné.
 		 */
 		public FlameAccumulator build() {
-			return new FlameAccumulator(m_grid, m_colors);
+			return new FlameAccumulator(m_width, m_height, m_layout,
+					m_storage.copy(), m_maxHit.get());
+		}
+
+		/**
+		 * @param width
+		 *            La largeur de l'accumulateur
+		 * @param height
+		 *            La hauteur de l'accumulateur
+		 * @param updates
+		 *            La manière de rendre sûrs les ajouts simultanés
+		 * @return Le nombre d'octets occupés par la grille d'un bâtisseur
+		 *         partagé de cette taille, en disposition
+		 *         {@link AccumulatorLayout#ROW_MAJOR}
+		 */
+		public static long bytes(int width, int height,
+				ConcurrentUpdates updates) {
+			return (long) width * height * updates.bytesPerCell();
 		}
 	}
 }
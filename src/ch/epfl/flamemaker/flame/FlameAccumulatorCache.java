@@ -0,0 +1,201 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+/**
+ * Cache du dernier accumulateur calculé. Un accumulateur ne dépend que de la
+ * fractale, du cadre, de la taille et de la densité du calcul, et non de la
+ * palette ni de la couleur de fond : changer uniquement ces dernières ne
+ * demande donc qu'une recoloration de l'accumulateur gardé en cache.<br />
+ * Les méthodes de cette classe peuvent être appelées depuis plusieurs fils
+ * d'exécution.
+ */
+public class FlameAccumulatorCache {
+
+	/**
+	 * Le nombre de fils d'exécution utilisés pour les calculs
+	 */
+	private final int m_threads;
+
+	/**
+	 * Les paramètres du calcul de l'accumulateur en cache
+	 */
+	private Flame m_flame;
+	private Rectangle m_frame;
+	private int m_width, m_height, m_density;
+
+	/**
+	 * Le calcul de l'accumulateur en cache, éventuellement en cours, ou null
+	 * si le cache est vide
+	 */
+	private FutureTask<FlameAccumulator> m_accumulator;
+
+	/**
+	 * Construit un cache vide dont les calculs utilisent tous les processeurs
+	 * disponibles
+	 */
+	public FlameAccumulatorCache() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construit un cache vide
+	 *
+	 * @param threads
+	 *            Le nombre de fils d'exécution à utiliser pour les calculs
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de fils d'exécution n'est pas strictement
+	 *             positif
+	 */
+	public FlameAccumulatorCache(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException(
+					"threads must be strictly positive");
+		}
+		m_threads = threads;
+	}
+
+	/**
+	 * Retourne l'accumulateur de la fractale pour les paramètres donnés, en
+	 * le calculant seulement s'il n'est pas déjà en cache. Si plusieurs fils
+	 * d'exécution demandent en même temps le même accumulateur, un seul le
+	 * calcule et les autres attendent son résultat. Le calcul a lieu hors du
+	 * verrou du cache : {@link #lookup} et {@link #put} ne l'attendent pas.
+	 *
+	 * @param flame
+	 *            La fractale
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param density
+	 *            La densité du calcul
+	 * @return L'accumulateur correspondant
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant qu'il attend le
+	 *             calcul
+	 */
+	public FlameAccumulator get(final Flame flame, final Rectangle frame,
+			final int width, final int height, final int density) {
+		FutureTask<FlameAccumulator> task;
+		boolean owner = false;
+
+		synchronized (this) {
+			if (matches(flame, frame, width, height, density)) {
+				task = m_accumulator;
+			} else {
+				task = new FutureTask<FlameAccumulator>(
+						new Callable<FlameAccumulator>() {
+							@Override
+							public FlameAccumulator call() {
+								return flame.compute(frame, width, height,
+										density, m_threads);
+							}
+						}) {
+					@Override
+					protected void setException(Throwable t) {
+						// Un calcul en échec n'est pas gardé : le prochain
+						// appel le relance
+						evict(this);
+						super.setException(t);
+					}
+				};
+				install(flame, frame, width, height, density, task);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			task.run();
+		}
+
+		return Futures.get(task, "Attente de l'accumulateur interrompue");
+	}
+
+	/**
+	 * @return L'accumulateur en cache s'il correspond aux paramètres donnés
+	 *         et qu'il est entièrement calculé, null sinon
+	 */
+	public synchronized FlameAccumulator lookup(Flame flame, Rectangle frame,
+			int width, int height, int density) {
+		if (!matches(flame, frame, width, height, density)
+				|| !m_accumulator.isDone()) {
+			return null;
+		}
+
+		try {
+			return m_accumulator.get();
+		} catch (InterruptedException e) {
+			// Impossible : le calcul est terminé
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Remplace le contenu du cache par un accumulateur calculé ailleurs (par
+	 * exemple par un rendu progressif)
+	 *
+	 * @param accumulator
+	 *            L'accumulateur de la fractale pour les paramètres donnés
+	 */
+	public synchronized void put(Flame flame, Rectangle frame, int width,
+			int height, int density, final FlameAccumulator accumulator) {
+		FutureTask<FlameAccumulator> task = new FutureTask<FlameAccumulator>(
+				new Callable<FlameAccumulator>() {
+					@Override
+					public FlameAccumulator call() {
+						return accumulator;
+					}
+				});
+		task.run();
+		install(flame, frame, width, height, density, task);
+	}
+
+	/**
+	 * @return Vrai si le cache contient un accumulateur, calculé ou en cours
+	 *         de calcul, pour les paramètres donnés
+	 */
+	private boolean matches(Flame flame, Rectangle frame, int width,
+			int height, int density) {
+		return m_accumulator != null && m_width == width
+				&& m_height == height && m_density == density
+				&& m_frame.equals(frame) && m_flame.equals(flame);
+	}
+
+	/**
+	 * Vide le cache s'il contient encore le calcul <i>task</i>
+	 */
+	private synchronized void evict(FutureTask<FlameAccumulator> task) {
+		if (m_accumulator == task) {
+			m_accumulator = null;
+		}
+	}
+
+	/**
+	 * Remplace le contenu du cache. Un calcul en cours de l'ancien contenu
+	 * se poursuit pour les fils qui l'attendent.
+	 */
+	private void install(Flame flame, Rectangle frame, int width, int height,
+			int density, FutureTask<FlameAccumulator> task) {
+		m_flame = flame;
+		m_frame = frame;
+		m_width = width;
+		m_height = height;
+		m_density = density;
+		m_accumulator = task;
+	}
+}
@@ -25,6 +25,12 @@ public class FlamePPMMaker {
 	 */
 	private static final ArrayList<Color> colors = new ArrayList<Color>();
 
+	/**
+	 * Cache du dernier accumulateur calculé, réutilisé lorsque seules les
+	 * couleurs de l'image changent
+	 */
+	private static final FlameAccumulatorCache CACHE = new FlameAccumulatorCache();
+
 	/**
 	 * Point d'entrée du test. Initialise les couleurs et lance le rendu des
 	 * deux fractales.
@@ -40,13 +46,21 @@ public class FlamePPMMaker {
 	}
 
 	/**
-	 * Génère la fractale de type turbulence
-	 * 
-	 * @throws FileNotFoundException
+	 * Zone de la fractale "turbulence" à dessiner
 	 */
-	private static void makeTurbulence() throws FileNotFoundException {
-		System.out.println("Génération de turbulence");
+	static final Rectangle TURBULENCE_FRAME = new Rectangle(new Point(0.1, 0.1),
+			3, 3);
 
+	/**
+	 * Zone de la fractale "shark fin" à dessiner
+	 */
+	static final Rectangle SHARK_FIN_FRAME = new Rectangle(
+			new Point(-0.25, 0), 5, 4);
+
+	/**
+	 * @return La fractale de type turbulence
+	 */
+	static Flame turbulence() {
 		// Tableau des transformations
 		ArrayList<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
 
@@ -63,30 +77,13 @@ public class FlamePPMMaker {
 				0.0842641, -0.314478, -0.1, 0.314478, 0.0842641, 0.3),
 				new double[] { 1, 0, 0, 0, 0, 0 }));
 
-		// Zone de la fractale à dessiner
-		Rectangle viewport = new Rectangle(new Point(0.1, 0.1), 3, 3);
-
-		// Propriétés de l'accumulateur
-		int width = 500, height = 500, density = 50;
-
-		// Création et génération de la fractale
-		Flame fractal = new Flame(transformations);
-		FlameAccumulator result = fractal.compute(viewport, width, height,
-				density);
-
-		// Ecriture sur le disque
-		printFractal("turbulence", result);
+		return new Flame(transformations);
 	}
 
 	/**
-	 * Génère la fractale de type shark fin
-	 * 
-	 * @throws FileNotFoundException
+	 * @return La fractale de type shark fin
 	 */
-	private static void makeSharkFin() throws FileNotFoundException {
-
-		System.out.println("Generation de shark fin");
-
+	static Flame sharkFin() {
 		// Tableau des transformations
 		ArrayList<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
 
@@ -103,19 +100,89 @@ public class FlamePPMMaker {
 				0.4810169, 0, 1, 0, 0.4810169, 0.9), new double[] { 1, 0, 0, 0,
 				0, 0 }));
 
-		// Zone de la fractale à dessiner
-		Rectangle viewport = new Rectangle(new Point(-0.25, 0), 5, 4);
+		return new Flame(transformations);
+	}
+
+	/**
+	 * Génère la fractale de type turbulence
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	private static void makeTurbulence() throws FileNotFoundException {
+		System.out.println("Génération de turbulence");
+
+		// Propriétés de l'accumulateur
+		int width = 500, height = 500, density = 50;
+
+		// Génération de la fractale
+		FlameAccumulator result = compute(turbulence(), TURBULENCE_FRAME,
+				width, height, density);
+
+		// Ecriture sur le disque
+		printFractal("turbulence", result, Color.BLACK);
+	}
+
+	/**
+	 * Génère la fractale de type shark fin
+	 * 
+	 * @throws FileNotFoundException
+	 */
+	private static void makeSharkFin() throws FileNotFoundException {
+
+		System.out.println("Generation de shark fin");
 
 		// Propriétés de l'accumulateur
 		int width = 500, height = 400, density = 50;
 
-		// Création et génération de la fractale
-		Flame fractal = new Flame(transformations);
-		FlameAccumulator result = fractal.compute(viewport, width, height,
-				density);
+		// Génération de la fractale
+		FlameAccumulator result = compute(sharkFin(), SHARK_FIN_FRAME, width,
+				height, density);
 
 		// Ecriture sur le disque
-		printFractal("shark-fin", result);
+		printFractal("shark-fin", result, Color.BLACK);
+	}
+
+	/**
+	 * Calcule une fractale sur tous les processeurs disponibles et affiche le
+	 * temps de calcul, sauf si son accumulateur est déjà en cache : une image
+	 * de la même fractale avec d'autres couleurs n'est qu'une recoloration
+	 * 
+	 * @param fractal
+	 *            La fractale à calculer
+	 * @param viewport
+	 *            Zone de la fractale à dessiner
+	 * @param width
+	 *            Largeur de l'accumulateur
+	 * @param height
+	 *            Hauteur de l'accumulateur
+	 * @param density
+	 *            Densité du rendu
+	 * @return L'accumulateur calculé
+	 */
+	private static FlameAccumulator compute(Flame fractal, Rectangle viewport,
+			int width, int height, int density) {
+		FlameAccumulator cached = CACHE.lookup(fractal, viewport, width,
+				height, density);
+		if (cached != null) {
+			System.out.println("Accumulateur déjà calculé, recoloration seule");
+			return cached;
+		}
+
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		FlameAccumulator result = CACHE.get(fractal, viewport, width, height,
+				density);
+		long elapsed = (System.nanoTime() - start) / 1000000;
+
+		System.out.println("Calcul terminé en " + elapsed + " ms sur "
+				+ threads + " processeur(s)");
+		if (result.reseeds() > 0) {
+			System.out.println(result.reseeds()
+					+ " orbite(s) morte(s) relancée(s)");
+		}
+
+		return result;
 	}
 
 	/**
@@ -126,11 +193,13 @@ public class FlamePPMMaker {
 	 *            nom de la fractale
 	 * @param result
 	 *            accumulateur résultant d'une fractale générée
+	 * @param background
+	 *            couleur de fond de l'image
 	 * @throws FileNotFoundException
 	 *             lorsqu'une erreur avec le système de fichier survient
 	 */
-	private static void printFractal(String name, FlameAccumulator result)
-			throws FileNotFoundException {
+	private static void printFractal(String name, FlameAccumulator result,
+			Color background) throws FileNotFoundException {
 
 		System.out.println("Ecriture de la fractale : " + name);
 		InterpolatedPalette palette = new InterpolatedPalette(colors);
@@ -155,7 +224,7 @@ public class FlamePPMMaker {
 
 				// On récupère les composantes de la couleur du pixel
 				// gamma-encodées
-				Color currentColor = result.color(palette, Color.BLACK, j, i);
+				Color currentColor = result.color(palette, background, j, i);
 				int r = (int) (Color.sRGBEncode(currentColor.red(), 100));
 				int v = (int) (Color.sRGBEncode(currentColor.green(), 100));
 				int b = (int) (Color.sRGBEncode(currentColor.blue(), 100));
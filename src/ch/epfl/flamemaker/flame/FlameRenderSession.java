@@ -0,0 +1,507 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+
+/**
+ * Classe modélisant un rendu progressif d'une fractale Flame. La session
+ * garde l'état de ses orbites (point courant, couleur, générateur aléatoire)
+ * et leurs bâtisseurs d'accumulateur d'une passe à l'autre : chaque appel à
+ * {@link #runPass(long)} affine le rendu, et {@link #snapshot()} permet
+ * d'obtenir l'accumulateur correspondant à toutes les passes effectuées
+ * jusque-là.<br />
+ * Une session n'est pas prévue pour être utilisée par plusieurs fils
+ * d'exécution à la fois.
+ */
+public class FlameRenderSession {
+
+	/**
+	 * Le nombre d'octets par case, au pire, d'un bâtisseur propre à une
+	 * orbite
+	 */
+	private static final int PRIVATE_BYTES_PER_CELL = 12;
+
+	/**
+	 * La région du plan dans laquelle la fractale est calculée
+	 */
+	private final Rectangle m_frame;
+
+	/**
+	 * Les dimensions de l'accumulateur
+	 */
+	private final int m_width, m_height;
+
+	/**
+	 * Les orbites parcourues par la session
+	 */
+	private final List<FlameWalker> m_walkers;
+
+	/**
+	 * Les bâtisseurs des orbites, dans le même ordre (vide si les orbites
+	 * partagent un bâtisseur)
+	 */
+	private final List<FlameAccumulator.Builder> m_builders;
+
+	/**
+	 * Le bâtisseur partagé par toutes les orbites, ou null si chacune a le
+	 * sien
+	 */
+	private final FlameAccumulator.ConcurrentBuilder m_shared;
+
+	/**
+	 * Le nombre total d'itérations effectuées par les passes précédentes
+	 */
+	private long m_iterations = 0;
+
+	/**
+	 * Construit une session de rendu avec une seule orbite
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire de l'orbite
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random) {
+		this(flame, frame, width, height, random, 1);
+	}
+
+	/**
+	 * Construit une session de rendu avec une seule orbite, dont
+	 * l'accumulateur est stocké hors du tas, dans un fichier temporaire
+	 * projeté en mémoire (voir
+	 * {@link FlameAccumulator.Builder#Builder(Rectangle, int, int, File)}) :
+	 * sa taille n'est alors limitée que par l'espace disque.
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire de l'orbite
+	 * @param directory
+	 *            Le dossier dans lequel créer le fichier, ou null pour le
+	 *            dossier temporaire du système
+	 * @throws IllegalArgumentException
+	 *             Si la largeur ou la hauteur est invalide
+	 * @throws IOException
+	 *             Si le fichier ne peut pas être créé
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, File directory) throws IOException {
+		this(flame, frame, width, height, random,
+				new FlameAccumulator.Builder(frame, width, height, directory));
+	}
+
+	/**
+	 * Construit une session de rendu avec <i>walkers</i> orbites
+	 * indépendantes, entre lesquelles les itérations de chaque passe sont
+	 * réparties. Lorsqu'il y a plusieurs orbites, chacune utilise un
+	 * générateur obtenu par division de <i>random</i>.
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des orbites
+	 * @param walkers
+	 *            Le nombre d'orbites
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'orbites n'est pas strictement positif, ou si
+	 *             la largeur ou la hauteur est invalide
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, int walkers) {
+		this(flame, frame, width, height, random, walkers, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Construit une session de rendu avec <i>walkers</i> orbites
+	 * indépendantes, en limitant la mémoire occupée par les accumulateurs
+	 * comme {@link #FlameRenderSession(Flame, Rectangle, int, int,
+	 * RandomSource, int, long, ConcurrentUpdates)}, les orbites ajoutant
+	 * leurs points à un éventuel bâtisseur partagé par des additions
+	 * atomiques ({@link ConcurrentUpdates#ATOMIC}).
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des orbites
+	 * @param walkers
+	 *            Le nombre d'orbites
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les accumulateurs ne devraient
+	 *            pas dépasser
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'orbites n'est pas strictement positif, ou si
+	 *             la largeur ou la hauteur est invalide
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, int walkers, long memoryBudget) {
+		this(flame, frame, width, height, random, walkers, memoryBudget,
+				ConcurrentUpdates.ATOMIC);
+	}
+
+	/**
+	 * Construit une session de rendu avec <i>walkers</i> orbites
+	 * indépendantes, en limitant la mémoire occupée par les accumulateurs.
+	 * Chaque orbite a son propre bâtisseur, fusionné avec les autres à
+	 * chaque {@link #snapshot()}, si ces bâtisseurs et l'accumulateur
+	 * fusionné tiennent dans <i>memoryBudget</i> octets (au pire 12 octets
+	 * par case chacun). Sinon toutes les orbites ajoutent leurs points dans
+	 * un seul {@link FlameAccumulator.ConcurrentBuilder} dont les ajouts
+	 * sont rendus sûrs selon <i>updates</i> : sa grille et la copie faite
+	 * par {@link #snapshot()} n'occupent alors que 12 octets par case
+	 * chacune (voir {@link ConcurrentUpdates}), quel que soit le nombre
+	 * d'orbites.<br />
+	 * Le rendu obtenu avec un bâtisseur partagé n'est pas celui des
+	 * bâtisseurs propres : les intensités sont les mêmes, mais les index de
+	 * couleur d'une case sont accumulés dans l'ordre, variable d'un rendu à
+	 * l'autre, où les orbites l'atteignent, et en somme plutôt qu'en moyenne
+	 * avec {@link ConcurrentUpdates#ATOMIC}. Les couleurs ne diffèrent donc
+	 * que par les arrondis en double précision, et d'une exécution à
+	 * l'autre.
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des orbites
+	 * @param walkers
+	 *            Le nombre d'orbites
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les accumulateurs ne devraient
+	 *            pas dépasser
+	 * @param updates
+	 *            La manière dont les orbites ajoutent leurs points à un
+	 *            bâtisseur partagé
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'orbites n'est pas strictement positif, ou si
+	 *             la largeur ou la hauteur est invalide
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, int walkers, long memoryBudget,
+			ConcurrentUpdates updates) {
+		this(flame, frame, width, height, random, walkers, memoryBudget,
+				updates, flame.lanes());
+	}
+
+	/**
+	 * Construit une session de rendu avec <i>walkers</i> marcheurs
+	 * indépendants, en limitant la mémoire occupée par les accumulateurs
+	 * comme {@link #FlameRenderSession(Flame, Rectangle, int, int,
+	 * RandomSource, int, long, ConcurrentUpdates)}, chaque marcheur
+	 * avançant à tour de rôle <i>lanes</i> orbites. Entremêler plusieurs
+	 * orbites sur un même fil d'exécution laisse le processeur chevaucher
+	 * leurs calculs, sans bâtisseur supplémentaire : les orbites d'un
+	 * marcheur partagent le sien.<br />
+	 * Les orbites ne sont un gain que regroupées par lots et transformées
+	 * par le noyau vectoriel (voir {@link BatchKernel}), à partir d'environ
+	 * 16 orbites par marcheur ; en dessous, une seule orbite est au moins
+	 * aussi rapide. Les autres constructeurs prennent le nombre d'orbites de
+	 * la fractale (voir {@link Flame#withLanes(int)}) ; celui-ci l'ignore.
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'accumulateur
+	 * @param height
+	 *            La hauteur de l'accumulateur
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des orbites
+	 * @param walkers
+	 *            Le nombre de marcheurs
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les accumulateurs ne devraient
+	 *            pas dépasser
+	 * @param updates
+	 *            La manière dont les orbites ajoutent leurs points à un
+	 *            bâtisseur partagé
+	 * @param lanes
+	 *            Le nombre d'orbites de chaque marcheur, entre 1 et 256
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de marcheurs n'est pas strictement positif, si
+	 *             le nombre d'orbites par marcheur est invalide, ou si la
+	 *             largeur ou la hauteur est invalide
+	 */
+	public FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, int walkers, long memoryBudget,
+			ConcurrentUpdates updates, int lanes) {
+		if (walkers <= 0) {
+			throw new IllegalArgumentException(
+					"walkers must be strictly positive");
+		}
+
+		m_frame = frame;
+		m_width = width;
+		m_height = height;
+
+		m_walkers = new ArrayList<FlameWalker>(walkers);
+		m_builders = new ArrayList<FlameAccumulator.Builder>(walkers);
+
+		if (walkers > 1
+				&& (walkers + 1.0) * PRIVATE_BYTES_PER_CELL * width * height > memoryBudget) {
+			m_shared = new FlameAccumulator.ConcurrentBuilder(frame, width,
+					height, AccumulatorLayout.ROW_MAJOR, updates);
+			for (int i = 0; i < walkers; i++) {
+				m_walkers.add(new FlameWalker(flame, frame, random.split(),
+						m_shared, lanes));
+			}
+			return;
+		}
+
+		m_shared = null;
+		for (int i = 0; i < walkers; i++) {
+			FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+					frame, width, height);
+			m_builders.add(builder);
+			m_walkers.add(new FlameWalker(flame, frame, walkers == 1 ? random
+					: random.split(), builder, lanes));
+		}
+	}
+
+	/**
+	 * Construit une session de rendu avec une seule orbite, qui ajoute ses
+	 * points au bâtisseur donné
+	 */
+	private FlameRenderSession(Flame flame, Rectangle frame, int width,
+			int height, RandomSource random, FlameAccumulator.Builder builder) {
+		m_frame = frame;
+		m_width = width;
+		m_height = height;
+
+		m_walkers = new ArrayList<FlameWalker>(1);
+		m_builders = new ArrayList<FlameAccumulator.Builder>(1);
+		m_shared = null;
+
+		m_builders.add(builder);
+		m_walkers.add(new FlameWalker(flame, frame, random, builder));
+	}
+
+	/**
+	 * Effectue une passe de <i>iterations</i> itérations sur le fil
+	 * d'exécution appelant
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations de la passe, réparties entre les
+	 *            orbites
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant la passe. La
+	 *             session ne doit alors plus être utilisée.
+	 */
+	public void runPass(long iterations) {
+		checkIterations(iterations);
+
+		for (int i = 0; i < m_walkers.size(); i++) {
+			m_walkers.get(i).run(share(iterations, i));
+		}
+
+		m_iterations += iterations;
+	}
+
+	/**
+	 * Effectue une passe de <i>iterations</i> itérations, chaque orbite étant
+	 * parcourue par une tâche de <i>executor</i>
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations de la passe, réparties entre les
+	 *            orbites
+	 * @param executor
+	 *            L'exécuteur sur lequel lancer les tâches
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant la passe. La
+	 *             session ne doit alors plus être utilisée.
+	 */
+	public void runPass(long iterations, ExecutorService executor) {
+		checkIterations(iterations);
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < m_walkers.size(); i++) {
+			final FlameWalker walker = m_walkers.get(i);
+			final long share = share(iterations, i);
+
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					walker.run(share);
+					return null;
+				}
+			}));
+		}
+
+		Futures.getAll(futures, "Calcul de la fractale interrompu");
+
+		m_iterations += iterations;
+	}
+
+	/**
+	 * @return Le nombre total d'itérations effectuées par les passes de cette
+	 *         session
+	 */
+	public long iterations() {
+		return m_iterations;
+	}
+
+	/**
+	 * @return Vrai si les orbites de cette session sont calculées par une
+	 *         boucle spécialisée pour la fractale, faux si elle n'a pas été
+	 *         demandée, ne s'applique pas (marcheurs à plusieurs orbites) ou
+	 *         n'a pas pu être compilée
+	 * @see Flame#withSpecializedLoop(boolean)
+	 */
+	public boolean specializedLoop() {
+		return m_walkers.get(0).specialized();
+	}
+
+	/**
+	 * @return Vrai si les orbites de cette session sont transformées par lots
+	 *         par le noyau vectoriel, faux si les marcheurs n'ont qu'une
+	 *         orbite (voir {@link Flame#withLanes(int)}) ou si le noyau n'a
+	 *         pas pu être chargé (voir {@link BatchKernel})
+	 */
+	public boolean vectorKernel() {
+		return m_walkers.get(0).vectorized();
+	}
+
+	/**
+	 * Construit un accumulateur à partir des points accumulés par toutes les
+	 * passes effectuées jusque-là. La session peut continuer à être utilisée
+	 * ensuite : l'accumulateur retourné n'est pas affecté par les passes
+	 * suivantes.
+	 *
+	 * @return L'accumulateur courant de la session
+	 */
+	public FlameAccumulator snapshot() {
+		if (m_shared != null) {
+			return m_shared.build().withReseeds(reseeds());
+		}
+		if (m_builders.size() == 1) {
+			return m_builders.get(0).build().withReseeds(reseeds());
+		}
+
+		FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+				m_frame, m_width, m_height);
+		merged.mergeAll(m_builders);
+
+		return merged.build().withReseeds(reseeds());
+	}
+
+	/**
+	 * Construit un accumulateur à partir des points accumulés par toutes les
+	 * passes effectuées jusque-là, comme {@link #snapshot()}, en fusionnant
+	 * les bâtisseurs des orbites sur <i>executor</i>
+	 *
+	 * @param executor
+	 *            L'exécuteur sur lequel lancer la fusion
+	 * @return L'accumulateur courant de la session
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant la fusion
+	 */
+	public FlameAccumulator snapshot(ExecutorService executor) {
+		if (m_shared != null) {
+			return m_shared.build().withReseeds(reseeds());
+		}
+		if (m_builders.size() == 1) {
+			return m_builders.get(0).build().withReseeds(reseeds());
+		}
+
+		FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+				m_frame, m_width, m_height);
+		merged.mergeAll(m_builders, executor);
+
+		return merged.build().withReseeds(reseeds());
+	}
+
+	/**
+	 * @return Le nombre de relances des orbites de la session, dont le point
+	 *         était devenu non fini ou s'était échappé
+	 */
+	public long reseeds() {
+		long reseeds = 0;
+		for (FlameWalker walker : m_walkers) {
+			reseeds += walker.reseeds();
+		}
+		return reseeds;
+	}
+
+	/**
+	 * @return Vrai si toutes les orbites de la session ajoutent leurs points
+	 *         dans un seul bâtisseur partagé
+	 */
+	public boolean sharesAccumulator() {
+		return m_shared != null;
+	}
+
+	/**
+	 * @param iterations
+	 *            Le nombre d'itérations de la passe
+	 * @param walker
+	 *            L'index de l'orbite
+	 * @return La part des itérations revenant à l'orbite d'index
+	 *         <i>walker</i> ; les premières orbites se partagent le reste de
+	 *         la division
+	 */
+	private long share(long iterations, int walker) {
+		int walkers = m_walkers.size();
+		return iterations / walkers + (walker < iterations % walkers ? 1 : 0);
+	}
+
+	/**
+	 * @param iterations
+	 *            Le nombre d'itérations à vérifier
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif
+	 */
+	private static void checkIterations(long iterations) {
+		if (iterations < 0) {
+			throw new IllegalArgumentException(
+					"iterations must be positive");
+		}
+	}
+}
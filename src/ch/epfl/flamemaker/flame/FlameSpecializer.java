@@ -0,0 +1,517 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+
+/**
+ * Spécialise la boucle de l'algorithme du chaos pour une fractale donnée :
+ * génère le code source d'une classe dont chaque transformation est une
+ * méthode statique, avec les coefficients de sa composante affine en
+ * constantes et ses seules variations actives écrites en ligne, le compile
+ * en mémoire et le charge comme classe cachée
+ * ({@link java.lang.invoke.MethodHandles.Lookup#defineHiddenClass(byte[], boolean, java.lang.invoke.MethodHandles.Lookup.ClassOption...)}),
+ * déchargée avec la fractale.<br />
+ * Le compilateur voit ainsi la structure réelle de la fractale, sans appels
+ * virtuels vers les transformations ni les variations. Les opérations sont
+ * effectuées dans le même ordre que
+ * {@link FlameTransformation#transform(double[])} : la boucle spécialisée
+ * produit exactement les mêmes points.<br />
+ * Les classes compilées sont gardées dans un cache dont la clé est leur code
+ * source, qui ne dépend que des transformations de la fractale et de son
+ * mode de calcul : des fractales égales, comme les copies faites par
+ * {@link Flame.Builder#build()}, ne sont compilées qu'une fois.<br />
+ * La génération utilise le compilateur Java de la plateforme
+ * ({@link ToolProvider#getSystemJavaCompiler()}), absent d'un simple
+ * environnement d'exécution, et a besoin de trouver les classes de ce
+ * paquetage sur le disque. Lorsqu'elle échoue, la cause est journalisée
+ * (journal {@code ch.epfl.flamemaker.flame.FlameSpecializer}),
+ * {@link #loop(Flame)} retourne null et les marcheurs gardent leur boucle
+ * habituelle (voir {@link FlameRenderSession#specializedLoop()}).
+ */
+final class FlameSpecializer {
+
+	/**
+	 * Boucle de calcul spécialisée pour une fractale
+	 */
+	interface Loop {
+
+		/**
+		 * Effectue au plus <i>iterations</i> itérations depuis le point et
+		 * la couleur contenus dans <i>state</i>, et accumule les points
+		 * contenus dans la région du plan. S'arrête après l'itération dont
+		 * le point n'est plus fini ou s'échappe (voir {@link FlameWalker}).
+		 *
+		 * @param state
+		 *            Tableau de trois éléments (abscisse, ordonnée, couleur)
+		 *            contenant l'état de l'orbite, remplacé par l'état final
+		 * @param random
+		 *            Le générateur aléatoire de l'orbite
+		 * @param frame
+		 *            La région du plan dans laquelle accumuler les points
+		 * @param sink
+		 *            La destination des points de l'orbite
+		 * @param iterations
+		 *            Le nombre maximal d'itérations
+		 * @return Le nombre d'itérations effectuées
+		 */
+		long run(double[] state, RandomSource random, Rectangle frame,
+				HitSink sink, long iterations);
+	}
+
+	/**
+	 * Le nom de la classe générée, dans le paquetage de cette classe comme
+	 * l'exige la définition d'une classe cachée
+	 */
+	static final String CLASS_NAME = "SpecializedFlameLoop";
+
+	/**
+	 * La valeur absolue d'une coordonnée au-delà de laquelle l'orbite est
+	 * considérée comme échappée (la même que {@link FlameWalker})
+	 */
+	private static final String ESCAPE_BOUND = "1.0E10";
+
+	/**
+	 * Le nombre de classes gardées dans le cache
+	 */
+	private static final int CACHE_SIZE = 16;
+
+	/**
+	 * Le journal des échecs de la spécialisation
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FlameSpecializer.class.getName());
+
+	/**
+	 * Les classes compilées, ou en cours de compilation, indexées par leur
+	 * code source, les plus récemment utilisées en dernier ; une compilation
+	 * en échec y est gardée avec un résultat null pour ne pas être retentée
+	 */
+	private static final Map<String, FutureTask<Class<?>>> CLASSES = new LinkedHashMap<String, FutureTask<Class<?>>>(
+			CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, FutureTask<Class<?>>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Vrai une fois l'absence de compilateur journalisée
+	 */
+	private static boolean s_missingCompilerLogged = false;
+
+	/**
+	 * Classe non instanciable
+	 */
+	private FlameSpecializer() {
+	}
+
+	/**
+	 * Retourne la boucle spécialisée d'une fractale, en générant, compilant
+	 * et chargeant sa classe si elle n'est pas déjà dans le cache. Plusieurs
+	 * fils d'exécution demandant la même classe attendent une seule
+	 * compilation, faite hors du verrou du cache.
+	 *
+	 * @param flame
+	 *            La fractale
+	 * @return La boucle spécialisée, ou null si la fractale n'en demande pas
+	 *         (voir {@link Flame#withSpecializedLoop(boolean)}), n'a aucune
+	 *         transformation, a une variation sans forme générée, ou si la
+	 *         boucle n'a pas pu être compilée ou chargée
+	 */
+	static Loop loop(Flame flame) {
+		if (!flame.specializedLoop() || flame.transformationsCount() == 0) {
+			return null;
+		}
+
+		final String source = generateSource(flame);
+		if (source == null) {
+			return null;
+		}
+
+		FutureTask<Class<?>> task;
+		boolean owner = false;
+		synchronized (CLASSES) {
+			task = CLASSES.get(source);
+			if (task == null) {
+				task = new FutureTask<Class<?>>(new Callable<Class<?>>() {
+					@Override
+					public Class<?> call() {
+						byte[] bytecode = compile(source);
+						return bytecode == null ? null : define(bytecode);
+					}
+				});
+				CLASSES.put(source, task);
+				owner = true;
+			}
+		}
+
+		if (owner) {
+			task.run();
+		}
+
+		Class<?> loopClass;
+		try {
+			loopClass = task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.WARNING, "Spécialisation impossible", e.getCause());
+			return null;
+		}
+		return loopClass == null ? null : instantiate(loopClass, flame);
+	}
+
+	/**
+	 * Génère le code source de la boucle spécialisée d'une fractale
+	 *
+	 * @param flame
+	 *            La fractale
+	 * @return Le code source de la classe {@link #CLASS_NAME}, ou null si
+	 *         une variation de la fractale n'a pas de forme générée
+	 */
+	static String generateSource(Flame flame) {
+		StringBuilder source = new StringBuilder();
+		source.append("package ch.epfl.flamemaker.flame;\n\n")
+				.append("import ch.epfl.flamemaker.geometry2d.Rectangle;\n")
+				.append("import ch.epfl.flamemaker.random.RandomSource;\n\n")
+				.append("final class ").append(CLASS_NAME)
+				.append(" implements FlameSpecializer.Loop {\n")
+				.append("\tprivate final Flame m_flame;\n\n")
+				.append("\tpublic ").append(CLASS_NAME)
+				.append("(Flame flame) {\n\t\tm_flame = flame;\n\t}\n\n");
+
+		source.append("\tpublic long run(double[] p, RandomSource random, Rectangle frame,\n")
+				.append("\t\t\tHitSink sink, long iterations) {\n")
+				.append("\t\tdouble color = p[2];\n")
+				.append("\t\tlong i = 0;\n")
+				.append("\t\twhile (i < iterations) {\n")
+				.append("\t\t\ti++;\n")
+				.append("\t\t\tswitch (m_flame.sampleTransformation(random)) {\n");
+		for (int t = 0; t < flame.transformationsCount(); t++) {
+			source.append("\t\t\tcase ").append(t).append(": t").append(t)
+					.append("(p); color = (color + ")
+					.append(literal(flame.colorIndex(t)))
+					.append(") / 2.0; break;\n");
+		}
+		source.append("\t\t\t}\n")
+				.append("\t\t\tif (frame.contains(p[0], p[1]))\n")
+				.append("\t\t\t\tsink.hit(p[0], p[1], color);\n")
+				.append("\t\t\telse if (!(Math.abs(p[0]) < ").append(ESCAPE_BOUND)
+				.append(" && Math.abs(p[1]) < ").append(ESCAPE_BOUND)
+				.append("))\n")
+				.append("\t\t\t\tbreak;\n")
+				.append("\t\t}\n")
+				.append("\t\tp[2] = color;\n")
+				.append("\t\treturn i;\n")
+				.append("\t}\n");
+
+		for (int t = 0; t < flame.transformationsCount(); t++) {
+			if (!appendTransformation(source, t, flame.transformation(t),
+					flame.fastMath())) {
+				return null;
+			}
+		}
+		return source.append("}\n").toString();
+	}
+
+	/**
+	 * Compile en mémoire le code source d'une boucle spécialisée
+	 *
+	 * @param source
+	 *            Le code source de la classe {@link #CLASS_NAME}
+	 * @return Le code objet de la classe, ou null si le compilateur est
+	 *         absent ou que la compilation a échoué, ce qui est journalisé
+	 */
+	static byte[] compile(final String source) {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			synchronized (CLASSES) {
+				if (!s_missingCompilerLogged) {
+					s_missingCompilerLogged = true;
+					LOGGER.warning("Aucun compilateur Java à l'exécution : "
+							+ "boucle habituelle utilisée");
+				}
+			}
+			return null;
+		}
+
+		JavaFileObject sourceFile = new SimpleJavaFileObject(
+				URI.create("string:///" + CLASS_NAME + ".java"),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		final ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+		StandardJavaFileManager standardManager = compiler
+				.getStandardFileManager(null, Locale.ROOT, null);
+		ForwardingJavaFileManager<StandardJavaFileManager> manager = new ForwardingJavaFileManager<StandardJavaFileManager>(
+				standardManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location,
+					final String className, JavaFileObject.Kind kind,
+					FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("bytes:///"
+						+ className + ".class"), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						// Seule la classe générée est gardée, et non celles
+						// que le compilateur recompilerait à partir de
+						// sources trouvées sur le chemin de compilation
+						return className.equals(FlameSpecializer.class
+								.getPackage().getName() + "." + CLASS_NAME) ? bytecode
+								: new ByteArrayOutputStream();
+					}
+				};
+			}
+		};
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		try {
+			boolean success = compiler.getTask(null, manager, diagnostics,
+					Arrays.asList("-classpath", classPath(), "-sourcepath",
+							"", "-implicit:none", "-g:none", "-proc:none"),
+					null, Arrays.asList(sourceFile))
+					.call();
+
+			if (!success) {
+				LOGGER.warning("Compilation de la boucle spécialisée échouée :"
+						+ describe(diagnostics));
+				return null;
+			}
+			if (!diagnostics.getDiagnostics().isEmpty()) {
+				LOGGER.info("Boucle spécialisée compilée avec des avertissements :"
+						+ describe(diagnostics));
+			}
+			return bytecode.toByteArray();
+		} catch (RuntimeException e) {
+			// Erreur interne du compilateur
+			LOGGER.log(Level.WARNING,
+					"Compilation de la boucle spécialisée échouée", e);
+			return null;
+		} finally {
+			try {
+				manager.close();
+			} catch (IOException e) {
+				// Rien à libérer d'important : les fichiers sont en mémoire
+			}
+		}
+	}
+
+	/**
+	 * @return Le chemin de compilation : celui de la machine virtuelle,
+	 *         complété par le dossier ou l'archive d'où ont été chargées les
+	 *         classes de ce paquetage, qui peut en être absent (chargeur de
+	 *         classes propre à une application, par exemple)
+	 */
+	private static String classPath() {
+		String classPath = System.getProperty("java.class.path", "");
+		CodeSource codeSource = FlameSpecializer.class.getProtectionDomain()
+				.getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return classPath;
+		}
+
+		try {
+			String location = new File(codeSource.getLocation().toURI())
+					.getPath();
+			return classPath.isEmpty() ? location : location
+					+ File.pathSeparator + classPath;
+		} catch (URISyntaxException e) {
+			return classPath;
+		} catch (IllegalArgumentException e) {
+			// Emplacement qui n'est pas un fichier
+			return classPath;
+		}
+	}
+
+	/**
+	 * @return Les messages du compilateur, un par ligne
+	 */
+	private static String describe(
+			DiagnosticCollector<JavaFileObject> diagnostics) {
+		StringBuilder text = new StringBuilder();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics
+				.getDiagnostics()) {
+			text.append("\n").append(diagnostic.getKind()).append(" ligne ")
+					.append(diagnostic.getLineNumber()).append(" : ")
+					.append(diagnostic.getMessage(Locale.ROOT));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Charge le code objet d'une boucle spécialisée comme classe cachée
+	 *
+	 * @param bytecode
+	 *            Le code objet de la classe {@link #CLASS_NAME}
+	 * @return La classe chargée, ou null si le chargement a échoué, ce qui
+	 *         est journalisé
+	 */
+	static Class<?> define(byte[] bytecode) {
+		try {
+			return MethodHandles.lookup().defineHiddenClass(bytecode, true)
+					.lookupClass();
+		} catch (IllegalAccessException e) {
+			LOGGER.log(Level.WARNING,
+					"Chargement de la boucle spécialisée échoué", e);
+			return null;
+		} catch (LinkageError e) {
+			LOGGER.log(Level.WARNING,
+					"Chargement de la boucle spécialisée échoué", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Instancie une boucle spécialisée pour une fractale
+	 *
+	 * @param loopClass
+	 *            La classe chargée par {@link #define(byte[])}
+	 * @param flame
+	 *            La fractale, dont la boucle tire les transformations
+	 * @return La boucle spécialisée, ou null si l'instanciation a échoué, ce
+	 *         qui est journalisé
+	 */
+	private static Loop instantiate(Class<?> loopClass, Flame flame) {
+		try {
+			return (Loop) loopClass.getConstructor(Flame.class).newInstance(
+					flame);
+		} catch (ReflectiveOperationException e) {
+			LOGGER.log(Level.WARNING,
+					"Instanciation de la boucle spécialisée échouée", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Ajoute au code source la méthode statique appliquant une
+	 * transformation au point contenu dans un tableau, dans le même ordre
+	 * d'opérations que {@link FlameTransformation#transform(double[])}
+	 *
+	 * @return Faux si une variation de la transformation n'a pas de forme
+	 *         générée, le code source étant alors inutilisable
+	 */
+	private static boolean appendTransformation(StringBuilder source, int t,
+			FlameTransformation transformation, boolean fast) {
+		double[] c = transformation.affineCoefficients();
+		Variation[] variations = transformation.activeVariations();
+		double[] weights = transformation.activeWeights();
+		String sin = fast ? "FastMath.sin" : "Math.sin";
+		String cos = fast ? "FastMath.cos" : "Math.cos";
+
+		source.append("\n\tprivate static void t").append(t)
+				.append("(double[] p) {\n")
+				.append("\t\tdouble x = ").append(literal(c[0]))
+				.append(" * p[0] + ").append(literal(c[1]))
+				.append(" * p[1] + ").append(literal(c[2])).append(";\n")
+				.append("\t\tdouble y = ").append(literal(c[3]))
+				.append(" * p[0] + ").append(literal(c[4]))
+				.append(" * p[1] + ").append(literal(c[5])).append(";\n");
+		if (transformation.usesSquaredRadius()) {
+			source.append("\t\tdouble r2 = x * x + y * y;\n");
+		}
+		if (transformation.usesRadius()) {
+			source.append("\t\tdouble r = Math.sqrt(r2);\n");
+		}
+		source.append("\t\tdouble sx = 0, sy = 0;\n");
+
+		for (int v = 0; v < variations.length; v++) {
+			String w = literal(weights[v]);
+			String termX, termY;
+			switch (variations[v]) {
+			case LINEAR:
+				termX = "x";
+				termY = "y";
+				break;
+			case SINUSOIDAL:
+				termX = sin + "(x)";
+				termY = sin + "(y)";
+				break;
+			case SPHERICAL:
+				termX = "(x / r2)";
+				termY = "(y / r2)";
+				break;
+			case SWIRL:
+				source.append("\t\tdouble sin").append(v).append(" = ")
+						.append(sin).append("(r2), cos").append(v)
+						.append(" = ").append(cos).append("(r2);\n");
+				termX = "(x * sin" + v + " - y * cos" + v + ")";
+				termY = "(x * cos" + v + " + y * sin" + v + ")";
+				break;
+			case HORSESHOE:
+				termX = "((x - y) * (x + y) / r)";
+				termY = "((2 * x * y) / r)";
+				break;
+			case BUBBLE:
+				termX = "(4 * x / (r2 + 4))";
+				termY = "(4 * y / (r2 + 4))";
+				break;
+			default:
+				return false;
+			}
+			source.append("\t\tsx += ").append(w).append(" * ").append(termX)
+					.append(";\n").append("\t\tsy += ").append(w)
+					.append(" * ").append(termY).append(";\n");
+		}
+
+		source.append("\t\tp[0] = sx;\n\t\tp[1] = sy;\n\t}\n");
+		return true;
+	}
+
+	/**
+	 * @return Le littéral Java désignant exactement <i>value</i>, entre
+	 *         parenthèses s'il est négatif
+	 */
+	private static String literal(double value) {
+		if (Double.isNaN(value)) {
+			return "Double.NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "Double.POSITIVE_INFINITY"
+					: "Double.NEGATIVE_INFINITY";
+		}
+
+		// Double.toString donne la plus courte écriture relue exactement
+		String text = Double.toString(value);
+		return text.startsWith("-") ? "(" + text + ")" : text;
+	}
+}
@@ -5,6 +5,7 @@
 
 package ch.epfl.flamemaker.flame;
 
+import java.util.Arrays;
 
 import ch.epfl.flamemaker.geometry2d.*;
 
@@ -24,6 +25,35 @@ public class FlameTransformation implements Transformation {
 	 */
 	private final double[] m_weight;
 
+	/**
+	 * Les coefficients de la composante affine, recopiés pour être appliqués
+	 * directement par {@link #transform(double[])}
+	 */
+	private final double m_a, m_b, m_c, m_d, m_e, m_f;
+
+	/**
+	 * Les mêmes coefficients (a, b, c, d, e, f), pour les noyaux de calcul
+	 * par lots
+	 */
+	private final double[] m_coefficients;
+
+	/**
+	 * Les variations de poids non nul, dans l'ordre de leur index
+	 */
+	private final Variation[] m_activeVariations;
+
+	/**
+	 * Les poids des variations de {@link #m_activeVariations}, dans le même
+	 * ordre
+	 */
+	private final double[] m_activeWeights;
+
+	/**
+	 * Vrai si l'une des variations actives utilise le carré de la distance
+	 * du point à l'origine, respectivement cette distance elle-même
+	 */
+	private final boolean m_usesSquaredRadius, m_usesRadius;
+
 	/**
 	 * Construit une transformation de type Flame à partir de sa composante
 	 * affine et des poids des différentes variations
@@ -46,6 +76,42 @@ public class FlameTransformation implements Transformation {
 
 		m_affineTransfo = affineTransformation;
 		m_weight = variationWeight.clone();
+
+		double[] coefficients = affineTransformation.coefficients();
+		m_a = coefficients[0];
+		m_b = coefficients[1];
+		m_c = coefficients[2];
+		m_d = coefficients[3];
+		m_e = coefficients[4];
+		m_f = coefficients[5];
+		m_coefficients = coefficients;
+
+		/*
+		 * On ne garde que les variations de poids non nul, afin que le coût
+		 * d'une itération ne dépende que du nombre de variations actives
+		 */
+		Variation[] variations = Variation.values();
+		int activeCount = 0;
+		for (int i = 0; i < m_weight.length; i++) {
+			if (m_weight[i] != 0) {
+				activeCount++;
+			}
+		}
+
+		m_activeVariations = new Variation[activeCount];
+		m_activeWeights = new double[activeCount];
+		boolean usesSquaredRadius = false, usesRadius = false;
+		for (int i = 0, j = 0; i < m_weight.length; i++) {
+			if (m_weight[i] != 0) {
+				m_activeVariations[j] = variations[i];
+				m_activeWeights[j] = m_weight[i];
+				usesSquaredRadius |= variations[i].usesSquaredRadius();
+				usesRadius |= variations[i].usesRadius();
+				j++;
+			}
+		}
+		m_usesSquaredRadius = usesSquaredRadius || usesRadius;
+		m_usesRadius = usesRadius;
 	}
 
 	/**
@@ -53,20 +119,107 @@ public class FlameTransformation implements Transformation {
 	 */
 	@Override
 	public Point transformPoint(Point p) {
+		double[] point = { p.x(), p.y() };
+		transform(point);
 
-		Point tmp, result = new Point(0, 0);
+		return new Point(point[0], point[1]);
+	}
+
+	/**
+	 * Applique la transformation au point contenu dans <i>point</i> et y
+	 * écrit le résultat. Contrairement à {@link #transformPoint(Point)},
+	 * cette méthode ne crée aucun objet.
+	 * 
+	 * @param point
+	 *            Tableau de deux éléments (abscisse, ordonnée) contenant le
+	 *            point à transformer, remplacé par le point transformé
+	 */
+	public void transform(double[] point) {
+		transform(point, false);
+	}
+
+	/**
+	 * Applique la transformation au point contenu dans <i>point</i> comme
+	 * {@link #transform(double[])}, avec les approximations rapides des
+	 * variations (voir
+	 * {@link Variation#accumulateFast(double, double, double, double, double, double[])})
+	 * 
+	 * @param point
+	 *            Tableau de deux éléments (abscisse, ordonnée) contenant le
+	 *            point à transformer, remplacé par le point transformé
+	 */
+	void transformFast(double[] point) {
+		transform(point, true);
+	}
 
+	/**
+	 * Applique la transformation au point contenu dans <i>point</i>, avec
+	 * les variations exactes ou approchées selon <i>fast</i>
+	 */
+	private void transform(double[] point, boolean fast) {
 		// On applique la transformation affine au point
-		p = m_affineTransfo.transformPoint(p);
-		for (int i = 0; i < Variation.values().length; i++) {
-			if (m_weight[i] != 0) {
-				tmp = Variation.values()[i].transformPoint(p);
-				result = new Point(result.x() + m_weight[i] * tmp.x(),
-						result.y() + m_weight[i] * tmp.y());
+		double x = m_a * point[0] + m_b * point[1] + m_c;
+		double y = m_d * point[0] + m_e * point[1] + m_f;
+
+		// Grandeurs polaires communes, calculées une seule fois et seulement
+		// si une variation active les utilise
+		double r2 = m_usesSquaredRadius ? x * x + y * y : 0;
+		double r = m_usesRadius ? Math.sqrt(r2) : 0;
+
+		point[0] = 0;
+		point[1] = 0;
+		for (int i = 0; i < m_activeVariations.length; i++) {
+			if (fast) {
+				m_activeVariations[i].accumulateFast(x, y, r2, r,
+						m_activeWeights[i], point);
+			} else {
+				m_activeVariations[i].accumulate(x, y, r2, r,
+						m_activeWeights[i], point);
 			}
 		}
+	}
+
+	/**
+	 * @return Les coefficients (a, b, c, d, e, f) de la composante affine. Le
+	 *         tableau est celui de la transformation et ne doit pas être
+	 *         modifié.
+	 */
+	double[] affineCoefficients() {
+		return m_coefficients;
+	}
+
+	/**
+	 * @return Les variations de poids non nul, dans l'ordre de leur index. Le
+	 *         tableau est celui de la transformation et ne doit pas être
+	 *         modifié.
+	 */
+	Variation[] activeVariations() {
+		return m_activeVariations;
+	}
+
+	/**
+	 * @return Les poids des variations de {@link #activeVariations()}, dans
+	 *         le même ordre. Le tableau est celui de la transformation et ne
+	 *         doit pas être modifié.
+	 */
+	double[] activeWeights() {
+		return m_activeWeights;
+	}
 
-		return result;
+	/**
+	 * @return Vrai si l'une des variations actives utilise le carré de la
+	 *         distance du point à l'origine (ou cette distance elle-même)
+	 */
+	boolean usesSquaredRadius() {
+		return m_usesSquaredRadius;
+	}
+
+	/**
+	 * @return Vrai si l'une des variations actives utilise la distance du
+	 *         point à l'origine
+	 */
+	boolean usesRadius() {
+		return m_usesRadius;
 	}
 
 	/**
@@ -95,6 +248,22 @@ public class FlameTransformation implements Transformation {
 		return m_weight.clone();
 	}
 
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof FlameTransformation)) {
+			return false;
+		}
+
+		FlameTransformation that = (FlameTransformation) other;
+		return m_affineTransfo.equals(that.m_affineTransfo)
+				&& Arrays.equals(m_weight, that.m_weight);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * m_affineTransfo.hashCode() + Arrays.hashCode(m_weight);
+	}
+
 	/**
 	 * Classe modélisant un bâtisseur pour une transformation flame
 	 */
@@ -119,7 +288,9 @@ public class FlameTransformation implements Transformation {
 		 */
 		public Builder(FlameTransformation transformation) {
 			m_affineTransfo = transformation.m_affineTransfo;
-			m_weights = transformation.m_weight;
+			// Copie : la transformation source ne doit pas être modifiée, son
+			// programme de variations actives étant calculé à la construction
+			m_weights = transformation.weights();
 		}
 
 		/**
@@ -0,0 +1,537 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+
+/**
+ * Classe modélisant une orbite de l'algorithme du chaos, ou plusieurs orbites
+ * indépendantes (les <i>voies</i> du marcheur) avancées à tour de rôle. Le
+ * marcheur garde le point courant, la couleur courante et le générateur
+ * aléatoire de chaque voie d'un appel à {@link #run(long)} à l'autre, et
+ * transmet les points de ses orbites à sa propre destination (en général un
+ * bâtisseur d'accumulateur). Un marcheur ne doit être utilisé que par un
+ * seul fil d'exécution à la fois.<br />
+ * Chaque itération dépend du point calculé par la précédente : avec une
+ * seule voie, le processeur attend le résultat de chaque chaîne de calcul
+ * (sinus, racine, division) avant de commencer la suivante. Les voies étant
+ * indépendantes, le processeur peut au contraire entremêler les calculs de
+ * voies successives. L'état des voies est rangé par tableaux de coordonnées
+ * (abscisses, ordonnées, couleurs).<br />
+ * Avec plusieurs voies, chaque tour tire la transformation de toutes les
+ * voies, les regroupe par transformation tirée et applique chaque
+ * transformation d'un coup à son lot de points, au moyen d'un
+ * {@link BatchKernel} (vectoriel si possible).<br />
+ * Une voie dont le point devient non fini (par exemple lorsque les
+ * variations sphérique ou fer à cheval divisent par la distance à l'origine
+ * d'un point situé exactement à l'origine) ou s'échappe à plus de
+ * {@link #ESCAPE_BOUND} de l'origine ne reviendrait jamais dans la région du
+ * plan : elle est alors relancée depuis un point tiré au hasard, après de
+ * nouvelles itérations initiales dans le vide.
+ */
+final class FlameWalker {
+
+	/**
+	 * Le nombre d'itérations effectuées dans le vide avant d'accumuler les
+	 * points, le temps que l'orbite rejoigne l'attracteur
+	 */
+	private static final int BURN_IN = 20;
+
+	/**
+	 * La valeur absolue d'une coordonnée au-delà de laquelle l'orbite est
+	 * considérée comme échappée
+	 */
+	private static final double ESCAPE_BOUND = 1e10;
+
+	/**
+	 * Le nombre de relances consécutives au bout duquel l'orbite est
+	 * abandonnée, la fractale n'ayant visiblement pas d'attracteur
+	 */
+	private static final int MAX_RESEEDS = 64;
+
+	/**
+	 * Le nombre d'itérations entre deux vérifications de l'interruption du
+	 * fil d'exécution
+	 */
+	private static final long INTERRUPT_CHECK_INTERVAL = 1 << 16;
+
+	/**
+	 * Le plus grand nombre de voies d'un marcheur
+	 */
+	static final int MAX_LANES = 256;
+
+	/**
+	 * La fractale parcourue
+	 */
+	private final Flame m_flame;
+
+	/**
+	 * Les transformations de la fractale
+	 */
+	private final FlameTransformation[] m_transforms;
+
+	/**
+	 * La région du plan dans laquelle les points sont accumulés
+	 */
+	private final Rectangle m_frame;
+
+	/**
+	 * Le générateur aléatoire propre à chaque voie
+	 */
+	private final RandomSource[] m_randoms;
+
+	/**
+	 * La destination des points des orbites
+	 */
+	private final HitSink m_sink;
+
+	/**
+	 * Vrai si les transformations sont appliquées en mode de calcul rapide
+	 */
+	private final boolean m_fastMath;
+
+	/**
+	 * Le point courant et la couleur du dernier point calculé de chaque voie
+	 */
+	private final double[] m_xs, m_ys, m_colors;
+
+	/**
+	 * Le point transformé, réutilisé d'une itération à l'autre
+	 */
+	private final double[] m_point = { 0, 0 };
+
+	/**
+	 * La boucle spécialisée pour la fractale, utilisée par les marcheurs
+	 * d'une seule voie, ou null
+	 */
+	private final FlameSpecializer.Loop m_loop;
+
+	/**
+	 * L'état (abscisse, ordonnée, couleur) transmis à la boucle spécialisée
+	 */
+	private final double[] m_state = new double[3];
+
+	/**
+	 * Le noyau appliquant les transformations aux lots de points
+	 */
+	private final BatchKernel m_kernel;
+
+	/**
+	 * La transformation tirée par chaque voie au tour courant
+	 */
+	private final int[] m_selected;
+
+	/**
+	 * Le début du lot de chaque transformation dans les tableaux de lots,
+	 * suivi de la fin du dernier lot, et la position d'écriture courante de
+	 * chaque lot
+	 */
+	private final int[] m_batchStarts, m_batchCursors;
+
+	/**
+	 * Les voies et leurs points regroupés par transformation tirée
+	 */
+	private final int[] m_batchLanes;
+	private final double[] m_batchXs, m_batchYs;
+
+	/**
+	 * Vrai pour chaque voie abandonnée, et le nombre de voies encore en
+	 * activité
+	 */
+	private final boolean[] m_abandoned;
+	private int m_liveLanes;
+
+	/**
+	 * Le nombre de relances des orbites
+	 */
+	private long m_reseeds = 0;
+
+	/**
+	 * Construit un marcheur d'autant de voies que le demande la fractale
+	 * (voir {@link Flame#withLanes(int)}) et effectue les itérations
+	 * initiales dans le vide
+	 *
+	 * @param flame
+	 *            La fractale à parcourir
+	 * @param frame
+	 *            La région du plan dans laquelle accumuler les points
+	 * @param random
+	 *            Le générateur aléatoire propre à cette orbite
+	 * @param sink
+	 *            La destination des points de l'orbite
+	 */
+	FlameWalker(Flame flame, Rectangle frame, RandomSource random,
+			HitSink sink) {
+		this(flame, frame, random, sink, flame.lanes());
+	}
+
+	/**
+	 * Construit un marcheur de <i>lanes</i> voies et effectue les
+	 * itérations initiales de chacune dans le vide. Avec plusieurs voies,
+	 * chacune utilise un générateur obtenu par division de <i>random</i>.
+	 *
+	 * @param flame
+	 *            La fractale à parcourir
+	 * @param frame
+	 *            La région du plan dans laquelle accumuler les points
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des voies
+	 * @param sink
+	 *            La destination des points des orbites
+	 * @param lanes
+	 *            Le nombre de voies
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de voies n'est pas compris entre 1 et
+	 *             {@link #MAX_LANES}
+	 */
+	FlameWalker(Flame flame, Rectangle frame, RandomSource random,
+			HitSink sink, int lanes) {
+		this(flame, frame, random, sink, lanes, BatchKernel.best());
+	}
+
+	/**
+	 * Construit un marcheur de <i>lanes</i> voies dont les lots de points
+	 * sont transformés par <i>kernel</i>
+	 *
+	 * @param flame
+	 *            La fractale à parcourir
+	 * @param frame
+	 *            La région du plan dans laquelle accumuler les points
+	 * @param random
+	 *            Le générateur aléatoire dont dérivent ceux des voies
+	 * @param sink
+	 *            La destination des points des orbites
+	 * @param lanes
+	 *            Le nombre de voies
+	 * @param kernel
+	 *            Le noyau de calcul des lots
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de voies n'est pas compris entre 1 et
+	 *             {@link #MAX_LANES}
+	 */
+	FlameWalker(Flame flame, Rectangle frame, RandomSource random,
+			HitSink sink, int lanes, BatchKernel kernel) {
+		if (lanes < 1 || lanes > MAX_LANES) {
+			throw new IllegalArgumentException("lanes must be between 1 and "
+					+ MAX_LANES);
+		}
+
+		m_flame = flame;
+		m_frame = frame;
+		m_sink = sink;
+		m_fastMath = flame.fastMath();
+
+		m_transforms = new FlameTransformation[flame.transformationsCount()];
+		for (int i = 0; i < m_transforms.length; i++) {
+			m_transforms[i] = flame.transformation(i);
+		}
+
+		m_randoms = new RandomSource[lanes];
+		m_xs = new double[lanes];
+		m_ys = new double[lanes];
+		m_colors = new double[lanes];
+		m_abandoned = new boolean[lanes];
+		m_liveLanes = lanes;
+
+		m_kernel = kernel;
+		m_loop = lanes == 1 ? FlameSpecializer.loop(flame) : null;
+		m_selected = new int[lanes];
+		m_batchStarts = new int[m_transforms.length + 1];
+		m_batchCursors = new int[m_transforms.length];
+		m_batchLanes = new int[lanes];
+		m_batchXs = new double[lanes];
+		m_batchYs = new double[lanes];
+
+		for (int lane = 0; lane < lanes; lane++) {
+			m_randoms[lane] = lanes == 1 ? random : random.split();
+			if (m_transforms.length > 0) {
+				for (int i = 0; i < BURN_IN; i++) {
+					step(lane);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Effectue <i>iterations</i> itérations, réparties à tour de rôle entre
+	 * les voies, et accumule les points contenus dans la région du plan.
+	 * Seuls les points hors de la région sont vérifiés (un point non fini n'y
+	 * est jamais), et une orbite morte est relancée aussitôt : aucune
+	 * itération n'est perdue, les itérations d'une voie abandonnée revenant
+	 * aux autres.
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations à effectuer
+	 * @throws CancellationException
+	 *             Si le fil d'exécution est interrompu pendant le calcul
+	 */
+	void run(long iterations) {
+		if (m_transforms.length == 0) return;
+		for (int lane = 0; lane < m_xs.length; lane++) {
+			if (!isAlive(lane)) reseed(lane);
+		}
+
+		double[] xs = m_xs, ys = m_ys;
+		int lanes = xs.length;
+		for (long done = 0; done < iterations; done += INTERRUPT_CHECK_INTERVAL) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw new CancellationException(
+						"Calcul de la fractale interrompu");
+			}
+
+			long chunk = Math.min(INTERRUPT_CHECK_INTERVAL, iterations - done);
+			if (lanes == 1) {
+				if (!runSingleLane(chunk)) return;
+				continue;
+			}
+			for (long i = 0; i < chunk;) {
+				if (m_liveLanes == 0) return;
+
+				if (chunk - i >= m_liveLanes) {
+					i += m_liveLanes;
+					runRound();
+					for (int lane = 0; lane < lanes; lane++) {
+						if (m_abandoned[lane]) continue;
+
+						if (m_frame.contains(xs[lane], ys[lane]))
+							m_sink.hit(xs[lane], ys[lane], m_colors[lane]);
+						else if (!isAlive(lane))
+							reseed(lane);
+					}
+					continue;
+				}
+
+				// Fin de tranche plus courte qu'un tour : voie par voie
+				for (int lane = 0; lane < lanes && i < chunk; lane++) {
+					if (m_abandoned[lane]) continue;
+
+					step(lane);
+					i++;
+
+					if (m_frame.contains(xs[lane], ys[lane]))
+						m_sink.hit(xs[lane], ys[lane], m_colors[lane]);
+					else if (!isAlive(lane))
+						reseed(lane);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Effectue <i>iterations</i> itérations avec une seule voie, dont l'état
+	 * est gardé dans le point de travail et des variables locales le temps de
+	 * la boucle : l'accès indexé aux tableaux des voies coûte environ 20% du
+	 * débit sur une orbite seule.
+	 *
+	 * @return Faux si la voie a été abandonnée
+	 */
+	private boolean runSingleLane(long iterations) {
+		if (m_loop != null) {
+			return runSpecialized(iterations);
+		}
+
+		RandomSource random = m_randoms[0];
+		double[] point = m_point;
+		point[0] = m_xs[0];
+		point[1] = m_ys[0];
+		double color = m_colors[0];
+
+		for (long i = 0; i < iterations; i++) {
+			int transformationNum = m_flame.sampleTransformation(random);
+			if (m_fastMath) {
+				m_transforms[transformationNum].transformFast(point);
+			} else {
+				m_transforms[transformationNum].transform(point);
+			}
+			color = (color + m_flame.colorIndex(transformationNum)) / 2.0;
+
+			if (m_frame.contains(point[0], point[1])) {
+				m_sink.hit(point[0], point[1], color);
+			} else if (!(Math.abs(point[0]) < ESCAPE_BOUND && Math.abs(point[1]) < ESCAPE_BOUND)) {
+				m_xs[0] = point[0];
+				m_ys[0] = point[1];
+				reseed(0);
+				if (m_abandoned[0]) return false;
+				point[0] = m_xs[0];
+				point[1] = m_ys[0];
+				color = m_colors[0];
+			}
+		}
+
+		m_xs[0] = point[0];
+		m_ys[0] = point[1];
+		m_colors[0] = color;
+		return true;
+	}
+
+	/**
+	 * Effectue une itération de chaque voie en activité : tire leurs
+	 * transformations, regroupe leurs points par transformation tirée,
+	 * transforme chaque lot avec le noyau et met à jour les points et les
+	 * couleurs des voies
+	 */
+	private void runRound() {
+		int lanes = m_xs.length, transforms = m_transforms.length;
+		int[] starts = m_batchStarts, cursors = m_batchCursors;
+
+		Arrays.fill(starts, 0);
+		for (int lane = 0; lane < lanes; lane++) {
+			if (m_abandoned[lane]) continue;
+			int transformationNum = m_flame.sampleTransformation(m_randoms[lane]);
+			m_selected[lane] = transformationNum;
+			starts[transformationNum + 1]++;
+		}
+		for (int t = 0; t < transforms; t++) {
+			starts[t + 1] += starts[t];
+			cursors[t] = starts[t];
+		}
+
+		for (int lane = 0; lane < lanes; lane++) {
+			if (m_abandoned[lane]) continue;
+			int position = cursors[m_selected[lane]]++;
+			m_batchLanes[position] = lane;
+			m_batchXs[position] = m_xs[lane];
+			m_batchYs[position] = m_ys[lane];
+		}
+
+		for (int t = 0; t < transforms; t++) {
+			if (starts[t] < starts[t + 1]) {
+				m_kernel.transform(m_transforms[t], m_batchXs, m_batchYs,
+						starts[t], starts[t + 1], m_fastMath);
+			}
+		}
+
+		for (int position = 0; position < starts[transforms]; position++) {
+			int lane = m_batchLanes[position];
+			m_xs[lane] = m_batchXs[position];
+			m_ys[lane] = m_batchYs[position];
+			m_colors[lane] = (m_colors[lane] + m_flame
+					.colorIndex(m_selected[lane])) / 2.0;
+		}
+	}
+
+	/**
+	 * Effectue <i>iterations</i> itérations avec une seule voie au moyen de
+	 * la boucle spécialisée, qui rend la main à chaque orbite morte pour
+	 * qu'elle soit relancée
+	 *
+	 * @return Faux si la voie a été abandonnée
+	 */
+	private boolean runSpecialized(long iterations) {
+		double[] state = m_state;
+		state[0] = m_xs[0];
+		state[1] = m_ys[0];
+		state[2] = m_colors[0];
+
+		for (long done = 0; done < iterations;) {
+			done += m_loop.run(state, m_randoms[0], m_frame, m_sink,
+					iterations - done);
+			m_xs[0] = state[0];
+			m_ys[0] = state[1];
+			m_colors[0] = state[2];
+
+			if (!isAlive(0)) {
+				reseed(0);
+				if (m_abandoned[0]) return false;
+				state[0] = m_xs[0];
+				state[1] = m_ys[0];
+				state[2] = m_colors[0];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Le nombre de relances des orbites depuis la construction du
+	 *         marcheur
+	 */
+	long reseeds() {
+		return m_reseeds;
+	}
+
+	/**
+	 * @return Vrai si les orbites sont calculées par une boucle spécialisée
+	 *         pour la fractale
+	 */
+	boolean specialized() {
+		return m_loop != null;
+	}
+
+	/**
+	 * @return Vrai si les orbites sont transformées par lots par le noyau
+	 *         vectoriel, c'est-à-dire si le marcheur a plusieurs voies et que
+	 *         ce noyau a pu être chargé
+	 */
+	boolean vectorized() {
+		return m_xs.length > 1 && m_kernel != BatchKernel.SCALAR;
+	}
+
+	/**
+	 * @return Vrai si le point courant de la voie est fini et ne s'est pas
+	 *         échappé
+	 */
+	private boolean isAlive(int lane) {
+		// Les comparaisons avec NaN sont toujours fausses
+		return Math.abs(m_xs[lane]) < ESCAPE_BOUND
+				&& Math.abs(m_ys[lane]) < ESCAPE_BOUND;
+	}
+
+	/**
+	 * Relance l'orbite d'une voie depuis un point tiré au hasard dans le
+	 * carré [-1, 1] x [-1, 1], suivi des itérations initiales dans le vide ;
+	 * si l'orbite meurt de nouveau pendant ces itérations, elle est relancée
+	 * jusqu'à {@link #MAX_RESEEDS} fois, puis la voie est abandonnée
+	 */
+	private void reseed(int lane) {
+		if (m_abandoned[lane]) {
+			return;
+		}
+
+		RandomSource random = m_randoms[lane];
+		for (int attempt = 0; attempt < MAX_RESEEDS; attempt++) {
+			m_reseeds++;
+			m_xs[lane] = 2 * random.nextDouble() - 1;
+			m_ys[lane] = 2 * random.nextDouble() - 1;
+			m_colors[lane] = 0;
+
+			boolean alive = true;
+			for (int i = 0; i < BURN_IN && alive; i++) {
+				step(lane);
+				alive = isAlive(lane);
+			}
+			if (alive) {
+				return;
+			}
+		}
+
+		m_abandoned[lane] = true;
+		m_liveLanes--;
+	}
+
+	/**
+	 * Applique au point courant d'une voie une transformation tirée au
+	 * hasard
+	 */
+	private void step(int lane) {
+		int transformationNum = m_flame.sampleTransformation(m_randoms[lane]);
+		double[] point = m_point;
+		point[0] = m_xs[lane];
+		point[1] = m_ys[lane];
+		if (m_fastMath) {
+			m_transforms[transformationNum].transformFast(point);
+		} else {
+			m_transforms[transformationNum].transform(point);
+		}
+		m_xs[lane] = point[0];
+		m_ys[lane] = point[1];
+		m_colors[lane] = (m_colors[lane] + m_flame
+				.colorIndex(transformationNum)) / 2.0;
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Stockage des cases d'un accumulateur dans le tas, qui garde la somme des
+ * index de couleur de chaque case plutôt que leur moyenne en double
+ * précision : ajouter un point ne demande qu'une addition, et la moyenne
+ * n'est calculée (une seule division) que lorsqu'elle est lue. Les sommes
+ * sont en simple précision par blocs (voir {@link ColorSums}), et une case
+ * occupe alors 8 octets au lieu de 12 ; le bloc d'une case qui atteint
+ * {@link ColorSums#WIDE_HITS} points passe en double précision.<br />
+ * L'index moyen d'une case diffère donc de celui de
+ * {@link HeapAccumulatorStorage} d'au plus 2<sup>-12</sup>, quel que soit
+ * son nombre de points, et en pratique de bien moins car les arrondis se
+ * compensent.
+ */
+final class FloatSumAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final int[] m_hits;
+
+	/**
+	 * La somme des index de couleur de chaque case
+	 */
+	private final ColorSums m_sums;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	FloatSumAccumulatorStorage(long size) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		m_hits = new int[(int) size];
+		m_sums = new ColorSums(size);
+	}
+
+	/**
+	 * Construit un stockage à partir de ses composants, qui ne sont pas
+	 * copiés
+	 * 
+	 * @param hits
+	 *            Le nombre de points de chaque case
+	 * @param sums
+	 *            La somme des index de couleur de chaque case
+	 */
+	FloatSumAccumulatorStorage(int[] hits, ColorSums sums) {
+		m_hits = hits;
+		m_sums = sums;
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private FloatSumAccumulatorStorage(FloatSumAccumulatorStorage other) {
+		m_hits = other.m_hits.clone();
+		m_sums = other.m_sums.copy();
+	}
+
+	@Override
+	public long size() {
+		return m_hits.length;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) index];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		int i = (int) index;
+		return m_hits[i] == 0 ? 0 : m_sums.get(i) / m_hits[i];
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int i = (int) index;
+		int hits = ++m_hits[i];
+		m_sums.add(i, colorIndex, hits);
+		return hits;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int i = (int) index;
+		int total = m_hits[i] += (int) hits;
+		m_sums.add(i, colorIndex * hits, total);
+		return total;
+	}
+
+	/**
+	 * Entre deux stockages de ce type, les sommes sont simplement
+	 * additionnées, sans passer par la moyenne
+	 */
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		if (!(other instanceof FloatSumAccumulatorStorage)) {
+			return AccumulatorStorages.addAll(this, other, from, to);
+		}
+
+		int[] hits = m_hits, otherHits = ((FloatSumAccumulatorStorage) other).m_hits;
+		ColorSums sums = m_sums, otherSums = ((FloatSumAccumulatorStorage) other).m_sums;
+		int maxHit = 0;
+		for (int i = (int) from; i < to; i++) {
+			int added = otherHits[i];
+			if (added == 0) {
+				continue;
+			}
+
+			int total = hits[i] += added;
+			sums.add(i, otherSums.get(i), total);
+			if (total > maxHit) {
+				maxHit = total;
+			}
+		}
+		return maxHit;
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new FloatSumAccumulatorStorage(this);
+	}
+}
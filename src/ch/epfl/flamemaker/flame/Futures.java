@@ -0,0 +1,101 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Méthodes communes d'attente des tâches lancées sur un exécuteur : une
+ * exception non contrôlée ou une erreur lancée par une tâche est relancée
+ * telle quelle dans le fil appelant, et l'interruption de celui-ci devient
+ * une {@link CancellationException}.
+ */
+final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * Attend la fin d'une tâche
+	 *
+	 * @param future
+	 *            La tâche
+	 * @param interruption
+	 *            Le message de l'exception lancée si le fil appelant est
+	 *            interrompu
+	 * @return Le résultat de la tâche
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant l'attente (il
+	 *             reste alors marqué comme interrompu) ou si la tâche a été
+	 *             annulée
+	 */
+	static <T> T get(Future<T> future, String interruption) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException(interruption);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Attend la fin de toutes les tâches, dans l'ordre. Si le fil appelant
+	 * est interrompu, les tâches sont annulées.
+	 *
+	 * @param futures
+	 *            Les tâches
+	 * @param interruption
+	 *            Le message de l'exception lancée si le fil appelant est
+	 *            interrompu
+	 * @return Les résultats des tâches, dans le même ordre
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant l'attente (il
+	 *             reste alors marqué comme interrompu) ou si l'une des tâches
+	 *             a été annulée
+	 */
+	static <T> List<T> getAll(List<? extends Future<T>> futures,
+			String interruption) {
+		List<T> results = new ArrayList<T>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new CancellationException(interruption);
+		} catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+		return results;
+	}
+
+	/**
+	 * @return L'exception non contrôlée lancée par la tâche, ou une
+	 *         {@link IllegalStateException} enveloppant son exception
+	 *         contrôlée
+	 * @throws Error
+	 *             L'erreur lancée par la tâche
+	 */
+	private static RuntimeException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IllegalStateException(cause);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Stockage des cases d'un accumulateur dans deux tableaux plats alloués dans
+ * le tas. C'est le stockage par défaut : le plus rapide, mais limité à
+ * 2<sup>31</sup> cases, à 2<sup>31</sup> - 1 points par case et par la
+ * taille du tas (12 octets par case).
+ */
+final class HeapAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le nombre de cases maximal d'un tableau Java
+	 */
+	static final long MAX_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final int[] m_hits;
+
+	/**
+	 * La moyenne des index de couleur de chaque case
+	 */
+	private final double[] m_colors;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse {@link #MAX_SIZE}
+	 */
+	HeapAccumulatorStorage(long size) {
+		if (size > MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		m_hits = new int[(int) size];
+		m_colors = new double[(int) size];
+	}
+
+	/**
+	 * Construit un stockage à partir de ses tableaux, qui ne sont pas copiés
+	 * 
+	 * @param hits
+	 *            Le nombre de points de chaque case
+	 * @param colors
+	 *            La moyenne des index de couleur de chaque case
+	 */
+	HeapAccumulatorStorage(int[] hits, double[] colors) {
+		m_hits = hits;
+		m_colors = colors;
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private HeapAccumulatorStorage(HeapAccumulatorStorage other) {
+		m_hits = other.m_hits.clone();
+		m_colors = other.m_colors.clone();
+	}
+
+	@Override
+	public long size() {
+		return m_hits.length;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) index];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		return m_colors[(int) index];
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int i = (int) index;
+		int hits = m_hits[i];
+		m_colors[i] = (colorIndex + m_colors[i] * hits) / (hits + 1);
+		return m_hits[i] = hits + 1;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int i = (int) index;
+		int total = (int) (m_hits[i] + hits);
+		if (total != 0) {
+			m_colors[i] = (m_colors[i] * m_hits[i] + colorIndex * hits) / total;
+		}
+		return m_hits[i] = total;
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		if (!(other instanceof HeapAccumulatorStorage)) {
+			return AccumulatorStorages.addAll(this, other, from, to);
+		}
+
+		int[] hits = m_hits, otherHits = ((HeapAccumulatorStorage) other).m_hits;
+		double[] colors = m_colors, otherColors = ((HeapAccumulatorStorage) other).m_colors;
+		int maxHit = 0;
+		for (int i = (int) from; i < to; i++) {
+			int added = otherHits[i];
+			if (added == 0) {
+				continue;
+			}
+
+			int count = hits[i], total = count + added;
+			colors[i] = (colors[i] * count + otherColors[i] * added) / total;
+			hits[i] = total;
+			if (total > maxHit) {
+				maxHit = total;
+			}
+		}
+		return maxHit;
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new HeapAccumulatorStorage(this);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Classe regroupant les points destinés à un bâtisseur d'accumulateur par
+ * régions de cases contiguës avant de les lui transmettre. Dans un grand
+ * accumulateur, les points d'une orbite tombent dans des cases dispersées et
+ * presque chaque point provoque un défaut de cache ; ici, chaque point est
+ * d'abord ajouté à la suite du casier de sa région (écriture séquentielle),
+ * puis un casier plein est vidé d'un seul coup dans sa région, qui tient dans
+ * le cache du processeur.<br />
+ * Les points d'une même case sont transmis dans leur ordre d'arrivée : le
+ * résultat est identique à celui d'une accumulation directe.
+ */
+final class HitBinner {
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'une région : une région
+	 * de 2<sup>14</sup> cases occupe 192 Ko dans un stockage en tas
+	 */
+	private static final int REGION_SHIFT = 14;
+
+	/**
+	 * Le masque donnant la position d'une case dans sa région
+	 */
+	private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+	/**
+	 * Le nombre de points que peut contenir un casier
+	 */
+	private static final int CAPACITY = 256;
+
+	/**
+	 * Le bâtisseur auquel les casiers sont transmis
+	 */
+	private final FlameAccumulator.Builder m_target;
+
+	/**
+	 * La position dans sa région de la case de chaque point en attente, et
+	 * l'index de couleur de ce point, casier après casier
+	 */
+	private final int[] m_offsets;
+	private final double[] m_colors;
+
+	/**
+	 * Le nombre de points en attente dans chaque casier
+	 */
+	private final int[] m_counts;
+
+	/**
+	 * Construit les casiers d'un bâtisseur
+	 * 
+	 * @param cells
+	 *            Le nombre de cases du bâtisseur
+	 * @param target
+	 *            Le bâtisseur auquel transmettre les points
+	 */
+	HitBinner(long cells, FlameAccumulator.Builder target) {
+		int bins = (int) ((cells + REGION_MASK) >>> REGION_SHIFT);
+
+		m_target = target;
+		m_offsets = new int[bins * CAPACITY];
+		m_colors = new double[bins * CAPACITY];
+		m_counts = new int[bins];
+	}
+
+	/**
+	 * Met un point en attente dans le casier de sa région, en vidant ce
+	 * casier s'il est plein
+	 * 
+	 * @param index
+	 *            L'index de la case du point
+	 * @param colorIndex
+	 *            L'index de couleur du point
+	 */
+	void add(long index, double colorIndex) {
+		int bin = (int) (index >>> REGION_SHIFT);
+		int count = m_counts[bin];
+		int slot = bin * CAPACITY + count;
+
+		m_offsets[slot] = (int) (index & REGION_MASK);
+		m_colors[slot] = colorIndex;
+
+		if (++count == CAPACITY) {
+			flushBin(bin, count);
+			count = 0;
+		}
+		m_counts[bin] = count;
+	}
+
+	/**
+	 * Transmet au bâtisseur tous les points en attente
+	 */
+	void flush() {
+		for (int bin = 0; bin < m_counts.length; bin++) {
+			if (m_counts[bin] != 0) {
+				flushBin(bin, m_counts[bin]);
+				m_counts[bin] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Transmet au bâtisseur les <i>count</i> premiers points d'un casier
+	 */
+	private void flushBin(int bin, int count) {
+		m_target.accumulate((long) bin << REGION_SHIFT, m_offsets, m_colors,
+				bin * CAPACITY, count);
+	}
+}
@@ -0,0 +1,68 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Enumération des manières de compter les points de chaque case d'un
+ * accumulateur
+ */
+public enum HitCounters {
+
+	/**
+	 * Un compteur de 32 bits par case (4 octets). C'est le mode par défaut ;
+	 * une case ne peut pas compter plus de 2<sup>31</sup> - 1 points.
+	 */
+	INT {
+		@Override
+		AccumulatorStorage newStorage(long cells, ColorAccumulation colors) {
+			return colors.newStorage(cells);
+		}
+	},
+
+	/**
+	 * Un compteur de 64 bits par case (8 octets), sans stockage creux : une
+	 * case peut compter jusqu'à 2<sup>63</sup> - 1 points. Les intensités et
+	 * les couleurs sont identiques à celles du mode {@link #INT}.
+	 */
+	LONG {
+		@Override
+		AccumulatorStorage newStorage(long cells, ColorAccumulation colors) {
+			return new LongAccumulatorStorage(cells, colors);
+		}
+	},
+
+	/**
+	 * Des compteurs de 8 bits, élargis par blocs à 16, 32 puis 64 bits
+	 * lorsqu'ils débordent (voir {@link TieredCounters}), jusqu'à
+	 * 2<sup>63</sup> points par case. Ce mode implique
+	 * {@link ColorAccumulation#FLOAT_SUM}, quelle que soit la manière
+	 * d'accumuler les couleurs demandée : les intensités sont identiques à
+	 * celles du mode {@link #INT}, les couleurs à celles de
+	 * {@link ColorAccumulation#FLOAT_SUM}, dont les sommes passent en double
+	 * précision dans les blocs les plus touchés.<br />
+	 * Une case occupe environ 5,5 à 6,5 octets (1 à 2 octets de compteur et
+	 * 4 octets de somme, 8 dans les blocs promus) au lieu de 12 pour
+	 * {@link #INT} avec {@link ColorAccumulation#RUNNING_MEAN} et de 8 avec
+	 * {@link ColorAccumulation#FLOAT_SUM} : le gain est d'environ 2 et 1,3
+	 * respectivement, au prix d'une orbite 15 à 35 % plus lente.
+	 */
+	TIERED {
+		@Override
+		AccumulatorStorage newStorage(long cells, ColorAccumulation colors) {
+			return new TieredAccumulatorStorage(cells);
+		}
+	};
+
+	/**
+	 * @param cells
+	 *            Le nombre de cases
+	 * @param colors
+	 *            La manière d'accumuler les index de couleur, ignorée par
+	 *            {@link #TIERED}
+	 * @return Un nouveau stockage dans le tas de <i>cells</i> cases vides
+	 */
+	abstract AccumulatorStorage newStorage(long cells, ColorAccumulation colors);
+}
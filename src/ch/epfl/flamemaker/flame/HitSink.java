@@ -0,0 +1,27 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Interface modélisant la destination des points calculés par une orbite de
+ * l'algorithme du chaos : un bâtisseur d'accumulateur, ou un répartiteur qui
+ * transmet chaque point au bâtisseur de la tuile qui le contient.
+ */
+interface HitSink {
+
+	/**
+	 * Signale un nouveau point de coordonnées (px, py) dans le plan. Les
+	 * points que la destination ne couvre pas sont ignorés.
+	 * 
+	 * @param px
+	 *            Abscisse du point dans le plan
+	 * @param py
+	 *            Ordonnée du point dans le plan
+	 * @param colorIndex
+	 *            La couleur du point calculé
+	 */
+	void hit(double px, double py, double colorIndex);
+}
@@ -0,0 +1,127 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Stockage des cases d'un accumulateur dans le tas dont les nombres de
+ * points sont gardés dans des compteurs de 64 bits : une case peut compter
+ * jusqu'à 2<sup>63</sup> - 1 points, au prix de 8 octets de compteur par
+ * case. Les index de couleur sont accumulés en moyenne (comme
+ * {@link HeapAccumulatorStorage}, dont les résultats sont identiques) ou en
+ * somme (comme {@link FloatSumAccumulatorStorage}, voir {@link ColorSums}).
+ */
+final class LongAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final long[] m_hits;
+
+	/**
+	 * La somme des index de couleur de chaque case, ou null si les moyennes
+	 * sont gardées
+	 */
+	private final ColorSums m_sums;
+
+	/**
+	 * La moyenne des index de couleur de chaque case, ou null si les sommes
+	 * sont gardées
+	 */
+	private final double[] m_means;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @param colors
+	 *            La manière d'accumuler les index de couleur
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	LongAccumulatorStorage(long size, ColorAccumulation colors) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		m_hits = new long[(int) size];
+		m_sums = colors == ColorAccumulation.FLOAT_SUM ? new ColorSums(size)
+				: null;
+		m_means = colors == ColorAccumulation.FLOAT_SUM ? null
+				: new double[(int) size];
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private LongAccumulatorStorage(LongAccumulatorStorage other) {
+		m_hits = other.m_hits.clone();
+		m_sums = other.m_sums == null ? null : other.m_sums.copy();
+		m_means = other.m_means == null ? null : other.m_means.clone();
+	}
+
+	@Override
+	public long size() {
+		return m_hits.length;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) index];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		int i = (int) index;
+		if (m_sums == null) {
+			return m_means[i];
+		}
+
+		long hits = m_hits[i];
+		return hits == 0 ? 0 : m_sums.get(i) / hits;
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int i = (int) index;
+		long hits = m_hits[i];
+
+		if (m_sums == null) {
+			m_means[i] = (colorIndex + m_means[i] * hits) / (hits + 1);
+		} else {
+			m_sums.add(i, colorIndex, hits + 1);
+		}
+		return m_hits[i] = hits + 1;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int i = (int) index;
+		long total = m_hits[i] + hits;
+
+		if (m_sums == null) {
+			if (total != 0) {
+				m_means[i] = (m_means[i] * m_hits[i] + colorIndex * hits)
+						/ total;
+			}
+		} else {
+			m_sums.add(i, colorIndex * hits, total);
+		}
+		return m_hits[i] = total;
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		return AccumulatorStorages.addAll(this, other, from, to);
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new LongAccumulatorStorage(this);
+	}
+}
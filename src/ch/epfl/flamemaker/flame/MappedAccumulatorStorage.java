@@ -0,0 +1,199 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stockage des cases d'un accumulateur hors du tas, dans un fichier
+ * temporaire projeté en mémoire. La taille de l'accumulateur n'est alors
+ * limitée que par l'espace disque : le système d'exploitation charge et
+ * décharge les pages du fichier selon les besoins.<br />
+ * Le fichier contient d'abord le nombre de points de chaque case (4 octets par
+ * case), puis la moyenne des index de couleur (8 octets par case). Comme une
+ * projection ne peut pas dépasser 2 Go, chaque partie est projetée par
+ * tranches de {@link #CHUNK_CELLS} cases. Le fichier est supprimé dès qu'il
+ * est projeté (ou à la fin du programme si le système ne le permet pas) :
+ * l'espace disque est libéré lorsque le stockage est ramassé par le
+ * ramasse-miettes.
+ */
+final class MappedAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases par tranche
+	 */
+	private static final int CHUNK_SHIFT = 27;
+
+	/**
+	 * Le nombre de cases par tranche : une tranche de moyennes occupe 1 Go
+	 */
+	static final long CHUNK_CELLS = 1L << CHUNK_SHIFT;
+
+	/**
+	 * Le masque donnant la position d'une case dans sa tranche
+	 */
+	private static final long CHUNK_MASK = CHUNK_CELLS - 1;
+
+	/**
+	 * Le dossier dans lequel le fichier est créé
+	 */
+	private final File m_directory;
+
+	/**
+	 * Le nombre de cases
+	 */
+	private final long m_size;
+
+	/**
+	 * Les tranches du nombre de points et de la moyenne des index de couleur
+	 */
+	private final IntBuffer[] m_hits;
+	private final DoubleBuffer[] m_colors;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides, dans un fichier
+	 * temporaire créé dans <i>directory</i>
+	 * 
+	 * @param directory
+	 *            Le dossier dans lequel créer le fichier, ou null pour le
+	 *            dossier temporaire du système
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IOException
+	 *             Si le fichier ne peut pas être créé ou projeté
+	 */
+	MappedAccumulatorStorage(File directory, long size) throws IOException {
+		m_directory = directory;
+		m_size = size;
+
+		int chunks = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+		m_hits = new IntBuffer[chunks];
+		m_colors = new DoubleBuffer[chunks];
+
+		File file = File.createTempFile("flame", ".acc", directory);
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				// Le fichier est creux : les cases vides ne prennent pas de
+				// place sur le disque
+				raf.setLength(size * 12);
+				FileChannel channel = raf.getChannel();
+
+				for (int c = 0; c < chunks; c++) {
+					long first = (long) c << CHUNK_SHIFT;
+					long cells = Math.min(CHUNK_CELLS, size - first);
+
+					m_hits[c] = map(channel, first * 4, cells * 4)
+							.asIntBuffer();
+					m_colors[c] = map(channel, size * 4 + first * 8,
+							cells * 8).asDoubleBuffer();
+				}
+			} finally {
+				// Les projections restent valides après la fermeture
+				raf.close();
+			}
+		} finally {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	@Override
+	public long size() {
+		return m_size;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) (index >>> CHUNK_SHIFT)].get(offset(index));
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		return m_colors[(int) (index >>> CHUNK_SHIFT)].get(offset(index));
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int chunk = (int) (index >>> CHUNK_SHIFT), i = offset(index);
+		IntBuffer hitChunk = m_hits[chunk];
+		DoubleBuffer colorChunk = m_colors[chunk];
+
+		int hits = hitChunk.get(i);
+		colorChunk.put(i, (colorIndex + colorChunk.get(i) * hits) / (hits + 1));
+		hitChunk.put(i, hits + 1);
+
+		return hits + 1;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int chunk = (int) (index >>> CHUNK_SHIFT), i = offset(index);
+		IntBuffer hitChunk = m_hits[chunk];
+		DoubleBuffer colorChunk = m_colors[chunk];
+
+		int current = hitChunk.get(i), total = (int) (current + hits);
+		if (total != 0) {
+			colorChunk.put(i, (colorChunk.get(i) * current + colorIndex * hits)
+					/ total);
+		}
+		hitChunk.put(i, total);
+
+		return total;
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		return AccumulatorStorages.addAll(this, other, from, to);
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		try {
+			MappedAccumulatorStorage copy = new MappedAccumulatorStorage(
+					m_directory, m_size);
+			for (int c = 0; c < m_hits.length; c++) {
+				copy.m_hits[c].put(m_hits[c].duplicate());
+				copy.m_colors[c].put(m_colors[c].duplicate());
+				copy.m_hits[c].clear();
+				copy.m_colors[c].clear();
+			}
+			return copy;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param index
+	 *            L'index d'une case
+	 * @return La position de la case dans sa tranche
+	 */
+	private static int offset(long index) {
+		return (int) (index & CHUNK_MASK);
+	}
+
+	/**
+	 * Projette une partie du fichier en mémoire, dans l'ordre des octets du
+	 * processeur
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long position,
+			long length) throws IOException {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+				position, length);
+		buffer.order(ByteOrder.nativeOrder());
+		return buffer;
+	}
+}
@@ -80,6 +80,53 @@ public class ObservableFlameBuilder {
 		notifyObservers();
 	}
 
+	/**
+	 * Ajoute une transformation de type flame à la fractale, avec le poids de
+	 * sélection donné
+	 * 
+	 * @param transformation
+	 *            La transformation
+	 * @param selectionWeight
+	 *            Le poids de sélection de la transformation
+	 * @throws IllegalArgumentException
+	 *             Si le poids est négatif
+	 */
+	public void addTransformation(FlameTransformation transformation,
+			double selectionWeight) {
+		m_builder.addTransformation(transformation, selectionWeight);
+
+		notifyObservers();
+	}
+
+	/**
+	 * @param index
+	 *            L'index de la transformation
+	 * @return Le poids de sélection de la transformation d'index <i>index</i>
+	 * @throws IllegalArgumentException
+	 *             Si l'index n'est pas valide
+	 */
+	public double selectionWeight(int index) {
+		return m_builder.selectionWeight(index);
+	}
+
+	/**
+	 * Modifie le poids de sélection de la transformation d'index <i>index</i>.
+	 * Plus ce poids est élevé, plus la transformation est choisie souvent lors
+	 * du calcul de la fractale.
+	 * 
+	 * @param index
+	 *            L'index de la transformation
+	 * @param newWeight
+	 *            Le nouveau poids de sélection
+	 * @throws IllegalArgumentException
+	 *             Si l'index n'est pas valide ou si le poids est négatif
+	 */
+	public void setSelectionWeight(int index, double newWeight) {
+		m_builder.setSelectionWeight(index, newWeight);
+
+		notifyObservers();
+	}
+
 	/**
 	 * Notifies observers that the builder has changed.
 	 * 
@@ -0,0 +1,300 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stockage des cases d'un accumulateur par blocs de cases contiguës, dont
+ * seuls les blocs ayant reçu au moins un point sont alloués. Lorsque la
+ * fractale ne couvre qu'une petite partie du cadre, la mémoire occupée (et le
+ * temps de copie) dépend donc de la surface couverte et non de la taille de
+ * l'accumulateur. Un bloc absent se lit comme un bloc de cases vides.<br />
+ * Les formules d'accumulation sont celles de {@link HeapAccumulatorStorage}
+ * et de {@link FloatSumAccumulatorStorage} : les résultats sont identiques, et
+ * {@link #toDense()} produit le stockage dense équivalent.
+ */
+final class SparseAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le nombre de cases
+	 */
+	private final long m_size;
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'un bloc, et le masque
+	 * donnant la position d'une case dans son bloc
+	 */
+	private final int m_blockShift, m_blockMask;
+
+	/**
+	 * Le nombre de points de chaque case de chaque bloc (null pour un bloc
+	 * vide)
+	 */
+	private final int[][] m_hits;
+
+	/**
+	 * La moyenne (en mode {@link ColorAccumulation#RUNNING_MEAN}) ou la
+	 * somme (en mode {@link ColorAccumulation#FLOAT_SUM}) des index de
+	 * couleur de chaque case de chaque bloc ; celles de l'autre mode sont
+	 * null. Les sommes sont gardées par blocs de même taille.
+	 */
+	private final double[][] m_means;
+	private final ColorSums m_sums;
+
+	/**
+	 * Le nombre de blocs alloués, compté de manière atomique car des blocs
+	 * peuvent être alloués en parallèle par {@link #addAll}
+	 */
+	private final AtomicInteger m_allocated;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @param blockShift
+	 *            Le logarithme en base 2 du nombre de cases d'un bloc
+	 * @param colors
+	 *            La manière d'accumuler les index de couleur
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	SparseAccumulatorStorage(long size, int blockShift,
+			ColorAccumulation colors) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		int blocks = (int) ((size + (1L << blockShift) - 1) >>> blockShift);
+
+		m_size = size;
+		m_blockShift = blockShift;
+		m_blockMask = (1 << blockShift) - 1;
+		m_allocated = new AtomicInteger();
+		m_hits = new int[blocks][];
+		m_means = colors == ColorAccumulation.FLOAT_SUM ? null
+				: new double[blocks][];
+		m_sums = colors == ColorAccumulation.FLOAT_SUM ? new ColorSums(size,
+				blockShift) : null;
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private SparseAccumulatorStorage(SparseAccumulatorStorage other) {
+		m_size = other.m_size;
+		m_blockShift = other.m_blockShift;
+		m_blockMask = other.m_blockMask;
+		m_allocated = new AtomicInteger(other.m_allocated.get());
+		m_hits = new int[other.m_hits.length][];
+		m_means = other.m_means == null ? null : new double[m_hits.length][];
+		m_sums = other.m_sums == null ? null : other.m_sums.copy();
+
+		for (int b = 0; b < m_hits.length; b++) {
+			if (other.m_hits[b] != null) {
+				m_hits[b] = other.m_hits[b].clone();
+				if (m_means != null) {
+					m_means[b] = other.m_means[b].clone();
+				}
+			}
+		}
+	}
+
+	@Override
+	public long size() {
+		return m_size;
+	}
+
+	@Override
+	public long hits(long index) {
+		int[] hits = m_hits[(int) (index >>> m_blockShift)];
+		return hits == null ? 0 : hits[(int) index & m_blockMask];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		int block = (int) (index >>> m_blockShift);
+		int i = (int) index & m_blockMask;
+		int[] hits = m_hits[block];
+
+		if (hits == null || hits[i] == 0) {
+			return 0;
+		}
+		return m_means != null ? m_means[block][i] : m_sums.get(index)
+				/ hits[i];
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int block = (int) (index >>> m_blockShift);
+		int i = (int) index & m_blockMask;
+		int[] hits = m_hits[block];
+		if (hits == null) {
+			hits = allocate(block);
+		}
+
+		int count = hits[i];
+		if (m_means != null) {
+			double[] means = m_means[block];
+			means[i] = (colorIndex + means[i] * count) / (count + 1);
+		} else {
+			m_sums.add(index, colorIndex, count + 1);
+		}
+		return hits[i] = count + 1;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int block = (int) (index >>> m_blockShift);
+		int i = (int) index & m_blockMask;
+		int[] blockHits = m_hits[block];
+		if (blockHits == null) {
+			blockHits = allocate(block);
+		}
+
+		int count = blockHits[i], total = (int) (count + hits);
+		if (m_means != null) {
+			if (total != 0) {
+				double[] means = m_means[block];
+				means[i] = (means[i] * count + colorIndex * hits) / total;
+			}
+		} else {
+			m_sums.add(index, colorIndex * hits, total);
+		}
+		return blockHits[i] = total;
+	}
+
+	/**
+	 * Entre deux stockages creux de mêmes blocs, seuls les blocs alloués de
+	 * <i>other</i> sont parcourus, et un bloc absent de ce stockage est
+	 * simplement copié
+	 */
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		if (!(other instanceof SparseAccumulatorStorage)) {
+			return AccumulatorStorages.addAll(this, other, from, to);
+		}
+
+		SparseAccumulatorStorage that = (SparseAccumulatorStorage) other;
+		if (that.m_blockShift != m_blockShift
+				|| (that.m_means == null) != (m_means == null)
+				|| (from & m_blockMask) != 0
+				|| ((to & m_blockMask) != 0 && to != m_size)) {
+			return AccumulatorStorages.addAll(this, other, from, to);
+		}
+
+		int maxHit = 0;
+		for (int b = (int) (from >>> m_blockShift); (long) b << m_blockShift < to; b++) {
+			int[] otherHits = that.m_hits[b];
+			if (otherHits == null) {
+				continue;
+			}
+
+			if (m_hits[b] == null) {
+				m_hits[b] = otherHits.clone();
+				if (m_means != null) {
+					m_means[b] = that.m_means[b].clone();
+				} else {
+					m_sums.copyBlock(that.m_sums, b);
+				}
+				m_allocated.incrementAndGet();
+				for (int hits : otherHits) {
+					if (hits > maxHit) {
+						maxHit = hits;
+					}
+				}
+				continue;
+			}
+
+			int[] hits = m_hits[b];
+			for (int i = 0; i < hits.length; i++) {
+				int added = otherHits[i];
+				if (added == 0) {
+					continue;
+				}
+
+				int count = hits[i], total = count + added;
+				if (m_means != null) {
+					double[] means = m_means[b];
+					means[i] = (means[i] * count + that.m_means[b][i] * added)
+							/ total;
+				} else {
+					long index = ((long) b << m_blockShift) + i;
+					m_sums.add(index, that.m_sums.get(index), total);
+				}
+				hits[i] = total;
+				if (total > maxHit) {
+					maxHit = total;
+				}
+			}
+		}
+		return maxHit;
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new SparseAccumulatorStorage(this);
+	}
+
+	/**
+	 * @return La proportion des blocs qui sont alloués
+	 */
+	double occupancy() {
+		return (double) m_allocated.get() / m_hits.length;
+	}
+
+	/**
+	 * @return Le nombre d'octets occupés par les blocs alloués (sans compter
+	 *         les en-têtes des tableaux)
+	 */
+	long bytes() {
+		long cells = (long) m_allocated.get() * (m_blockMask + 1);
+		return m_means != null ? (long) m_hits.length * 8 * 2 + cells * 12
+				: (long) m_hits.length * 8 + cells * 4 + m_sums.bytes();
+	}
+
+	/**
+	 * @return Un stockage dense ({@link HeapAccumulatorStorage} ou
+	 *         {@link FloatSumAccumulatorStorage}) contenant les mêmes cases
+	 */
+	AccumulatorStorage toDense() {
+		int[] hits = new int[(int) m_size];
+		double[] means = m_means != null ? new double[(int) m_size] : null;
+
+		for (int b = 0; b < m_hits.length; b++) {
+			if (m_hits[b] == null) {
+				continue;
+			}
+
+			int first = b << m_blockShift;
+			int length = (int) Math.min(m_blockMask + 1, m_size - first);
+			System.arraycopy(m_hits[b], 0, hits, first, length);
+			if (means != null) {
+				System.arraycopy(m_means[b], 0, means, first, length);
+			}
+		}
+
+		return means != null ? new HeapAccumulatorStorage(hits, means)
+				: new FloatSumAccumulatorStorage(hits, m_sums.copy());
+	}
+
+	/**
+	 * Alloue un bloc vide
+	 * 
+	 * @return Le tableau des nombres de points du bloc
+	 */
+	private int[] allocate(int block) {
+		int size = m_blockMask + 1;
+		if (m_means != null) {
+			m_means[block] = new double[size];
+		}
+		m_allocated.incrementAndGet();
+		return m_hits[block] = new int[size];
+	}
+}
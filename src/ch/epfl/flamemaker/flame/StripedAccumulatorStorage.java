@@ -0,0 +1,135 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Stockage des cases d'un accumulateur dans le tas dont les points peuvent
+ * être ajoutés par plusieurs fils d'exécution à la fois. Les cases sont
+ * réparties en tuiles de 2<sup>{@value #TILE_SHIFT}</sup> cases consécutives
+ * (un morceau de rangée en disposition {@link AccumulatorLayout#ROW_MAJOR},
+ * un carré de 64 x 64 cases en disposition {@link AccumulatorLayout#MORTON})
+ * dont chacune est protégée par son propre verrou : deux fils ne se gênent
+ * que lorsqu'ils ajoutent un point dans la même tuile. Les formules sont
+ * celles de {@link HeapAccumulatorStorage}, et les lectures ne sont
+ * cohérentes que lorsque plus aucun point n'est ajouté.
+ */
+final class StripedAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'une tuile
+	 */
+	private static final int TILE_SHIFT = 12;
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final int[] m_hits;
+
+	/**
+	 * La moyenne des index de couleur de chaque case
+	 */
+	private final double[] m_colors;
+
+	/**
+	 * Le verrou de chaque tuile
+	 */
+	private final Object[] m_locks;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	StripedAccumulatorStorage(long size) {
+		this(new int[checkSize(size)], new double[(int) size]);
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private StripedAccumulatorStorage(StripedAccumulatorStorage other) {
+		this(other.m_hits.clone(), other.m_colors.clone());
+	}
+
+	/**
+	 * Construit un stockage à partir de ses tableaux, qui ne sont pas copiés
+	 */
+	private StripedAccumulatorStorage(int[] hits, double[] colors) {
+		m_hits = hits;
+		m_colors = colors;
+		m_locks = new Object[(hits.length >>> TILE_SHIFT) + 1];
+		for (int t = 0; t < m_locks.length; t++) {
+			m_locks[t] = new Object();
+		}
+	}
+
+	@Override
+	public long size() {
+		return m_hits.length;
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits[(int) index];
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		return m_colors[(int) index];
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		int i = (int) index;
+		synchronized (m_locks[i >>> TILE_SHIFT]) {
+			int hits = m_hits[i];
+			m_colors[i] = (colorIndex + m_colors[i] * hits) / (hits + 1);
+			return m_hits[i] = hits + 1;
+		}
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		int i = (int) index;
+		synchronized (m_locks[i >>> TILE_SHIFT]) {
+			int total = (int) (m_hits[i] + hits);
+			if (total != 0) {
+				m_colors[i] = (m_colors[i] * m_hits[i] + colorIndex * hits)
+						/ total;
+			}
+			return m_hits[i] = total;
+		}
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		return AccumulatorStorages.addAll(this, other, from, to);
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new StripedAccumulatorStorage(this);
+	}
+
+	/**
+	 * @return Le nombre de cases, s'il ne dépasse pas
+	 *         {@link HeapAccumulatorStorage#MAX_SIZE}
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	private static int checkSize(long size) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+		return (int) size;
+	}
+}
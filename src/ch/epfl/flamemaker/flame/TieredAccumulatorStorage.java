@@ -0,0 +1,109 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Stockage des cases d'un accumulateur dans le tas dont les nombres de
+ * points sont gardés dans des compteurs de largeur adaptative (voir
+ * {@link TieredCounters}) : une case occupe 1 octet de compteur tant qu'elle
+ * a moins de 256 points, et une case peut compter jusqu'à 2<sup>63</sup>
+ * points. Les index de couleur sont toujours accumulés en somme, comme
+ * {@link FloatSumAccumulatorStorage} : une moyenne en double précision
+ * occuperait à elle seule 8 octets par case et annulerait presque le gain des
+ * compteurs. Les sommes sont gardées par blocs de
+ * {@link TieredCounters#BLOCK_SIZE} cases, comme les compteurs, et un bloc
+ * passe en double précision dès qu'une de ses cases atteint
+ * {@link ColorSums#WIDE_HITS} points : seuls les blocs du cœur de
+ * l'attracteur, dont les compteurs sont déjà élargis, occupent alors 8
+ * octets de somme par case.
+ */
+final class TieredAccumulatorStorage implements AccumulatorStorage {
+
+	/**
+	 * Le nombre de points de chaque case
+	 */
+	private final TieredCounters m_hits;
+
+	/**
+	 * La somme des index de couleur de chaque case
+	 */
+	private final ColorSums m_sums;
+
+	/**
+	 * Construit un stockage de <i>size</i> cases vides
+	 * 
+	 * @param size
+	 *            Le nombre de cases
+	 * @throws IllegalArgumentException
+	 *             Si le nombre de cases dépasse
+	 *             {@link HeapAccumulatorStorage#MAX_SIZE}
+	 */
+	TieredAccumulatorStorage(long size) {
+		if (size > HeapAccumulatorStorage.MAX_SIZE) {
+			throw new IllegalArgumentException(
+					"too many cells for a heap accumulator: " + size);
+		}
+
+		m_hits = new TieredCounters(size);
+		m_sums = new ColorSums(size);
+	}
+
+	/**
+	 * Construit une copie d'un stockage
+	 */
+	private TieredAccumulatorStorage(TieredAccumulatorStorage other) {
+		m_hits = other.m_hits.copy();
+		m_sums = other.m_sums.copy();
+	}
+
+	@Override
+	public long size() {
+		return m_hits.size();
+	}
+
+	@Override
+	public long hits(long index) {
+		return m_hits.get(index);
+	}
+
+	@Override
+	public double colorIndex(long index) {
+		long hits = m_hits.get(index);
+		return hits == 0 ? 0 : m_sums.get(index) / hits;
+	}
+
+	@Override
+	public long hit(long index, double colorIndex) {
+		long hits = m_hits.add(index, 1);
+		m_sums.add(index, colorIndex, hits);
+		return hits;
+	}
+
+	@Override
+	public long add(long index, long hits, double colorIndex) {
+		long total = m_hits.add(index, hits);
+		m_sums.add(index, colorIndex * hits, total);
+		return total;
+	}
+
+	@Override
+	public long addAll(AccumulatorStorage other, long from, long to) {
+		return AccumulatorStorages.addAll(this, other, from, to);
+	}
+
+	@Override
+	public AccumulatorStorage copy() {
+		return new TieredAccumulatorStorage(this);
+	}
+
+	/**
+	 * @return Le nombre d'octets occupés par le stockage (sans compter les
+	 *         en-têtes des tableaux)
+	 */
+	long bytes() {
+		return m_hits.bytes() + m_sums.bytes();
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+/**
+ * Classe modélisant un tableau de compteurs de points dont la largeur
+ * s'adapte au nombre de points. Les compteurs sont regroupés en blocs de
+ * {@link #BLOCK_SIZE} cases : un bloc commence avec des compteurs de 8 bits
+ * (et n'est alloué qu'à son premier point), puis est promu en 16, 32 et enfin
+ * 64 bits dès qu'un de ses compteurs déborde. Dans une fractale, la plupart
+ * des cases ne reçoivent que quelques centaines de points : la plupart des
+ * blocs restent sur 8 ou 16 bits, et seuls les blocs du cœur de l'attracteur
+ * sont élargis.
+ */
+final class TieredCounters {
+
+	/**
+	 * Le logarithme en base 2 du nombre de cases d'un bloc
+	 */
+	private static final int BLOCK_SHIFT = 12;
+
+	/**
+	 * Le nombre de cases d'un bloc
+	 */
+	static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	/**
+	 * Le masque donnant la position d'une case dans son bloc
+	 */
+	private static final long BLOCK_MASK = BLOCK_SIZE - 1;
+
+	/**
+	 * Les largeurs possibles des compteurs d'un bloc
+	 */
+	private static final byte BITS_8 = 0, BITS_16 = 1, BITS_32 = 2,
+			BITS_64 = 3;
+
+	/**
+	 * Le nombre de compteurs
+	 */
+	private final long m_size;
+
+	/**
+	 * La largeur des compteurs de chaque bloc
+	 */
+	private final byte[] m_widths;
+
+	/**
+	 * Les compteurs de chaque bloc ; seul le tableau correspondant à la
+	 * largeur du bloc est alloué (aucun pour un bloc encore vide)
+	 */
+	private final byte[][] m_bytes;
+	private final short[][] m_shorts;
+	private final int[][] m_ints;
+	private final long[][] m_longs;
+
+	/**
+	 * Construit <i>size</i> compteurs nuls
+	 * 
+	 * @param size
+	 *            Le nombre de compteurs
+	 */
+	TieredCounters(long size) {
+		int blocks = (int) ((size + BLOCK_MASK) >>> BLOCK_SHIFT);
+
+		m_size = size;
+		m_widths = new byte[blocks];
+		m_bytes = new byte[blocks][];
+		m_shorts = new short[blocks][];
+		m_ints = new int[blocks][];
+		m_longs = new long[blocks][];
+	}
+
+	/**
+	 * Construit une copie de compteurs
+	 */
+	private TieredCounters(TieredCounters other) {
+		this(other.m_size);
+
+		for (int b = 0; b < m_widths.length; b++) {
+			m_widths[b] = other.m_widths[b];
+			m_bytes[b] = other.m_bytes[b] == null ? null : other.m_bytes[b]
+					.clone();
+			m_shorts[b] = other.m_shorts[b] == null ? null : other.m_shorts[b]
+					.clone();
+			m_ints[b] = other.m_ints[b] == null ? null : other.m_ints[b]
+					.clone();
+			m_longs[b] = other.m_longs[b] == null ? null : other.m_longs[b]
+					.clone();
+		}
+	}
+
+	/**
+	 * @return Le nombre de compteurs
+	 */
+	long size() {
+		return m_size;
+	}
+
+	/**
+	 * @param index
+	 *            L'index du compteur
+	 * @return La valeur du compteur
+	 */
+	long get(long index) {
+		int block = (int) (index >>> BLOCK_SHIFT);
+		int offset = (int) (index & BLOCK_MASK);
+
+		switch (m_widths[block]) {
+		case BITS_8:
+			byte[] bytes = m_bytes[block];
+			return bytes == null ? 0 : bytes[offset] & 0xFF;
+		case BITS_16:
+			return m_shorts[block][offset] & 0xFFFF;
+		case BITS_32:
+			return m_ints[block][offset] & 0xFFFFFFFFL;
+		default:
+			return m_longs[block][offset];
+		}
+	}
+
+	/**
+	 * Ajoute <i>count</i> à un compteur, en élargissant les compteurs de son
+	 * bloc si nécessaire
+	 * 
+	 * @param index
+	 *            L'index du compteur
+	 * @param count
+	 *            La valeur à ajouter, positive
+	 * @return La nouvelle valeur du compteur
+	 */
+	long add(long index, long count) {
+		int block = (int) (index >>> BLOCK_SHIFT);
+		int offset = (int) (index & BLOCK_MASK);
+
+		while (true) {
+			switch (m_widths[block]) {
+			case BITS_8:
+				byte[] bytes = m_bytes[block];
+				if (bytes == null) {
+					bytes = m_bytes[block] = new byte[BLOCK_SIZE];
+				}
+				long value = (bytes[offset] & 0xFF) + count;
+				if (value <= 0xFF) {
+					bytes[offset] = (byte) value;
+					return value;
+				}
+				break;
+			case BITS_16:
+				short[] shorts = m_shorts[block];
+				value = (shorts[offset] & 0xFFFF) + count;
+				if (value <= 0xFFFF) {
+					shorts[offset] = (short) value;
+					return value;
+				}
+				break;
+			case BITS_32:
+				int[] ints = m_ints[block];
+				value = (ints[offset] & 0xFFFFFFFFL) + count;
+				if (value <= 0xFFFFFFFFL) {
+					ints[offset] = (int) value;
+					return value;
+				}
+				break;
+			default:
+				return m_longs[block][offset] += count;
+			}
+
+			widen(block);
+		}
+	}
+
+	/**
+	 * @return Le nombre d'octets occupés par les compteurs alloués (sans
+	 *         compter les en-têtes des tableaux)
+	 */
+	long bytes() {
+		long bytes = m_widths.length * (1L + 4 * 4);
+		for (int b = 0; b < m_widths.length; b++) {
+			if (m_widths[b] != BITS_8 || m_bytes[b] != null) {
+				bytes += (long) BLOCK_SIZE << m_widths[b];
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return Une copie indépendante de ces compteurs
+	 */
+	TieredCounters copy() {
+		return new TieredCounters(this);
+	}
+
+	/**
+	 * Double la largeur des compteurs d'un bloc
+	 */
+	private void widen(int block) {
+		switch (m_widths[block]) {
+		case BITS_8:
+			byte[] bytes = m_bytes[block];
+			short[] shorts = new short[BLOCK_SIZE];
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				shorts[i] = (short) (bytes[i] & 0xFF);
+			}
+			m_shorts[block] = shorts;
+			m_bytes[block] = null;
+			break;
+		case BITS_16:
+			shorts = m_shorts[block];
+			int[] ints = new int[BLOCK_SIZE];
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				ints[i] = shorts[i] & 0xFFFF;
+			}
+			m_ints[block] = ints;
+			m_shorts[block] = null;
+			break;
+		default:
+			ints = m_ints[block];
+			long[] longs = new long[BLOCK_SIZE];
+			for (int i = 0; i < BLOCK_SIZE; i++) {
+				longs[i] = ints[i] & 0xFFFFFFFFL;
+			}
+			m_longs[block] = longs;
+			m_ints[block] = null;
+			break;
+		}
+
+		m_widths[block]++;
+	}
+}
@@ -0,0 +1,561 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Classe permettant de calculer une fractale Flame trop grande pour tenir en
+ * mémoire. L'accumulateur est découpé en tuiles carrées ayant chacune leur
+ * propre bâtisseur ; les points de l'orbite sont répartis entre les tuiles
+ * selon la case (globale) qui les contient, si bien que le résultat est
+ * identique à celui d'un unique accumulateur.<br />
+ * Les tuiles sont calculées par bandes horizontales, autant de rangées de
+ * tuiles par bande que le permet le budget mémoire. L'orbite est entièrement
+ * rejouée pour chaque bande avec la même graine, en ne gardant que les points
+ * de la bande : chaque case reçoit donc exactement les points qu'elle
+ * recevrait dans un rendu d'un seul tenant. L'orbite d'une bande peut être
+ * répartie entre plusieurs orbites parcourues en parallèle, chacune avec ses
+ * propres tuiles, fusionnées à la fin de la bande. Les tuiles terminées sont
+ * écrites dans des fichiers bruts, puis colorées rangée par rangée avec le
+ * plus grand nombre de points de toute l'image.<br />
+ * Un rendu n'est pas prévu pour être utilisé par plusieurs fils d'exécution à
+ * la fois.
+ */
+public class TiledFlameRenderer {
+
+	/**
+	 * Le nombre d'octets occupés en mémoire par une case d'une tuile : un
+	 * compteur de 64 bits et une moyenne d'index de couleur en double
+	 * précision. Les bâtisseurs des tuiles n'utilisent ni casiers ni
+	 * stockage creux (voir {@link TileRouter}), dont le coût ne serait pas
+	 * compté ici.
+	 */
+	private static final int CELL_BYTES = 16;
+
+	/**
+	 * La fractale à calculer
+	 */
+	private final Flame m_flame;
+
+	/**
+	 * La région du plan dans laquelle la fractale est calculée
+	 */
+	private final Rectangle m_frame;
+
+	/**
+	 * Les dimensions de l'image entière et la taille du côté d'une tuile
+	 */
+	private final int m_width, m_height, m_tileSize;
+
+	/**
+	 * Le nombre de tuiles par rangée et par colonne
+	 */
+	private final int m_tilesX, m_tilesY;
+
+	/**
+	 * Le dossier dans lequel les tuiles sont écrites
+	 */
+	private final File m_directory;
+
+	/**
+	 * Le plus grand nombre de points d'une case de l'image, ou -1 si la
+	 * fractale n'a pas encore été calculée
+	 */
+	private long m_maxHit = -1;
+
+	/**
+	 * Construit un rendu par tuiles
+	 *
+	 * @param flame
+	 *            La fractale à calculer
+	 * @param frame
+	 *            La région du plan dans laquelle calculer la fractale
+	 * @param width
+	 *            La largeur de l'image
+	 * @param height
+	 *            La hauteur de l'image
+	 * @param tileSize
+	 *            Le côté des tuiles (celles du bord droit et du bord bas
+	 *            peuvent être plus petites)
+	 * @param directory
+	 *            Le dossier, existant, dans lequel écrire les tuiles
+	 * @throws IllegalArgumentException
+	 *             Si la largeur, la hauteur ou le côté des tuiles n'est pas
+	 *             strictement positif
+	 */
+	public TiledFlameRenderer(Flame flame, Rectangle frame, int width,
+			int height, int tileSize, File directory) {
+		if (width <= 0 || height <= 0 || tileSize <= 0) {
+			throw new IllegalArgumentException(
+					"width, height and tileSize must be strictly positive");
+		}
+
+		m_flame = flame;
+		m_frame = frame;
+		m_width = width;
+		m_height = height;
+		m_tileSize = tileSize;
+		m_tilesX = (width + tileSize - 1) / tileSize;
+		m_tilesY = (height + tileSize - 1) / tileSize;
+		m_directory = directory;
+	}
+
+	/**
+	 * @return Le nombre de tuiles par rangée
+	 */
+	public int tilesX() {
+		return m_tilesX;
+	}
+
+	/**
+	 * @return Le nombre de rangées de tuiles
+	 */
+	public int tilesY() {
+		return m_tilesY;
+	}
+
+	/**
+	 * @param density
+	 *            La densité du rendu
+	 * @return Le nombre d'itérations correspondant à cette densité pour
+	 *         l'image entière, sans dépassement de capacité
+	 */
+	public long iterations(int density) {
+		return (long) density * m_width * m_height;
+	}
+
+	/**
+	 * Calcule la fractale et écrit toutes ses tuiles dans le dossier du
+	 * rendu, en parcourant une seule orbite : le résultat est identique à
+	 * celui d'un unique accumulateur
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations de l'orbite, pour l'image entière
+	 * @param seed
+	 *            La graine du générateur aléatoire, réutilisée pour chaque
+	 *            bande
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les tuiles d'une bande peuvent
+	 *            occuper ; une bande contient au moins une rangée de tuiles
+	 * @return Le nombre de bandes, c'est-à-dire le nombre de fois que
+	 *         l'orbite a été parcourue
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif
+	 * @throws IOException
+	 *             Si une tuile ne peut pas être écrite
+	 */
+	public int render(long iterations, long seed, long memoryBudget)
+			throws IOException {
+		return render(iterations, seed, memoryBudget, 1);
+	}
+
+	/**
+	 * Calcule la fractale et écrit toutes ses tuiles dans le dossier du
+	 * rendu, en répartissant les itérations de chaque bande sur
+	 * <i>threads</i> fils d'exécution (voir
+	 * {@link #render(long, long, long, ExecutorService, int)})
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations, pour l'image entière
+	 * @param seed
+	 *            La graine du générateur dont dérivent ceux des orbites,
+	 *            réutilisée pour chaque bande
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les tuiles d'une bande peuvent
+	 *            occuper ; une bande contient au moins une rangée de tuiles
+	 * @param threads
+	 *            Le nombre de fils d'exécution à utiliser
+	 * @return Le nombre de bandes
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif ou si le nombre de
+	 *             fils d'exécution n'est pas strictement positif
+	 * @throws IOException
+	 *             Si une tuile ne peut pas être écrite
+	 */
+	public int render(long iterations, long seed, long memoryBudget,
+			int threads) throws IOException {
+		if (threads <= 0) {
+			throw new IllegalArgumentException(
+					"threads must be strictly positive");
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			return render(iterations, seed, memoryBudget, executor, threads);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Calcule la fractale et écrit toutes ses tuiles dans le dossier du
+	 * rendu. Les itérations de chaque bande sont réparties entre
+	 * <i>walkers</i> orbites indépendantes, parcourues chacune par une tâche
+	 * de <i>executor</i> avec ses propres tuiles ; les générateurs des
+	 * orbites sont obtenus par division d'un générateur de graine
+	 * <i>seed</i>, dans le même ordre pour chaque bande, si bien que chaque
+	 * case reçoit les points qu'elle recevrait d'une
+	 * {@link FlameRenderSession} de mêmes orbites. Les tuiles des orbites
+	 * sont fusionnées à la fin de la bande : une bande contient donc autant
+	 * de rangées de tuiles que le permet le budget mémoire partagé entre les
+	 * orbites.
+	 *
+	 * @param iterations
+	 *            Le nombre d'itérations, pour l'image entière
+	 * @param seed
+	 *            La graine du générateur dont dérivent ceux des orbites,
+	 *            réutilisée pour chaque bande
+	 * @param memoryBudget
+	 *            La mémoire, en octets, que les tuiles d'une bande peuvent
+	 *            occuper ; une bande contient au moins une rangée de tuiles
+	 * @param executor
+	 *            L'exécuteur sur lequel lancer les tâches
+	 * @param walkers
+	 *            Le nombre d'orbites
+	 * @return Le nombre de bandes, c'est-à-dire le nombre de fois que les
+	 *         orbites ont été parcourues
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif ou si le nombre
+	 *             d'orbites n'est pas strictement positif
+	 * @throws IOException
+	 *             Si une tuile ne peut pas être écrite
+	 * @throws CancellationException
+	 *             Si le fil appelant est interrompu pendant le calcul
+	 */
+	public int render(long iterations, long seed, long memoryBudget,
+			ExecutorService executor, int walkers) throws IOException {
+		checkIterations(iterations);
+		if (walkers <= 0) {
+			throw new IllegalArgumentException(
+					"walkers must be strictly positive");
+		}
+
+		int tileRowsPerBand = tileRowsPerBand(memoryBudget, walkers);
+
+		long maxHit = 0;
+		int bands = 0;
+		for (int first = 0; first < m_tilesY; first += tileRowsPerBand) {
+			int last = Math.min(m_tilesY, first + tileRowsPerBand);
+
+			RandomSource random = new XoroshiroRandomSource(seed);
+			List<TileRouter> routers = new ArrayList<TileRouter>(walkers);
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(walkers);
+			for (int w = 0; w < walkers; w++) {
+				TileRouter router = new TileRouter(first, last);
+				final FlameWalker walker = new FlameWalker(m_flame, m_frame,
+						walkers == 1 ? random : random.split(), router);
+				final long share = iterations / walkers
+						+ (w < iterations % walkers ? 1 : 0);
+
+				routers.add(router);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						walker.run(share);
+						return null;
+					}
+				}));
+			}
+			Futures.getAll(futures, "Rendu par tuiles interrompu");
+
+			for (int ty = first; ty < last; ty++) {
+				for (int tx = 0; tx < m_tilesX; tx++) {
+					FlameAccumulator.Builder tile;
+					if (walkers == 1) {
+						tile = routers.get(0).tile(tx, ty);
+					} else {
+						List<FlameAccumulator.Builder> parts = new ArrayList<FlameAccumulator.Builder>(
+								walkers);
+						for (TileRouter router : routers) {
+							parts.add(router.tile(tx, ty));
+						}
+						tile = newTile(tx, ty);
+						tile.mergeAll(parts, executor);
+					}
+					maxHit = Math.max(maxHit, tile.maxHit());
+					writeTile(tx, ty, tile.storage());
+				}
+			}
+			bands++;
+		}
+
+		m_maxHit = maxHit;
+		return bands;
+	}
+
+	/**
+	 * Écrit l'image calculée au format PPM binaire (P6), rangée par rangée :
+	 * seule une rangée de tuiles est chargée en mémoire à la fois
+	 *
+	 * @param palette
+	 *            La palette à utiliser
+	 * @param background
+	 *            La couleur de fond à utiliser
+	 * @param out
+	 *            Le flot dans lequel écrire l'image (qui n'est pas fermé)
+	 * @throws IllegalStateException
+	 *             Si la fractale n'a pas encore été calculée
+	 * @throws IOException
+	 *             Si une tuile ne peut pas être lue ou l'image écrite
+	 */
+	public void writePPM(Palette palette, Color background, OutputStream out)
+			throws IOException {
+		if (m_maxHit < 0) {
+			throw new IllegalStateException("the flame has not been rendered");
+		}
+
+		OutputStream buffered = new BufferedOutputStream(out, 1 << 16);
+		buffered.write(("P6\n" + m_width + " " + m_height + "\n255\n")
+				.getBytes("US-ASCII"));
+
+		int[] tileRow = new int[m_tileSize];
+		byte[] imageRow = new byte[3 * m_width];
+		FlameAccumulator[] tiles = new FlameAccumulator[m_tilesX];
+
+		for (int ty = 0; ty < m_tilesY; ty++) {
+			for (int tx = 0; tx < m_tilesX; tx++) {
+				tiles[tx] = readTile(tx, ty);
+			}
+
+			for (int row = 0; row < tileHeight(ty); row++) {
+				for (int tx = 0; tx < m_tilesX; tx++) {
+					tiles[tx].colorRow(palette, background, row, tileRow);
+
+					int offset = 3 * tx * m_tileSize;
+					for (int x = 0; x < tiles[tx].width(); x++) {
+						int rgb = tileRow[x];
+						imageRow[offset++] = (byte) (rgb >> 16);
+						imageRow[offset++] = (byte) (rgb >> 8);
+						imageRow[offset++] = (byte) rgb;
+					}
+				}
+				buffered.write(imageRow);
+			}
+		}
+
+		buffered.flush();
+	}
+
+	/**
+	 * Supprime les fichiers des tuiles
+	 */
+	public void deleteTiles() {
+		for (int ty = 0; ty < m_tilesY; ty++) {
+			for (int tx = 0; tx < m_tilesX; tx++) {
+				tileFile(tx, ty).delete();
+			}
+		}
+	}
+
+	/**
+	 * @param iterations
+	 *            Le nombre d'itérations à vérifier
+	 * @throws IllegalArgumentException
+	 *             Si le nombre d'itérations est négatif
+	 */
+	private static void checkIterations(long iterations) {
+		if (iterations < 0) {
+			throw new IllegalArgumentException("iterations must be positive");
+		}
+	}
+
+	/**
+	 * @return Le nombre de rangées de tuiles d'une bande dont chacune des
+	 *         <i>walkers</i> orbites a ses propres tuiles, au moins une
+	 */
+	private int tileRowsPerBand(long memoryBudget, int walkers) {
+		long tileRowBytes = (long) CELL_BYTES * m_width * m_tileSize * walkers;
+		return (int) Math.max(1, Math.min(m_tilesY, memoryBudget / tileRowBytes));
+	}
+
+	/**
+	 * @return Un bâtisseur vide pour la tuile (tx, ty), la rangée 0 étant
+	 *         celle du haut
+	 */
+	private FlameAccumulator.Builder newTile(int tx, int ty) {
+		int width = tileWidth(tx), height = tileHeight(ty);
+		double cellWidth = m_frame.width() / m_width;
+		double cellHeight = m_frame.height() / m_height;
+
+		// La région du plan couverte par la tuile
+		Rectangle frame = new Rectangle(new Point(m_frame.left()
+				+ (tx * m_tileSize + width / 2.0) * cellWidth, m_frame.top()
+				- (ty * m_tileSize + height / 2.0) * cellHeight), width
+				* cellWidth, height * cellHeight);
+
+		FlameAccumulator.Builder tile = new FlameAccumulator.Builder(frame,
+				width, height, AccumulatorLayout.ROW_MAJOR,
+				ColorAccumulation.RUNNING_MEAN, HitCounters.LONG);
+		tile.setBinning(false);
+		return tile;
+	}
+
+	/**
+	 * @return La largeur de la tuile de la colonne <i>tx</i>
+	 */
+	private int tileWidth(int tx) {
+		return Math.min(m_tileSize, m_width - tx * m_tileSize);
+	}
+
+	/**
+	 * @return La hauteur de la tuile de la rangée <i>ty</i>
+	 */
+	private int tileHeight(int ty) {
+		return Math.min(m_tileSize, m_height - ty * m_tileSize);
+	}
+
+	/**
+	 * @return Le fichier de la tuile (tx, ty), la rangée 0 étant celle du haut
+	 */
+	private File tileFile(int tx, int ty) {
+		return new File(m_directory, "tile-" + tx + "-" + ty + ".raw");
+	}
+
+	/**
+	 * Écrit le nombre de points et l'index de couleur de chaque case d'une
+	 * tuile, dans l'ordre de son stockage (les tuiles sont toujours disposées
+	 * rangée d'image par rangée d'image)
+	 */
+	private void writeTile(int tx, int ty, AccumulatorStorage storage)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tileFile(tx, ty)), 1 << 16));
+		try {
+			for (long i = 0, size = storage.size(); i < size; i++) {
+				out.writeLong(storage.hits(i));
+				out.writeDouble(storage.colorIndex(i));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Relit une tuile écrite par {@link #writeTile}
+	 *
+	 * @return Un accumulateur de la taille de la tuile, dont les intensités
+	 *         sont relatives au plus grand nombre de points de toute l'image
+	 */
+	private FlameAccumulator readTile(int tx, int ty) throws IOException {
+		int width = tileWidth(tx), height = tileHeight(ty);
+		AccumulatorStorage storage = HitCounters.LONG.newStorage(
+				(long) width * height, ColorAccumulation.RUNNING_MEAN);
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(tileFile(tx, ty)), 1 << 16));
+		try {
+			for (long i = 0, size = storage.size(); i < size; i++) {
+				long hits = in.readLong();
+				double colorIndex = in.readDouble();
+				if (hits != 0) {
+					storage.add(i, hits, colorIndex);
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		return new FlameAccumulator(width, height,
+				AccumulatorLayout.ROW_MAJOR, storage, m_maxHit);
+	}
+
+	/**
+	 * Destination des points d'une bande : chaque point est transmis au
+	 * bâtisseur de la tuile qui contient sa case dans l'image entière, les
+	 * points hors de la bande étant ignorés.<br />
+	 * Les tuiles comptent leurs points sur 64 bits, comme les fichiers des
+	 * tuiles, et sont accumulées directement : les casiers d'un grand
+	 * bâtisseur sortiraient du budget mémoire de la bande.
+	 */
+	private final class TileRouter implements HitSink {
+
+		/**
+		 * La transformation du plan vers les cases de l'image entière
+		 */
+		private final AffineTransformation m_transform;
+
+		/**
+		 * Les rangées d'image couvertes par la bande, la dernière exclue
+		 */
+		private final int m_firstRow, m_lastRow;
+
+		/**
+		 * La première rangée de tuiles de la bande
+		 */
+		private final int m_firstTileRow;
+
+		/**
+		 * Les bâtisseurs des tuiles de la bande, rangée par rangée
+		 */
+		private final FlameAccumulator.Builder[] m_tiles;
+
+		/**
+		 * Construit la destination des points des rangées de tuiles
+		 * <i>first</i> à <i>last</i> (exclue)
+		 */
+		TileRouter(int first, int last) {
+			m_transform = FlameAccumulator.Builder.gridTransformation(
+					m_frame, m_width, m_height);
+			m_firstTileRow = first;
+			m_firstRow = first * m_tileSize;
+			m_lastRow = Math.min(m_height, last * m_tileSize);
+
+			m_tiles = new FlameAccumulator.Builder[(last - first) * m_tilesX];
+			for (int ty = first; ty < last; ty++) {
+				for (int tx = 0; tx < m_tilesX; tx++) {
+					m_tiles[(ty - first) * m_tilesX + tx] = newTile(tx, ty);
+				}
+			}
+		}
+
+		/**
+		 * @return Le bâtisseur de la tuile (tx, ty), qui doit faire partie de
+		 *         la bande
+		 */
+		FlameAccumulator.Builder tile(int tx, int ty) {
+			return m_tiles[(ty - m_firstTileRow) * m_tilesX + tx];
+		}
+
+		@Override
+		public void hit(double px, double py, double colorIndex) {
+			int x = (int) Math.floor(m_transform.transformX(px, py));
+			int row = m_height - 1
+					- (int) Math.floor(m_transform.transformY(px, py));
+
+			if (x < 0 || x >= m_width || row < m_firstRow || row >= m_lastRow) {
+				return;
+			}
+
+			int tx = x / m_tileSize, ty = row / m_tileSize;
+			m_tiles[(ty - m_firstTileRow) * m_tilesX + tx].hitCell(x - tx
+					* m_tileSize, row - ty * m_tileSize, colorIndex);
+		}
+	}
+}
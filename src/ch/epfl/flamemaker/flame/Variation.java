@@ -12,40 +12,62 @@ import ch.epfl.flamemaker.geometry2d.Transformation;
  * Classe modélisant une variation
  */
 public enum Variation implements Transformation {
-	LINEAR(0, "Linear"){
-		public Point transformPoint(Point p) {
-			return p;
+	LINEAR(0, "Linear", false, false) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * x;
+			sum[1] += weight * y;
 		}
 	},
-	SINUSOIDAL(1, "Sinusoidal") {
-		public Point transformPoint(Point p) {
-			return new Point(Math.sin(p.x()), Math.sin(p.y()));
+	SINUSOIDAL(1, "Sinusoidal", false, false) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * Math.sin(x);
+			sum[1] += weight * Math.sin(y);
+		}
+
+		@Override
+		void accumulateFast(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * FastMath.sin(x);
+			sum[1] += weight * FastMath.sin(y);
 		}
 	},
-	SPHERICAL(2, "Spherical") {
-		public Point transformPoint(Point p) {
-			return new Point(p.x() / (p.r() * p.r()), p.y()
-					/ (p.r() * p.r()));
+	SPHERICAL(2, "Spherical", true, false) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * (x / r2);
+			sum[1] += weight * (y / r2);
 		}
 	},
-	SWIRL(3, "Swirl") {
-		public Point transformPoint(Point p) {
-			return new Point(p.x() * Math.sin(p.r() * p.r()) - p.y()
-					* Math.cos(p.r() * p.r()), p.x()
-					* Math.cos(p.r() * p.r()) + p.y()
-					* Math.sin(p.r() * p.r()));
+	SWIRL(3, "Swirl", true, false) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			double sin = Math.sin(r2), cos = Math.cos(r2);
+			sum[0] += weight * (x * sin - y * cos);
+			sum[1] += weight * (x * cos + y * sin);
+		}
+
+		@Override
+		void accumulateFast(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			double sin = FastMath.sin(r2), cos = FastMath.cos(r2);
+			sum[0] += weight * (x * sin - y * cos);
+			sum[1] += weight * (x * cos + y * sin);
 		}
 	}, 
-	HORSESHOE(4, "Horseshoe") {
-		public Point transformPoint(Point p) {
-			return new Point((p.x() - p.y()) * (p.x() + p.y()) / p.r(),
-					(2 * p.x() * p.y()) / p.r());
+	HORSESHOE(4, "Horseshoe", true, true) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * ((x - y) * (x + y) / r);
+			sum[1] += weight * ((2 * x * y) / r);
 		}
 	},
-	BUBBLE(5, "Bubble") {
-		public Point transformPoint(Point p) {
-			return new Point(4 * p.x() / (p.r() * p.r() + 4), 4 * p.y()
-					/ (p.r() * p.r() + 4));
+	BUBBLE(5, "Bubble", true, false) {
+		void accumulate(double x, double y, double r2, double r,
+				double weight, double[] sum) {
+			sum[0] += weight * (4 * x / (r2 + 4));
+			sum[1] += weight * (4 * y / (r2 + 4));
 		}
 	}
 	;
@@ -59,6 +81,12 @@ public enum Variation implements Transformation {
 	 */
 	private final String m_name;
 
+	/**
+	 * Vrai si la variation utilise le carré de la distance du point à
+	 * l'origine, respectivement cette distance elle-même
+	 */
+	private final boolean m_usesSquaredRadius, m_usesRadius;
+
 	/**
 	 * Construit une nouvelle variation à partir de son index dans la liste des
 	 * variations prédéfinies et de son nom
@@ -67,10 +95,19 @@ public enum Variation implements Transformation {
 	 *            L'index de la variation
 	 * @param name
 	 *            Le nom de la variation
+	 * @param usesSquaredRadius
+	 *            Vrai si la variation utilise le carré de la distance du
+	 *            point à l'origine
+	 * @param usesRadius
+	 *            Vrai si la variation utilise la distance du point à
+	 *            l'origine
 	 */
-	private Variation(int index, String name) {
+	private Variation(int index, String name, boolean usesSquaredRadius,
+			boolean usesRadius) {
 		m_index = index;
 		m_name = name;
+		m_usesSquaredRadius = usesSquaredRadius;
+		m_usesRadius = usesRadius;
 	}
 
 	/*
@@ -79,7 +116,85 @@ public enum Variation implements Transformation {
 	 * @see ch.epfl.flamemaker.geometry2d.Transformation#transformPoint(ch.epfl.
 	 * flamemaker.geometry2d.Point)
 	 */
-	abstract public Point transformPoint(Point p);
+	public Point transformPoint(Point p) {
+		double[] result = new double[2];
+		accumulate(p.x(), p.y(), 1, result);
+		return new Point(result[0], result[1]);
+	}
+
+	/**
+	 * Applique la variation au point (x, y) et ajoute le résultat, multiplié
+	 * par <i>weight</i>, aux coordonnées contenues dans <i>sum</i>. Cette
+	 * méthode ne crée aucun objet et est utilisée par la boucle de calcul.
+	 * 
+	 * @param x
+	 *            Abscisse du point à transformer
+	 * @param y
+	 *            Ordonnée du point à transformer
+	 * @param weight
+	 *            Le poids de la variation
+	 * @param sum
+	 *            Tableau de deux éléments (abscisse, ordonnée) auquel on
+	 *            ajoute le point transformé pondéré
+	 */
+	public void accumulate(double x, double y, double weight, double[] sum) {
+		double r2 = x * x + y * y;
+		accumulate(x, y, r2, m_usesRadius ? Math.sqrt(r2) : 0, weight, sum);
+	}
+
+	/**
+	 * Applique la variation au point (x, y), comme
+	 * {@link #accumulate(double, double, double, double[])}, à partir des
+	 * grandeurs polaires du point déjà calculées : une transformation ne les
+	 * calcule qu'une fois par itération pour toutes ses variations actives,
+	 * et seulement si l'une d'elles les utilise.
+	 * 
+	 * @param x
+	 *            Abscisse du point à transformer
+	 * @param y
+	 *            Ordonnée du point à transformer
+	 * @param r2
+	 *            Le carré de la distance du point à l'origine, si
+	 *            {@link #usesSquaredRadius()}
+	 * @param r
+	 *            La distance du point à l'origine, si {@link #usesRadius()}
+	 * @param weight
+	 *            Le poids de la variation
+	 * @param sum
+	 *            Tableau de deux éléments (abscisse, ordonnée) auquel on
+	 *            ajoute le point transformé pondéré
+	 */
+	abstract void accumulate(double x, double y, double r2, double r,
+			double weight, double[] sum);
+
+	/**
+	 * Applique la variation au point (x, y) comme
+	 * {@link #accumulate(double, double, double, double, double, double[])},
+	 * en remplaçant le sinus et le cosinus par leurs approximations de
+	 * {@link FastMath} : chaque coordonnée ajoutée diffère alors d'au plus
+	 * <i>weight</i> · {@link FastMath#MAX_ERROR} · (|x| + |y|) du résultat
+	 * exact. Les variations sans fonction trigonométrique ne changent pas.
+	 */
+	void accumulateFast(double x, double y, double r2, double r,
+			double weight, double[] sum) {
+		accumulate(x, y, r2, r, weight, sum);
+	}
+
+	/**
+	 * @return Vrai si la variation utilise le carré de la distance du point à
+	 *         l'origine
+	 */
+	boolean usesSquaredRadius() {
+		return m_usesSquaredRadius;
+	}
+
+	/**
+	 * @return Vrai si la variation utilise la distance du point à l'origine
+	 *         (une racine carrée)
+	 */
+	boolean usesRadius() {
+		return m_usesRadius;
+	}
 
 	/**
 	 * @return Le nom affichable de la variation
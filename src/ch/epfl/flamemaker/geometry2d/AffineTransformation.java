@@ -6,6 +6,7 @@
 package ch.epfl.flamemaker.geometry2d;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Classe modélisant une transformation affine
@@ -115,8 +116,35 @@ public class AffineTransformation implements Transformation, Serializable {
 
 	@Override
 	public Point transformPoint(Point p) {
-		return new Point(m_a * p.x() + m_b * p.y() + m_c, m_d * p.x() + m_e
-				* p.y() + m_f);
+		return new Point(transformX(p.x(), p.y()), transformY(p.x(), p.y()));
+	}
+
+	/**
+	 * Calcule l'abscisse de l'image du point (x, y) sans créer d'instance de
+	 * {@link Point}
+	 * 
+	 * @param x
+	 *            Abscisse du point à transformer
+	 * @param y
+	 *            Ordonnée du point à transformer
+	 * @return L'abscisse du point transformé
+	 */
+	public double transformX(double x, double y) {
+		return m_a * x + m_b * y + m_c;
+	}
+
+	/**
+	 * Calcule l'ordonnée de l'image du point (x, y) sans créer d'instance de
+	 * {@link Point}
+	 * 
+	 * @param x
+	 *            Abscisse du point à transformer
+	 * @param y
+	 *            Ordonnée du point à transformer
+	 * @return L'ordonnée du point transformé
+	 */
+	public double transformY(double x, double y) {
+		return m_d * x + m_e * y + m_f;
 	}
 
 	/**
@@ -135,6 +163,30 @@ public class AffineTransformation implements Transformation, Serializable {
 				* other.m_f + m_f);
 	}
 
+	/**
+	 * @return Les 6 coefficients (a, b, c, d, e, f) des deux premières lignes
+	 *         de la matrice homogène de la transformation, dans un nouveau
+	 *         tableau
+	 */
+	public double[] coefficients() {
+		return new double[] { m_a, m_b, m_c, m_d, m_e, m_f };
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof AffineTransformation)) {
+			return false;
+		}
+
+		return Arrays.equals(coefficients(),
+				((AffineTransformation) other).coefficients());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(coefficients());
+	}
+
 	/**
 	 * @return La composante horizontale de la transformation
 	 */
@@ -117,8 +117,22 @@ public class Rectangle {
 	 * @return true si p appartient au rectangle.
 	 */
 	public boolean contains(Point p) {
-		return (p.x() >= this.left() && p.x() < this.right())
-				&& (p.y() >= this.bottom() && p.y() < this.top());
+		return contains(p.x(), p.y());
+	}
+
+	/**
+	 * Teste si le point de coordonnées (x, y) appartient au rectangle, selon
+	 * les mêmes règles que {@link #contains(Point)}
+	 * 
+	 * @param x
+	 *            Abscisse du point à tester
+	 * @param y
+	 *            Ordonnée du point à tester
+	 * @return true si le point appartient au rectangle.
+	 */
+	public boolean contains(double x, double y) {
+		return (x >= this.left() && x < this.right())
+				&& (y >= this.bottom() && y < this.top());
 	}
 
 	/**
@@ -137,6 +151,11 @@ public class Rectangle {
 		return (m_width / m_height);
 	}
 
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Rectangle && equals((Rectangle) other);
+	}
+
 	public boolean equals(Rectangle other) {
 		return other.m_width == m_width && other.m_height == m_height
 				&& other.m_center.x() == m_center.x()
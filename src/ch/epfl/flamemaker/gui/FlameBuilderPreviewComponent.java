@@ -8,28 +8,64 @@ package ch.epfl.flamemaker.gui;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JComponent;
+import javax.swing.SwingWorker;
 
 import ch.epfl.flamemaker.color.Color;
 import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.flame.Flame;
 import ch.epfl.flamemaker.flame.FlameAccumulator;
+import ch.epfl.flamemaker.flame.FlameAccumulatorCache;
+import ch.epfl.flamemaker.flame.FlameRenderSession;
 import ch.epfl.flamemaker.flame.ObservableFlameBuilder;
 import ch.epfl.flamemaker.flame.ObservableFlameBuilder.Listener;
 import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
 
 /**
- * Ce component dessine la fractale définie par les paramètres du GUI
+ * Ce component dessine la fractale définie par les paramètres du GUI. Le
+ * calcul est effectué en arrière-plan par passes successives de plus en plus
+ * denses, de sorte que l'interface reste réactive : tant qu'un calcul est en
+ * cours, le component affiche la dernière image obtenue. Toute modification
+ * du bâtisseur annule le calcul en cours et en relance un nouveau.
  */
 @SuppressWarnings("serial")
 public class FlameBuilderPreviewComponent extends JComponent implements
 Listener {
 
+	/**
+	 * Le nombre d'orbites calculées en parallèle pour chaque aperçu
+	 */
+	private static final int THREADS = Runtime.getRuntime()
+			.availableProcessors();
+
+	/**
+	 * L'exécuteur partagé par tous les aperçus, sur lequel sont réparties les
+	 * orbites de chaque passe. Ses fils d'exécution ne retiennent pas la
+	 * fermeture de l'application.
+	 */
+	private static final ExecutorService EXECUTOR = Executors
+			.newFixedThreadPool(THREADS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "flame-preview");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
 	// Palette de couleur avec laquelle dessiner la fractale
-	private Palette m_palette;
+	private volatile Palette m_palette;
 
 	// Couleur de fond
-	private Color m_bgColor;
+	private volatile Color m_bgColor;
 
 	// Constructeur de la fractale à dessiner
 	private ObservableFlameBuilder m_builder;
@@ -40,6 +76,22 @@ Listener {
 	// Densité du dessin
 	private int m_density;
 
+	// Dernier accumulateur calculé et image correspondante, dessinée en
+	// attendant la suivante
+	private FlameAccumulator m_accumulator;
+	private BufferedImage m_image;
+
+	// Fractale, cadre et taille du dernier rendu demandé
+	private Flame m_renderedFlame;
+	private Rectangle m_renderedFrame;
+	private int m_renderedWidth, m_renderedHeight;
+
+	// Calcul en cours (ou dernier calcul lancé), null si aucun
+	private RenderWorker m_worker;
+
+	// Dernier accumulateur entièrement calculé
+	private final FlameAccumulatorCache m_cache = new FlameAccumulatorCache();
+
 	/**
 	 * Constructeur, initialise les arguments.
 	 * 
@@ -67,45 +119,247 @@ Listener {
 	}
 
 	/**
-	 * Méthode appelée pour rafraîchir le dessin
+	 * Change la palette de la fractale. La fractale n'est pas recalculée :
+	 * seul le dernier accumulateur est recoloré.
+	 * 
+	 * @param palette
+	 *            La nouvelle palette
+	 */
+	public void setPalette(Palette palette) {
+		m_palette = palette;
+		recolor();
+	}
+
+	/**
+	 * Change la couleur de fond de la fractale. La fractale n'est pas
+	 * recalculée : seul le dernier accumulateur est recoloré.
+	 * 
+	 * @param backgroundColor
+	 *            La nouvelle couleur de fond
+	 */
+	public void setBackgroundColor(Color backgroundColor) {
+		m_bgColor = backgroundColor;
+		recolor();
+	}
+
+	/**
+	 * Méthode appelée pour rafraîchir le dessin. Aucun calcul n'est effectué
+	 * ici : on dessine la dernière image disponible et on lance un nouveau
+	 * calcul si la taille du component a changé.
 	 */
 	@Override
 	protected void paintComponent(Graphics g) {
+		if (getWidth() <= 0 || getHeight() <= 0) {
+			return;
+		}
+
+		if (getWidth() != m_renderedWidth || getHeight() != m_renderedHeight) {
+			restartRender();
+		}
+
+		// Et on dessine l'image sur l'objet de type Graphics passé en paramètre
+		if (m_image != null) {
+			g.drawImage(m_image, 0, 0, null);
+		}
+	}
+
+	/**
+	 * Retourne la taille préférée (par défaut : 200x100)
+	 */
+	@Override
+	public Dimension getPreferredSize() {
+		return new Dimension(200, 100);
+	}
+
+	@Override
+	public void onFlameBuilderChange(ObservableFlameBuilder b) {
+		restartRender();
+	}
+
+	/**
+	 * Lance le rendu de l'état actuel du bâtisseur à la taille actuelle du
+	 * component, si celui-ci diffère du dernier rendu demandé. Le calcul en
+	 * cours est alors annulé ; si l'accumulateur demandé est déjà en cache, il
+	 * est simplement recoloré.
+	 */
+	private void restartRender() {
+		if (getWidth() <= 0 || getHeight() <= 0) {
+			return;
+		}
+
+		Flame flame = m_builder.build();
+
 		// On calcule le vrai cadre de la fractale basé sur le ratio de taille
 		// du component
 		Rectangle realFrame = m_frame.expandToAspectRatio((double) this
 				.getWidth() / this.getHeight());
 
-		// On peut maintenant calculer la fractale avec les paramètres de taille
-		FlameAccumulator accumulator = m_builder.build().compute(realFrame,
-				this.getWidth(), this.getHeight(), m_density);
+		if (getWidth() == m_renderedWidth && getHeight() == m_renderedHeight
+				&& realFrame.equals(m_renderedFrame)
+				&& flame.equals(m_renderedFlame)) {
+			return;
+		}
+
+		if (m_worker != null) {
+			m_worker.cancel(true);
+			m_worker = null;
+		}
+
+		m_renderedFlame = flame;
+		m_renderedFrame = realFrame;
+		m_renderedWidth = getWidth();
+		m_renderedHeight = getHeight();
+
+		FlameAccumulator cached = m_cache.lookup(flame, realFrame, getWidth(),
+				getHeight(), m_density);
+		if (cached != null) {
+			m_accumulator = cached;
+			recolor();
+		} else {
+			m_worker = new RenderWorker(flame, realFrame, getWidth(),
+					getHeight());
+			m_worker.execute();
+		}
+	}
 
+	/**
+	 * Recolore le dernier accumulateur avec la palette et la couleur de fond
+	 * actuelles, puis redessine le component
+	 */
+	private void recolor() {
+		if (m_accumulator != null) {
+			m_image = toImage(m_accumulator, m_palette, m_bgColor);
+			repaint();
+		}
+	}
+
+	/**
+	 * Crée l'image correspondant à un accumulateur
+	 * 
+	 * @param accumulator
+	 *            L'accumulateur à dessiner
+	 * @param palette
+	 *            La palette à utiliser
+	 * @param background
+	 *            La couleur de fond à utiliser
+	 * @return L'image de la fractale
+	 */
+	private static BufferedImage toImage(FlameAccumulator accumulator,
+			Palette palette, Color background) {
 		// Crée l'image sur laquelle on va rendre la fractale
 		BufferedImage image = new BufferedImage(accumulator.width(),
 				accumulator.height(), BufferedImage.TYPE_INT_RGB);
 
-		for (int x = 0; x < accumulator.width(); x++) {
-			for (int y = 0; y < accumulator.height(); y++) {
-				// On met à jour la couleur du pixel courant
-				image.setRGB(x, accumulator.height() - y - 1, accumulator
-						.color(m_palette, m_bgColor, x, y).asPackedRGB());
-			}
+		// L'accumulateur est stocké dans l'ordre des rangées de l'image : on
+		// colore et on copie une rangée entière à la fois
+		int[] row = new int[accumulator.width()];
+		for (int r = 0; r < accumulator.height(); r++) {
+			accumulator.colorRow(palette, background, r, row);
+			image.setRGB(0, r, row.length, 1, row, 0, row.length);
 		}
 
-		// Et on dessine l'image sur l'objet de type Graphics passé en paramètre
-		g.drawImage(image, 0, 0, null);
+		return image;
 	}
 
 	/**
-	 * Retourne la taille préférée (par défaut : 200x100)
+	 * Résultat intermédiaire d'un calcul : un accumulateur et son image,
+	 * colorée avec la palette et la couleur de fond indiquées
 	 */
-	@Override
-	public Dimension getPreferredSize() {
-		return new Dimension(200, 100);
+	private static class Rendering {
+		final FlameAccumulator accumulator;
+		final BufferedImage image;
+		final Palette palette;
+		final Color background;
+
+		Rendering(FlameAccumulator accumulator, Palette palette,
+				Color background) {
+			this.accumulator = accumulator;
+			this.palette = palette;
+			this.background = background;
+			this.image = toImage(accumulator, palette, background);
+		}
 	}
 
-	@Override
-	public void onFlameBuilderChange(ObservableFlameBuilder b) {
-		repaint();
+	/**
+	 * Calcul en arrière-plan de la fractale. Les passes sont de plus en plus
+	 * denses (la première ne calcule qu'un point par pixel), et l'image
+	 * obtenue après chacune d'elles est publiée vers le fil de l'interface.
+	 * L'accumulateur final est mis en cache.
+	 */
+	private class RenderWorker extends SwingWorker<Void, Rendering> {
+
+		// Fractale, cadre et taille du calcul
+		private final Flame m_flame;
+		private final Rectangle m_realFrame;
+		private final int m_width, m_height;
+
+		/**
+		 * Construit le calcul d'une fractale
+		 * 
+		 * @param flame
+		 *            La fractale à calculer
+		 * @param realFrame
+		 *            Le cadre, au rapport largeur/hauteur du component
+		 * @param width
+		 *            La largeur de l'image
+		 * @param height
+		 *            La hauteur de l'image
+		 */
+		RenderWorker(Flame flame, Rectangle realFrame, int width, int height) {
+			m_flame = flame;
+			m_realFrame = realFrame;
+			m_width = width;
+			m_height = height;
+		}
+
+		@Override
+		protected Void doInBackground() {
+			FlameRenderSession session = new FlameRenderSession(m_flame,
+					m_realFrame, m_width, m_height, new XoroshiroRandomSource(
+							Flame.DEFAULT_SEED), THREADS);
+
+			long pixels = (long) m_width * m_height;
+			int done = 0, pass = 1;
+			try {
+				while (done < m_density && !isCancelled()) {
+					// Chaque passe double (au plus) la densité déjà calculée
+					pass = Math.min(pass, m_density - done);
+					session.runPass(pass * pixels, EXECUTOR);
+					done += pass;
+					pass = done;
+
+					if (!isCancelled()) {
+						FlameAccumulator accumulator = session.snapshot(EXECUTOR);
+						if (done == m_density) {
+							m_cache.put(m_flame, m_realFrame, m_width,
+									m_height, m_density, accumulator);
+						}
+						publish(new Rendering(accumulator, m_palette, m_bgColor));
+					}
+				}
+			} catch (CancellationException e) {
+				// Calcul annulé par une modification du bâtisseur
+			}
+
+			return null;
+		}
+
+		@Override
+		protected void process(List<Rendering> renderings) {
+			if (isCancelled()) {
+				return;
+			}
+
+			Rendering last = renderings.get(renderings.size() - 1);
+			m_accumulator = last.accumulator;
+
+			// La palette a pu changer pendant la coloration
+			if (last.palette == m_palette && last.background == m_bgColor) {
+				m_image = last.image;
+				repaint();
+			} else {
+				recolor();
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.random;
+
+import java.util.Random;
+
+/**
+ * Générateur basé sur {@link java.util.Random}, tel qu'utilisé historiquement
+ * par le calcul des fractales. Il permet de reproduire les rendus obtenus
+ * avant l'introduction des générateurs rapides, mais chaque tirage passe par
+ * une opération atomique sur l'état partagé du générateur.
+ */
+public class LegacyRandomSource implements RandomSource {
+
+	/**
+	 * Le générateur sous-jacent
+	 */
+	private final Random m_random;
+
+	/**
+	 * Construit un générateur à partir de sa graine
+	 * 
+	 * @param seed
+	 *            La graine du générateur
+	 */
+	public LegacyRandomSource(long seed) {
+		m_random = new Random(seed);
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return m_random.nextInt(bound);
+	}
+
+	@Override
+	public double nextDouble() {
+		return m_random.nextDouble();
+	}
+
+	@Override
+	public RandomSource split() {
+		return new LegacyRandomSource(m_random.nextLong());
+	}
+}
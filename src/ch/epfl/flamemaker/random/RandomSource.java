@@ -0,0 +1,40 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.random;
+
+/**
+ * Interface décrivant un générateur de nombres pseudo-aléatoires utilisé par
+ * l'algorithme du chaos. Les implémentations ne sont pas synchronisées : une
+ * instance ne doit être utilisée que par un seul fil d'exécution à la fois.
+ * Pour un calcul parallèle, chaque fil reçoit son propre générateur obtenu par
+ * {@link #split()}.
+ */
+public interface RandomSource {
+
+	/**
+	 * @param bound
+	 *            La borne supérieure (exclue), strictement positive
+	 * @return Un entier pseudo-aléatoire dans l'intervalle [0, bound[
+	 */
+	int nextInt(int bound);
+
+	/**
+	 * @return Un nombre à virgule flottante pseudo-aléatoire dans
+	 *         l'intervalle [0, 1[
+	 */
+	double nextDouble();
+
+	/**
+	 * Crée un nouveau générateur, indépendant de celui-ci, dont la séquence
+	 * est entièrement déterminée par l'état courant de ce générateur. Des
+	 * appels successifs à cette méthode sur deux générateurs de même état
+	 * donnent donc les mêmes séquences, ce qui rend les calculs parallèles
+	 * reproductibles.
+	 * 
+	 * @return Le nouveau générateur
+	 */
+	RandomSource split();
+}
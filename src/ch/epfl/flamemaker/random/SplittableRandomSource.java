@@ -0,0 +1,56 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.random;
+
+import java.util.SplittableRandom;
+
+/**
+ * Générateur rapide et non synchronisé basé sur
+ * {@link java.util.SplittableRandom}, dont la méthode de division garantit
+ * des séquences indépendantes pour chaque fil de calcul.
+ */
+public class SplittableRandomSource implements RandomSource {
+
+	/**
+	 * Le générateur sous-jacent
+	 */
+	private final SplittableRandom m_random;
+
+	/**
+	 * Construit un générateur à partir de sa graine
+	 * 
+	 * @param seed
+	 *            La graine du générateur
+	 */
+	public SplittableRandomSource(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	/**
+	 * Construit un générateur autour d'une instance existante
+	 * 
+	 * @param random
+	 *            Le générateur sous-jacent
+	 */
+	private SplittableRandomSource(SplittableRandom random) {
+		m_random = random;
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return m_random.nextInt(bound);
+	}
+
+	@Override
+	public double nextDouble() {
+		return m_random.nextDouble();
+	}
+
+	@Override
+	public RandomSource split() {
+		return new SplittableRandomSource(m_random.split());
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.random;
+
+/**
+ * Générateur xoroshiro128++ (Blackman et Vigna) : 128 bits d'état, période
+ * 2<sup>128</sup>-1, quelques opérations sur des entiers par tirage et aucune
+ * synchronisation. C'est le générateur utilisé par défaut pour le calcul des
+ * fractales.
+ */
+public class XoroshiroRandomSource implements RandomSource {
+
+	/**
+	 * L'incrément de SplitMix64 (partie fractionnaire du nombre d'or)
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * L'état du générateur, jamais entièrement nul
+	 */
+	private long m_s0, m_s1;
+
+	/**
+	 * Construit un générateur à partir de sa graine. L'état initial est
+	 * dérivé de la graine par l'algorithme SplitMix64, de sorte que des
+	 * graines proches donnent des états très différents.
+	 * 
+	 * @param seed
+	 *            La graine du générateur
+	 */
+	public XoroshiroRandomSource(long seed) {
+		m_s0 = mix64(seed + GOLDEN_GAMMA);
+		m_s1 = mix64(seed + 2 * GOLDEN_GAMMA);
+
+		if ((m_s0 | m_s1) == 0) {
+			m_s1 = 1;
+		}
+	}
+
+	/**
+	 * @return 64 bits pseudo-aléatoires
+	 */
+	public long nextLong() {
+		long s0 = m_s0, s1 = m_s1;
+		long result = Long.rotateLeft(s0 + s1, 17) + s0;
+
+		s1 ^= s0;
+		m_s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+		m_s1 = Long.rotateLeft(s1, 28);
+
+		return result;
+	}
+
+	/**
+	 * Tire un entier dans [0, bound[ par multiplication des 32 bits de poids
+	 * fort (méthode de Lemire, sans rejet). Le biais est d'au plus
+	 * bound / 2<sup>32</sup>, négligeable pour le nombre de transformations
+	 * d'une fractale.
+	 */
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Le nouveau générateur est initialisé avec deux tirages de celui-ci,
+	 * passés par SplitMix64.
+	 */
+	@Override
+	public RandomSource split() {
+		return new XoroshiroRandomSource(nextLong() ^ mix64(nextLong()));
+	}
+
+	/**
+	 * Fonction de mélange de SplitMix64
+	 * 
+	 * @param z
+	 *            La valeur à mélanger
+	 * @return La valeur mélangée
+	 */
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
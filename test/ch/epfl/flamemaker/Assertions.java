@@ -0,0 +1,73 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker;
+
+/**
+ * Assertions des tests unitaires (voir {@link TestRunner}) : chacune lance
+ * une {@link AssertionError} décrivant l'écart lorsqu'elle n'est pas
+ * vérifiée.
+ */
+public final class Assertions {
+
+	/**
+	 * Un calcul attendu en échec
+	 */
+	public interface Failing {
+		void run() throws Exception;
+	}
+
+	/**
+	 * Classe non instanciable
+	 */
+	private Assertions() {
+	}
+
+	public static void assertTrue(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void assertEquals(long expected, long actual, String message) {
+		if (expected != actual) {
+			throw new AssertionError(message + " : attendu " + expected
+					+ ", obtenu " + actual);
+		}
+	}
+
+	/**
+	 * Vérifie que deux doubles sont égaux à <i>tolerance</i> près (égaux bit à
+	 * bit si la tolérance est nulle)
+	 */
+	public static void assertEquals(double expected, double actual,
+			double tolerance, String message) {
+		boolean equal = tolerance == 0 ? Double.doubleToLongBits(expected) == Double
+				.doubleToLongBits(actual)
+				: Math.abs(expected - actual) <= tolerance;
+		if (!equal) {
+			throw new AssertionError(message + " : attendu " + expected
+					+ ", obtenu " + actual + " (tolérance " + tolerance + ")");
+		}
+	}
+
+	/**
+	 * Vérifie qu'un calcul lance une exception de la classe donnée
+	 */
+	public static void assertThrows(Class<? extends Throwable> expected,
+			Failing failing, String message) {
+		try {
+			failing.run();
+		} catch (Throwable e) {
+			if (expected.isInstance(e)) {
+				return;
+			}
+			throw new AssertionError(message + " : " + expected.getSimpleName()
+					+ " attendue, " + e + " obtenue");
+		}
+		throw new AssertionError(message + " : " + expected.getSimpleName()
+				+ " attendue, aucune exception");
+	}
+}
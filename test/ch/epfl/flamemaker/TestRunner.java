@@ -0,0 +1,109 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lance les tests unitaires : toutes les méthodes publiques, statiques et
+ * sans paramètre dont le nom commence par "test", dans les classes dont le
+ * nom se termine par "Test" trouvées sous le répertoire donné en argument
+ * (les classes de test compilées). Un test échoue s'il lance une exception,
+ * en général une {@link AssertionError} de {@link Assertions}.
+ */
+public final class TestRunner {
+
+	/**
+	 * Classe non instanciable
+	 */
+	private TestRunner() {
+	}
+
+	/**
+	 * @param args
+	 *            Le répertoire des classes de test compilées, suivi
+	 *            éventuellement des noms simples des classes à lancer
+	 */
+	public static void main(String[] args) throws Exception {
+		File root = new File(args.length > 0 ? args[0] : "bin-test");
+		List<String> classNames = new ArrayList<String>();
+		findTestClasses(root, "", classNames);
+		Collections.sort(classNames);
+
+		int passed = 0, failed = 0;
+		for (String className : classNames) {
+			String simpleName = className.substring(className.lastIndexOf('.') + 1);
+			if (args.length > 1 && !contains(args, simpleName)) {
+				continue;
+			}
+
+			for (Method method : Class.forName(className).getMethods()) {
+				int modifiers = method.getModifiers();
+				if (!method.getName().startsWith("test")
+						|| !Modifier.isStatic(modifiers)
+						|| method.getParameterTypes().length != 0) {
+					continue;
+				}
+
+				String name = simpleName + "." + method.getName();
+				try {
+					method.invoke(null);
+					passed++;
+				} catch (InvocationTargetException e) {
+					failed++;
+					System.out.println("ÉCHEC " + name + " : " + e.getCause());
+					e.getCause().printStackTrace(System.out);
+				}
+			}
+		}
+
+		System.out.println(passed + " test(s) réussi(s), " + failed
+				+ " échec(s)");
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Ajoute à <i>classNames</i> les noms complets des classes de test
+	 * trouvées sous <i>directory</i>
+	 */
+	private static void findTestClasses(File directory, String packagePrefix,
+			List<String> classNames) {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (file.isDirectory()) {
+				findTestClasses(file, packagePrefix + name + ".", classNames);
+			} else if (name.endsWith("Test.class")) {
+				classNames.add(packagePrefix
+						+ name.substring(0, name.length() - ".class".length()));
+			}
+		}
+	}
+
+	/**
+	 * @return Vrai si <i>name</i> figure parmi les arguments de la ligne de
+	 *         commande (hors répertoire)
+	 */
+	private static boolean contains(String[] args, String name) {
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
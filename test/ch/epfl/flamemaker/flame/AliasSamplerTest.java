@@ -0,0 +1,72 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests du tirage par la méthode des alias
+ */
+public final class AliasSamplerTest {
+
+	private static final int DRAWS = 400000;
+
+	private static void assertDistribution(double[] weights) {
+		AliasSampler sampler = new AliasSampler(weights);
+		assertEquals(weights.length, sampler.size(), "taille de la table");
+
+		double sum = 0;
+		for (double weight : weights) {
+			sum += weight;
+		}
+
+		int[] counts = new int[weights.length];
+		XoroshiroRandomSource random = new XoroshiroRandomSource(11);
+		for (int i = 0; i < DRAWS; i++) {
+			counts[sampler.sample(random)]++;
+		}
+
+		for (int i = 0; i < weights.length; i++) {
+			double expected = DRAWS * weights[i] / sum;
+			if (weights[i] == 0) {
+				assertEquals(0, counts[i], "index de poids nul " + i);
+			} else {
+				// Cinq écarts-types de la loi binomiale
+				double sigma = Math.sqrt(expected * (1 - weights[i] / sum));
+				assertTrue(Math.abs(counts[i] - expected) <= 5 * sigma,
+						"index " + i + " : " + counts[i] + " tirages, "
+								+ expected + " attendus");
+			}
+		}
+	}
+
+	public static void testUniformWeights() {
+		assertDistribution(new double[] { 2, 2, 2, 2, 2 });
+	}
+
+	public static void testUnevenWeights() {
+		assertDistribution(new double[] { 1, 0, 7, 0.5, 3, 0 });
+	}
+
+	public static void testSingleWeight() {
+		assertDistribution(new double[] { 4 });
+	}
+
+	public static void testInvalidWeightsAreRejected() {
+		final double[][] invalid = { { 1, -1 }, { 0, 0 },
+				{ 1, Double.NaN }, { Double.POSITIVE_INFINITY } };
+		for (final double[] weights : invalid) {
+			assertThrows(IllegalArgumentException.class, new Failing() {
+				@Override
+				public void run() {
+					new AliasSampler(weights);
+				}
+			}, "poids invalides refusés");
+		}
+	}
+}
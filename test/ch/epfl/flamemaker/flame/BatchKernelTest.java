@@ -0,0 +1,73 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests du meilleur noyau de calcul par lots, comparé au noyau scalaire. Le
+ * noyau vectoriel n'est testé que si le module incubé a été ajouté à la
+ * machine virtuelle ; sinon les deux noyaux sont le même.
+ */
+public final class BatchKernelTest {
+
+	/**
+	 * Le nombre de points par lot, qui n'est pas un multiple de la taille
+	 * d'un registre vectoriel
+	 */
+	private static final int POINTS = 37;
+
+	private static void compare(Variation variation, boolean fast,
+			double tolerance) {
+		double[] weights = new double[Variation.values().length];
+		weights[variation.index()] = 0.8;
+		weights[Variation.LINEAR.index()] += 0.3;
+		FlameTransformation transformation = new FlameTransformation(
+				new AffineTransformation(0.7, -0.2, 0.1, 0.3, 0.9, -0.4),
+				weights);
+
+		XoroshiroRandomSource random = new XoroshiroRandomSource(
+				variation.index());
+		double[] xs = new double[POINTS], ys = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			xs[i] = random.nextDouble() * 4 - 2;
+			ys[i] = random.nextDouble() * 4 - 2;
+		}
+		double[] expectedXs = xs.clone(), expectedYs = ys.clone();
+
+		BatchKernel.SCALAR.transform(transformation, expectedXs, expectedYs,
+				0, POINTS, fast);
+		BatchKernel.best().transform(transformation, xs, ys, 0, POINTS, fast);
+
+		String name = variation.printableName() + (fast ? " rapide" : "")
+				+ " (" + BatchKernel.best().name() + ")";
+		for (int i = 0; i < POINTS; i++) {
+			assertEquals(expectedXs[i], xs[i], tolerance, name + " : x" + i);
+			assertEquals(expectedYs[i], ys[i], tolerance, name + " : y" + i);
+		}
+	}
+
+	public static void testAlgebraicVariationsAreExact() {
+		Variation[] algebraic = { Variation.LINEAR, Variation.SPHERICAL,
+				Variation.HORSESHOE, Variation.BUBBLE };
+		for (Variation variation : algebraic) {
+			compare(variation, false, 0);
+			compare(variation, true, 0);
+		}
+	}
+
+	public static void testTrigonometricVariationsFollowMode() {
+		Variation[] trigonometric = { Variation.SINUSOIDAL, Variation.SWIRL };
+		for (Variation variation : trigonometric) {
+			compare(variation, false, 1e-12);
+			// Le mode rapide doit donner les approximations de FastMath
+			compare(variation, true, 0);
+		}
+	}
+}
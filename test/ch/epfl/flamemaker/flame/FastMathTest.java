@@ -0,0 +1,99 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.Arrays;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests du calcul rapide des variations : erreur des approximations de
+ * {@link FastMath}, et différence du rendu rapide avec le rendu exact
+ */
+public final class FastMathTest {
+
+	private static final Palette PALETTE = new InterpolatedPalette(
+			Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+
+	public static void testSinCosWithinMaxError() {
+		RandomSource random = new XoroshiroRandomSource(Flame.DEFAULT_SEED);
+		for (int i = 0; i < 2000000; i++) {
+			// Toutes les échelles, de la table entière à quelques unités
+			double x = (2 * random.nextDouble() - 1) * FastMath.TABLE_LIMIT
+					/ (1 << (i % 21));
+			assertEquals(Math.sin(x), FastMath.sin(x), FastMath.MAX_ERROR,
+					"sin(" + x + ")");
+			assertEquals(Math.cos(x), FastMath.cos(x), FastMath.MAX_ERROR,
+					"cos(" + x + ")");
+		}
+	}
+
+	public static void testSinCosBeyondTable() {
+		double[] values = { FastMath.TABLE_LIMIT * 3, -1e12, 1e300 };
+		for (double x : values) {
+			assertEquals(Math.sin(x), FastMath.sin(x), FastMath.MAX_ERROR,
+					"sin(" + x + ")");
+			assertEquals(Math.cos(x), FastMath.cos(x), FastMath.MAX_ERROR,
+					"cos(" + x + ")");
+		}
+	}
+
+	/**
+	 * @return Les composantes sRGB sur 8 bits de chaque pixel du rendu d'une
+	 *         fractale sur fond noir
+	 */
+	private static int[] render(Flame flame, Rectangle frame, int size,
+			long seed) {
+		FlameAccumulator accumulator = flame.compute(frame, size, size, 20,
+				new XoroshiroRandomSource(seed));
+		int[] components = new int[3 * size * size];
+		for (int y = 0, i = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				Color color = accumulator.color(PALETTE, Color.BLACK, x, y);
+				components[i++] = Color.sRGBEncode(color.red(), 255);
+				components[i++] = Color.sRGBEncode(color.green(), 255);
+				components[i++] = Color.sRGBEncode(color.blue(), 255);
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * @return La somme des écarts entre les composantes de deux rendus
+	 */
+	private static long difference(int[] reference, int[] tested) {
+		long sum = 0;
+		for (int i = 0; i < reference.length; i++) {
+			sum += Math.abs(reference[i] - tested[i]);
+		}
+		return sum;
+	}
+
+	public static void testFastRenderCloserThanOtherSeed() {
+		Flame flame = FlamePPMMaker.turbulence();
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		int size = 200;
+
+		int[] reference = render(flame, frame, size, Flame.DEFAULT_SEED);
+		int[] reseeded = render(flame, frame, size, Flame.DEFAULT_SEED + 1);
+		int[] fast = render(flame.withFastMath(true), frame, size,
+				Flame.DEFAULT_SEED);
+
+		long noise = difference(reference, reseeded);
+		long error = difference(reference, fast);
+		assertTrue(noise > 0, "le changement de graine change l'image");
+		assertTrue(error * 10 < noise, "écart du mode rapide (" + error
+				+ ") bien moindre que celui d'une autre graine (" + noise
+				+ ")");
+	}
+}
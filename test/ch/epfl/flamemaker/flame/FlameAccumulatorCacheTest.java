@@ -0,0 +1,136 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+
+/**
+ * Tests du cache d'accumulateurs
+ */
+public final class FlameAccumulatorCacheTest {
+
+	private static final Rectangle FRAME = FlamePPMMaker.TURBULENCE_FRAME;
+
+	public static void testGetReusesCachedAccumulator() {
+		FlameAccumulatorCache cache = new FlameAccumulatorCache(1);
+		Flame flame = FlamePPMMaker.turbulence();
+
+		assertTrue(cache.lookup(flame, FRAME, 40, 40, 1) == null,
+				"cache initialement vide");
+		FlameAccumulator first = cache.get(flame, FRAME, 40, 40, 1);
+		assertTrue(cache.lookup(flame, FRAME, 40, 40, 1) == first,
+				"accumulateur trouvé après calcul");
+		assertTrue(cache.get(FlamePPMMaker.turbulence(), FRAME, 40, 40, 1) == first,
+				"fractale égale : pas de nouveau calcul");
+		assertTrue(cache.lookup(flame, FRAME, 40, 40, 2) == null,
+				"densité différente absente du cache");
+	}
+
+	public static void testConcurrentGetsComputeOnce() throws Exception {
+		final FlameAccumulatorCache cache = new FlameAccumulatorCache(1);
+		final Flame flame = FlamePPMMaker.turbulence();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<FlameAccumulator>> results = new ArrayList<Future<FlameAccumulator>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<FlameAccumulator>() {
+					@Override
+					public FlameAccumulator call() {
+						return cache.get(flame, FRAME, 60, 60, 2);
+					}
+				}));
+			}
+
+			FlameAccumulator first = results.get(0).get();
+			for (Future<FlameAccumulator> result : results) {
+				assertTrue(result.get() == first,
+						"tous les appels partagent le même calcul");
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static void testFailedComputationIsNotCached() {
+		final FlameAccumulatorCache cache = new FlameAccumulatorCache(1);
+		final Flame flame = FlamePPMMaker.turbulence();
+
+		assertThrows(IllegalArgumentException.class, new Failing() {
+			@Override
+			public void run() {
+				cache.get(flame, FRAME, 0, 40, 1);
+			}
+		}, "largeur nulle refusée");
+		assertTrue(cache.lookup(flame, FRAME, 0, 40, 1) == null,
+				"calcul en échec retiré du cache");
+	}
+
+	public static void testPutReplacesContent() {
+		FlameAccumulatorCache cache = new FlameAccumulatorCache(1);
+		Flame flame = FlamePPMMaker.turbulence();
+
+		FlameAccumulator computed = cache.get(flame, FRAME, 40, 40, 1);
+		FlameAccumulator other = flame.compute(FRAME, 30, 30, 1);
+		cache.put(flame, FRAME, 30, 30, 1, other);
+
+		assertTrue(cache.lookup(flame, FRAME, 30, 30, 1) == other,
+				"accumulateur inséré trouvé");
+		assertTrue(cache.lookup(flame, FRAME, 40, 40, 1) == null,
+				"ancien accumulateur remplacé");
+		assertTrue(computed != other, "accumulateurs distincts");
+	}
+
+	public static void testPaletteChangeOnlyRecolors() {
+		FlameAccumulatorCache cache = new FlameAccumulatorCache(1);
+		final AtomicInteger computations = new AtomicInteger();
+		Flame.Builder turbulence = new Flame.Builder(FlamePPMMaker.turbulence());
+		List<FlameTransformation> transforms = new ArrayList<FlameTransformation>();
+		for (int i = 0; i < turbulence.transformationsCount(); i++) {
+			transforms.add(turbulence.getTransformation(i));
+		}
+		Flame flame = new Flame(transforms) {
+			@Override
+			public FlameAccumulator compute(Rectangle frame, int width,
+					int height, int density, int threads) {
+				computations.incrementAndGet();
+				return super.compute(frame, width, height, density, threads);
+			}
+		};
+
+		Palette warm = new InterpolatedPalette(Arrays.asList(Color.RED,
+				Color.GREEN));
+		Palette cold = new InterpolatedPalette(Arrays.asList(Color.BLUE,
+				Color.WHITE));
+
+		FlameAccumulator first = cache.get(flame, FRAME, 40, 40, 1);
+		Color warmColor = first.color(warm, Color.BLACK, 20, 20);
+
+		// Seules les couleurs changent : l'accumulateur est recoloré
+		FlameAccumulator second = cache.get(flame, FRAME, 40, 40, 1);
+		Color coldColor = second.color(cold, Color.WHITE, 20, 20);
+
+		assertEquals(1, computations.get(), "jeu du chaos lancé une seule fois");
+		assertTrue(second == first, "même accumulateur recoloré");
+		assertTrue(first.intensity(20, 20) > 0, "case de test atteinte");
+		assertTrue(warmColor.asPackedRGB() != coldColor.asPackedRGB(),
+				"couleurs différentes après recoloration");
+	}
+}
@@ -0,0 +1,420 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Point;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests de l'accumulateur et de son bâtisseur
+ */
+public final class FlameAccumulatorTest {
+
+	private static final Palette PALETTE = new InterpolatedPalette(
+			Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+
+	private static final Color BACKGROUND = new Color(0.2, 0.4, 0.6);
+
+	/**
+	 * Une petite grille dont la région couvre exactement les cases : le point
+	 * (x + 0.5, y + 0.5) tombe dans la case (x, y)
+	 */
+	private static final int GRID_WIDTH = 37, GRID_HEIGHT = 23;
+	private static final Rectangle GRID_FRAME = new Rectangle(new Point(
+			GRID_WIDTH / 2.0, GRID_HEIGHT / 2.0), GRID_WIDTH, GRID_HEIGHT);
+
+	private static final Rectangle FRAME = FlamePPMMaker.TURBULENCE_FRAME;
+
+	/**
+	 * Les dimensions des rendus de la fractale « turbulence »
+	 */
+	private static final int WIDTH = 640, HEIGHT = 480;
+
+	private static FlameAccumulator.Builder render(long seed) {
+		return walk(new FlameAccumulator.Builder(FRAME, WIDTH, HEIGHT), seed);
+	}
+
+	/**
+	 * Ajoute à <i>builder</i> les points d'une orbite de la fractale
+	 * « turbulence »
+	 */
+	private static FlameAccumulator.Builder walk(
+			FlameAccumulator.Builder builder, long seed) {
+		new FlameWalker(FlamePPMMaker.turbulence(), FRAME,
+				new XoroshiroRandomSource(seed), builder).run(200000);
+		return builder;
+	}
+
+	private static List<FlameAccumulator.Builder> partials() {
+		List<FlameAccumulator.Builder> partials = new ArrayList<FlameAccumulator.Builder>();
+		for (int i = 0; i < 4; i++) {
+			partials.add(render(i + 1));
+		}
+		return partials;
+	}
+
+	/**
+	 * @return Un accumulateur de référence : les points des bâtisseurs
+	 *         ajoutés case par case dans un stockage dense
+	 */
+	private static AccumulatorStorage reference(
+			List<FlameAccumulator.Builder> partials) {
+		AccumulatorStorage storage = new HeapAccumulatorStorage(
+				AccumulatorLayout.ROW_MAJOR.cells(WIDTH, HEIGHT));
+		for (FlameAccumulator.Builder partial : partials) {
+			AccumulatorStorages.addAll(storage, partial.storage(), 0,
+					storage.size());
+		}
+		return storage;
+	}
+
+	private static void assertSameCells(AccumulatorStorage expected,
+			AccumulatorStorage actual, String name) {
+		assertEquals(expected.size(), actual.size(), name + " : taille");
+		for (long i = 0; i < expected.size(); i++) {
+			assertEquals(expected.hits(i), actual.hits(i), name
+					+ " : points de la case " + i);
+			assertEquals(expected.colorIndex(i), actual.colorIndex(i), 0,
+					name + " : couleur de la case " + i);
+		}
+	}
+
+	public static void testCellsMatchReference() {
+		int[][] hits = new int[GRID_WIDTH][GRID_HEIGHT];
+		double[][] colors = new double[GRID_WIDTH][GRID_HEIGHT];
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				GRID_FRAME, GRID_WIDTH, GRID_HEIGHT);
+
+		Random random = new Random(2012);
+		for (int i = 0; i < 20000; i++) {
+			// Quelques cases beaucoup plus touchées que les autres
+			int x = random.nextInt(i % 3 == 0 ? 4 : GRID_WIDTH);
+			int y = random.nextInt(GRID_HEIGHT);
+			double colorIndex = random.nextDouble();
+			builder.hit(x + 0.5, y + 0.5, colorIndex);
+
+			colors[x][y] = (colorIndex + colors[x][y] * hits[x][y])
+					/ (hits[x][y] + 1);
+			hits[x][y]++;
+		}
+
+		int maxHit = 0;
+		for (int[] column : hits) {
+			for (int count : column) {
+				maxHit = Math.max(maxHit, count);
+			}
+		}
+
+		FlameAccumulator accumulator = builder.build();
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			for (int y = 0; y < GRID_HEIGHT; y++) {
+				double intensity = Math.log(hits[x][y] + 1)
+						/ Math.log(maxHit + 1);
+				assertEquals(intensity, accumulator.intensity(x, y), 1e-12,
+						"intensité de (" + x + ", " + y + ")");
+				assertEquals(PALETTE.colorForIndex(colors[x][y])
+						.mixWith(BACKGROUND, intensity).asPackedRGB(),
+						accumulator.color(PALETTE, BACKGROUND, x, y)
+								.asPackedRGB(), "couleur de (" + x + ", " + y
+								+ ")");
+			}
+		}
+	}
+
+	public static void testRowsMatchCells() {
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				GRID_FRAME, GRID_WIDTH, GRID_HEIGHT);
+		Random random = new Random(2013);
+		for (int i = 0; i < 5000; i++) {
+			builder.hit(random.nextDouble() * GRID_WIDTH, random.nextDouble()
+					* GRID_HEIGHT, random.nextDouble());
+		}
+		FlameAccumulator accumulator = builder.build();
+
+		double[] intensities = new double[GRID_WIDTH];
+		int[] packedRGB = new int[GRID_WIDTH];
+		for (int row = 0; row < GRID_HEIGHT; row++) {
+			int y = GRID_HEIGHT - 1 - row;
+			accumulator.intensityRow(row, intensities);
+			accumulator.colorRow(PALETTE, BACKGROUND, row, packedRGB);
+			for (int x = 0; x < GRID_WIDTH; x++) {
+				assertEquals(accumulator.intensity(x, y), intensities[x], 0,
+						"intensité de la rangée " + row + ", case " + x);
+				assertEquals(accumulator.color(PALETTE, BACKGROUND, x, y)
+						.asPackedRGB(), packedRGB[x], "couleur de la rangée "
+						+ row + ", case " + x);
+			}
+		}
+	}
+
+	public static void testOutOfFrameHitsAreIgnored() {
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				GRID_FRAME, GRID_WIDTH, GRID_HEIGHT);
+		builder.hit(GRID_WIDTH + 0.5, 0.5, 0.3);
+		builder.hit(-0.5, 0.5, 0.3);
+		builder.hit(0.5, GRID_HEIGHT + 0.5, 0.3);
+		builder.hit(0.5, -0.5, 0.3);
+		builder.hit(1.5, 1.5, 0.7);
+
+		FlameAccumulator accumulator = builder.build();
+		for (int x = 0; x < GRID_WIDTH; x++) {
+			for (int y = 0; y < GRID_HEIGHT; y++) {
+				assertEquals(x == 1 && y == 1 ? 1 : 0,
+						accumulator.intensity(x, y), 0, "intensité de (" + x
+								+ ", " + y + ")");
+			}
+		}
+	}
+
+	public static void testInvalidCoordinatesAreRejected() {
+		final FlameAccumulator accumulator = new FlameAccumulator.Builder(
+				GRID_FRAME, GRID_WIDTH, GRID_HEIGHT).build();
+		final int[][] invalid = { { GRID_WIDTH, 0 }, { 0, GRID_HEIGHT },
+				{ -1, 0 }, { 0, -1 } };
+		for (final int[] cell : invalid) {
+			assertThrows(IndexOutOfBoundsException.class, new Failing() {
+				@Override
+				public void run() {
+					accumulator.intensity(cell[0], cell[1]);
+				}
+			}, "case (" + cell[0] + ", " + cell[1] + ") refusée");
+		}
+	}
+
+	public static void testBuiltAccumulatorIsNotModifiedLater() {
+		FlameAccumulator.Builder builder = render(7);
+		FlameAccumulator first = builder.build();
+
+		double[] before = new double[WIDTH];
+		first.intensityRow(HEIGHT / 2, before);
+
+		new FlameWalker(FlamePPMMaker.turbulence(), FRAME,
+				new XoroshiroRandomSource(8), builder).run(200000);
+		FlameAccumulator second = builder.build();
+
+		double[] after = new double[WIDTH], grown = new double[WIDTH];
+		first.intensityRow(HEIGHT / 2, after);
+		second.intensityRow(HEIGHT / 2, grown);
+
+		boolean changed = false;
+		for (int x = 0; x < WIDTH; x++) {
+			assertEquals(before[x], after[x], 0, "case " + x
+					+ " de l'accumulateur déjà construit");
+			changed |= after[x] != grown[x];
+		}
+		assertTrue(changed, "le nouvel accumulateur contient les points ajoutés");
+	}
+
+	public static void testBinningKeepsCellsIdentical() {
+		FlameAccumulator.Builder direct = new FlameAccumulator.Builder(FRAME,
+				WIDTH, HEIGHT);
+		direct.setBinning(false);
+		walk(direct, 3);
+
+		// Assez de cases pour que les points soient regroupés par défaut
+		assertSameCells(direct.storage(), render(3).storage(),
+				"regroupement par région");
+	}
+
+	public static void testMortonMatchesRowMajor() {
+		// Dimensions qui ne sont pas des multiples de la taille des blocs
+		int width = 517, height = 301;
+		FlameAccumulator.Builder rowMajor = walk(new FlameAccumulator.Builder(
+				FRAME, width, height, AccumulatorLayout.ROW_MAJOR), 5);
+		FlameAccumulator.Builder morton = walk(new FlameAccumulator.Builder(
+				FRAME, width, height, AccumulatorLayout.MORTON), 5);
+
+		AccumulatorStorage rowMajorCells = rowMajor.storage();
+		AccumulatorStorage mortonCells = morton.storage();
+		for (int row = 0; row < height; row++) {
+			for (int x = 0; x < width; x++) {
+				long expected = AccumulatorLayout.ROW_MAJOR.rowBase(width, row)
+						+ AccumulatorLayout.ROW_MAJOR.columnOffset(x);
+				long actual = AccumulatorLayout.MORTON.rowBase(width, row)
+						+ AccumulatorLayout.MORTON.columnOffset(x);
+				assertEquals(rowMajorCells.hits(expected),
+						mortonCells.hits(actual), "points de la rangée "
+								+ row + ", case " + x);
+				assertEquals(rowMajorCells.colorIndex(expected),
+						mortonCells.colorIndex(actual), 0,
+						"couleur de la rangée " + row + ", case " + x);
+			}
+		}
+
+		FlameAccumulator expected = rowMajor.build(), actual = morton.build();
+		int[] expectedRow = new int[width], actualRow = new int[width];
+		for (int row = 0; row < height; row++) {
+			expected.colorRow(PALETTE, BACKGROUND, row, expectedRow);
+			actual.colorRow(PALETTE, BACKGROUND, row, actualRow);
+			for (int x = 0; x < width; x++) {
+				assertEquals(expectedRow[x], actualRow[x], "colorRow, rangée "
+						+ row + ", case " + x);
+				int y = height - 1 - row;
+				assertEquals(expected.color(PALETTE, BACKGROUND, x, y)
+						.asPackedRGB(), actual.color(PALETTE, BACKGROUND, x, y)
+						.asPackedRGB(), "color(" + x + ", " + y + ")");
+			}
+		}
+	}
+
+	/**
+	 * Ajoute à <i>builders</i> les mêmes <i>count</i> points, répartis
+	 * uniformément sur la région
+	 */
+	private static void hitUniformly(Random random, int count,
+			FlameAccumulator.Builder... builders) {
+		for (int i = 0; i < count; i++) {
+			double x = FRAME.left() + random.nextDouble() * FRAME.width();
+			double y = FRAME.bottom() + random.nextDouble() * FRAME.height();
+			double colorIndex = random.nextDouble();
+			for (FlameAccumulator.Builder builder : builders) {
+				builder.hit(x, y, colorIndex);
+			}
+		}
+	}
+
+	public static void testSparseStorageBecomesDense() {
+		FlameAccumulator.Builder sparse = new FlameAccumulator.Builder(FRAME,
+				WIDTH, HEIGHT);
+		FlameAccumulator.Builder dense = new FlameAccumulator.Builder(
+				new HeapAccumulatorStorage(AccumulatorLayout.ROW_MAJOR.cells(
+						WIDTH, HEIGHT)), AccumulatorLayout.ROW_MAJOR, FRAME,
+				WIDTH, HEIGHT);
+		assertTrue(sparse.storage() instanceof SparseAccumulatorStorage,
+				"un grand bâtisseur commence avec un stockage creux");
+
+		// Quelques points ne touchent que quelques blocs
+		Random random = new Random(2014);
+		hitUniformly(random, 20, sparse, dense);
+		assertTrue(sparse.storage() instanceof SparseAccumulatorStorage,
+				"stockage encore creux après quelques points");
+		assertSameCells(dense.storage(), sparse.storage(), "stockage creux");
+
+		// Des points partout allouent tous les blocs
+		hitUniformly(random, 100000, sparse, dense);
+		assertTrue(!(sparse.storage() instanceof SparseAccumulatorStorage),
+				"stockage rendu dense une fois la plupart des blocs alloués");
+		assertSameCells(dense.storage(), sparse.storage(),
+				"stockage rendu dense");
+	}
+
+	/**
+	 * Plus de points que ne peut en compter exactement une somme en simple
+	 * précision (2<sup>24</sup>)
+	 */
+	private static final int MANY_HITS = (1 << 24) + (1 << 22);
+
+	/**
+	 * @return Un bâtisseur d'une seule case, ayant reçu <i>hits</i> points
+	 *         d'index de couleur <i>colorIndex</i>
+	 */
+	private static FlameAccumulator.Builder hitOneCell(
+			ColorAccumulation colors, HitCounters counters, int hits,
+			double colorIndex) {
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				new Rectangle(new Point(0.5, 0.5), 1, 1), 1, 1,
+				AccumulatorLayout.ROW_MAJOR, colors, counters);
+		for (int i = 0; i < hits; i++) {
+			builder.hit(0.5, 0.5, colorIndex);
+		}
+		return builder;
+	}
+
+	public static void testFloatSumKeepsColorBeyondFloatPrecision() {
+		for (HitCounters counters : new HitCounters[] { HitCounters.INT,
+				HitCounters.LONG }) {
+			AccumulatorStorage cell = hitOneCell(ColorAccumulation.FLOAT_SUM,
+					counters, MANY_HITS, 0.75).storage();
+			assertEquals(MANY_HITS, cell.hits(0), counters + " : points");
+			assertEquals(0.75, cell.colorIndex(0), 1e-9, counters
+					+ " : index de couleur");
+		}
+
+		FlameAccumulator.Builder merged = hitOneCell(
+				ColorAccumulation.FLOAT_SUM, HitCounters.INT, 1000, 0.25);
+		merged.merge(hitOneCell(ColorAccumulation.FLOAT_SUM, HitCounters.INT,
+				MANY_HITS, 0.75));
+		assertEquals((1000 * 0.25 + MANY_HITS * 0.75) / (1000 + MANY_HITS),
+				merged.storage().colorIndex(0), 1e-9,
+				"index de couleur après fusion");
+	}
+
+	public static void testTieredCountersKeepColorBeyondFloatPrecision() {
+		AccumulatorStorage cell = hitOneCell(ColorAccumulation.RUNNING_MEAN,
+				HitCounters.TIERED, MANY_HITS, 0.75).storage();
+		assertTrue(cell instanceof TieredAccumulatorStorage,
+				"stockage à compteurs adaptatifs");
+		assertEquals(MANY_HITS, cell.hits(0), "points");
+		assertEquals(0.75, cell.colorIndex(0), 1e-9, "index de couleur");
+	}
+
+	public static void testAtomicStorageKeepsColorBeyondFloatPrecision() {
+		AccumulatorStorage cell = ConcurrentUpdates.ATOMIC.newStorage(1);
+		for (int i = 0; i < MANY_HITS; i++) {
+			cell.hit(0, 0.75);
+		}
+		assertEquals(MANY_HITS, cell.hits(0), "points");
+		assertEquals(0.75, cell.colorIndex(0), 1e-9, "index de couleur");
+	}
+
+	public static void testMergeMatchesCellByCellSum() {
+		List<FlameAccumulator.Builder> partials = partials();
+		AccumulatorStorage expected = reference(partials);
+
+		FlameAccumulator.Builder oneByOne = new FlameAccumulator.Builder(
+				FRAME, WIDTH, HEIGHT);
+		for (FlameAccumulator.Builder partial : partials) {
+			oneByOne.merge(partial);
+		}
+		assertSameCells(expected, oneByOne.storage(), "merge()");
+
+		FlameAccumulator.Builder all = new FlameAccumulator.Builder(FRAME,
+				WIDTH, HEIGHT);
+		all.mergeAll(partials);
+		assertSameCells(expected, all.storage(), "mergeAll()");
+	}
+
+	public static void testParallelMergeMatchesSequential() {
+		List<FlameAccumulator.Builder> partials = partials();
+		AccumulatorStorage expected = reference(partials);
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			FlameAccumulator.Builder merged = new FlameAccumulator.Builder(
+					FRAME, WIDTH, HEIGHT);
+			merged.mergeAll(partials, executor);
+			assertSameCells(expected, merged.storage(), "mergeAll(executor)");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public static void testMergeRejectsOtherSize() {
+		final FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				FRAME, WIDTH, HEIGHT);
+		final FlameAccumulator.Builder other = new FlameAccumulator.Builder(
+				FRAME, WIDTH, HEIGHT + 1);
+		assertThrows(IllegalArgumentException.class, new Failing() {
+			@Override
+			public void run() {
+				builder.merge(other);
+			}
+		}, "taille différente refusée");
+	}
+}
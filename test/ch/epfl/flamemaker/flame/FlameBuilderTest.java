@@ -0,0 +1,81 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.Arrays;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests des poids de sélection du bâtisseur de fractales
+ */
+public final class FlameBuilderTest {
+
+	private static Flame.Builder builderWithWeights(double... weights) {
+		Flame.Builder builder = new Flame.Builder(new Flame(Arrays
+				.<FlameTransformation> asList()));
+		double[] variations = new double[Variation.values().length];
+		variations[Variation.LINEAR.index()] = 1;
+		for (double weight : weights) {
+			builder.addTransformation(new FlameTransformation(
+					AffineTransformation.IDENTITY, variations), weight);
+		}
+		return builder;
+	}
+
+	public static void testAllZeroWeightsBuildUniformFlame() {
+		Flame.Builder builder = builderWithWeights(2, 0, 1);
+		builder.setSelectionWeight(0, 0);
+		builder.setSelectionWeight(2, 0);
+
+		Flame flame = builder.build();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(1, flame.selectionWeight(i), 0,
+					"poids uniforme de la transformation " + i);
+			assertEquals(0, builder.selectionWeight(i), 0,
+					"poids du bâtisseur " + i + " conservé");
+		}
+
+		int[] counts = new int[3];
+		XoroshiroRandomSource random = new XoroshiroRandomSource(1);
+		for (int i = 0; i < 30000; i++) {
+			counts[flame.sampleTransformation(random)]++;
+		}
+		for (int i = 0; i < 3; i++) {
+			assertTrue(Math.abs(counts[i] - 10000) < 500,
+					"tirage uniforme de la transformation " + i + " : "
+							+ counts[i]);
+		}
+	}
+
+	public static void testRemovingLastPositiveWeightStillBuilds() {
+		Flame.Builder builder = builderWithWeights(0, 3);
+		builder.removeTransformation(1);
+
+		assertEquals(1, builder.build().selectionWeight(0), 0,
+				"poids uniforme de la transformation restante");
+	}
+
+	public static void testPositiveWeightsAreKept() {
+		Flame flame = builderWithWeights(0, 3, 1).build();
+
+		assertEquals(0, flame.selectionWeight(0), 0, "poids nul conservé");
+		assertEquals(3, flame.selectionWeight(1), 0, "poids conservé");
+	}
+
+	public static void testNegativeWeightIsRejected() {
+		final Flame.Builder builder = builderWithWeights(1);
+		assertThrows(IllegalArgumentException.class, new Failing() {
+			@Override
+			public void run() {
+				builder.setSelectionWeight(0, -1);
+			}
+		}, "poids négatif");
+	}
+}
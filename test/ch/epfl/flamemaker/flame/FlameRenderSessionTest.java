@@ -0,0 +1,126 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests des sessions de rendu à plusieurs orbites
+ */
+public final class FlameRenderSessionTest {
+
+	private static final int SIZE = 64;
+
+	private static final Palette PALETTE = new InterpolatedPalette(
+			Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+
+	private static FlameAccumulator render(long memoryBudget,
+			ConcurrentUpdates updates) {
+		Flame flame = FlamePPMMaker.turbulence();
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		FlameRenderSession session = new FlameRenderSession(flame, frame,
+				SIZE, SIZE, new XoroshiroRandomSource(3), 3, memoryBudget,
+				updates);
+		session.runPass(10L * SIZE * SIZE);
+		return session.snapshot();
+	}
+
+	private static void assertSameIntensities(FlameAccumulator expected,
+			FlameAccumulator actual, String name) {
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				assertEquals(expected.intensity(x, y), actual.intensity(x, y),
+						0, name + " : intensité de (" + x + ", " + y + ")");
+			}
+		}
+	}
+
+	/**
+	 * Vérifie que les couleurs ne diffèrent que par l'ordre des arrondis
+	 */
+	private static void assertSameColors(FlameAccumulator expected,
+			FlameAccumulator actual, String name) {
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				Color e = expected.color(PALETTE, Color.BLACK, x, y);
+				Color a = actual.color(PALETTE, Color.BLACK, x, y);
+				String cell = name + " : couleur de (" + x + ", " + y + ")";
+				assertEquals(e.red(), a.red(), 1e-9, cell);
+				assertEquals(e.green(), a.green(), 1e-9, cell);
+				assertEquals(e.blue(), a.blue(), 1e-9, cell);
+			}
+		}
+	}
+
+	public static void testSharedBuildersKeepIntensities() {
+		FlameAccumulator separate = render(Long.MAX_VALUE,
+				ConcurrentUpdates.ATOMIC);
+
+		for (ConcurrentUpdates updates : ConcurrentUpdates.values()) {
+			FlameAccumulator shared = render(0, updates);
+			assertSameIntensities(separate, shared, updates.toString());
+			assertSameColors(separate, shared, updates.toString());
+		}
+	}
+
+	public static void testMappedRenderMatchesHeap() throws IOException {
+		Flame flame = FlamePPMMaker.turbulence();
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		FlameAccumulator heap = flame.compute(frame, SIZE, SIZE, 10);
+		FlameAccumulator mapped = flame.compute(frame, SIZE, SIZE, 10,
+				(File) null);
+
+		assertSameIntensities(heap, mapped, "fichier projeté");
+		assertSameColors(heap, mapped, "fichier projeté");
+	}
+
+	public static void testFlameLanesReachSessions() {
+		final Flame flame = FlamePPMMaker.turbulence();
+		Rectangle frame = FlamePPMMaker.TURBULENCE_FRAME;
+		Flame laned = flame.withLanes(16);
+
+		assertEquals(16, laned.lanes(), "orbites par marcheur");
+		assertTrue(!laned.equals(flame), "autres orbites, autre fractale");
+		assertTrue(laned.withLanes(1).equals(flame), "retour à une orbite");
+
+		FlameRenderSession session = new FlameRenderSession(flame, frame,
+				SIZE, SIZE, new XoroshiroRandomSource(5), 1, Long.MAX_VALUE,
+				ConcurrentUpdates.ATOMIC, 16);
+		session.runPass(10L * SIZE * SIZE);
+		assertSameIntensities(session.snapshot(), laned.compute(frame, SIZE,
+				SIZE, 10, new XoroshiroRandomSource(5)), "withLanes(16)");
+
+		boolean vector = BatchKernel.best() != BatchKernel.SCALAR;
+		assertTrue(session.vectorKernel() == vector,
+				"noyau par lots utilisé par les marcheurs à plusieurs orbites");
+		assertTrue(!new FlameRenderSession(flame, frame, SIZE, SIZE,
+				new XoroshiroRandomSource(5)).vectorKernel(),
+				"pas de lots pour une seule orbite");
+
+		assertThrows(IllegalArgumentException.class, new Failing() {
+			@Override
+			public void run() {
+				flame.withLanes(0);
+			}
+		}, "aucune orbite refusée");
+		assertThrows(IllegalArgumentException.class, new Failing() {
+			@Override
+			public void run() {
+				flame.withLanes(257);
+			}
+		}, "trop d'orbites refusées");
+	}
+}
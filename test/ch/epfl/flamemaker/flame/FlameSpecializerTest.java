@@ -0,0 +1,80 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests de la boucle spécialisée par fractale. Ils supposent un compilateur
+ * Java à l'exécution, comme le reste de la construction.
+ */
+public final class FlameSpecializerTest {
+
+	private static final int SIZE = 80;
+
+	private static FlameRenderSession render(Flame flame) {
+		FlameRenderSession session = new FlameRenderSession(flame,
+				FlamePPMMaker.SHARK_FIN_FRAME, SIZE, SIZE,
+				new XoroshiroRandomSource(5));
+		session.runPass(20L * SIZE * SIZE);
+		return session;
+	}
+
+	public static void testSpecializedLoopGivesSamePoints() {
+		Flame[] flames = { FlamePPMMaker.sharkFin(),
+				FlamePPMMaker.sharkFin().withFastMath(true) };
+		for (Flame flame : flames) {
+			FlameRenderSession usual = render(flame);
+			FlameRenderSession specialized = render(flame
+					.withSpecializedLoop(true));
+
+			assertTrue(!usual.specializedLoop(), "boucle habituelle");
+			assertTrue(specialized.specializedLoop(), "boucle spécialisée");
+
+			FlameAccumulator expected = usual.snapshot();
+			FlameAccumulator actual = specialized.snapshot();
+			for (int y = 0; y < SIZE; y++) {
+				double[] expectedRow = new double[SIZE], actualRow = new double[SIZE];
+				expected.intensityRow(y, expectedRow);
+				actual.intensityRow(y, actualRow);
+				for (int x = 0; x < SIZE; x++) {
+					assertEquals(expectedRow[x], actualRow[x], 0,
+							"intensité de (" + x + ", " + y + ")");
+				}
+			}
+		}
+	}
+
+	public static void testEqualFlamesShareCompiledClass() {
+		Flame first = FlamePPMMaker.turbulence().withSpecializedLoop(true);
+		Flame second = new Flame.Builder(first).build();
+
+		FlameSpecializer.Loop a = FlameSpecializer.loop(first);
+		FlameSpecializer.Loop b = FlameSpecializer.loop(second);
+		assertTrue(a != null && b != null, "boucles compilées");
+		assertTrue(a != b, "une boucle par fractale");
+		assertTrue(a.getClass() == b.getClass(), "classe partagée");
+
+		Flame fast = first.withFastMath(true);
+		assertTrue(FlameSpecializer.loop(fast).getClass() != a.getClass(),
+				"mode rapide compilé à part");
+	}
+
+	public static void testLoopOnlyWhenRequested() {
+		assertTrue(FlameSpecializer.loop(FlamePPMMaker.turbulence()) == null,
+				"boucle non demandée");
+		assertTrue(
+				!new FlameRenderSession(FlamePPMMaker.turbulence()
+						.withSpecializedLoop(true), new Rectangle(
+						FlamePPMMaker.TURBULENCE_FRAME.center(), 1, 1), 4, 4,
+						new XoroshiroRandomSource(1), 1, Long.MAX_VALUE,
+						ConcurrentUpdates.ATOMIC, 2).specializedLoop(),
+				"pas de boucle spécialisée à plusieurs orbites par marcheur");
+	}
+}
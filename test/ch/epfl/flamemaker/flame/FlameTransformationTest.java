@@ -0,0 +1,167 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.Random;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Point;
+
+/**
+ * Tests du chemin de calcul sans allocation des transformations Flame,
+ * comparé bit à bit au calcul d'origine par objets {@link Point}
+ */
+public final class FlameTransformationTest {
+
+	private static final int TRANSFORMATIONS = 500, POINTS = 200;
+
+	/**
+	 * @return L'image de <i>p</i> par la variation d'index <i>index</i>,
+	 *         calculée comme avant le chemin sans allocation, avec
+	 *         <i>r2</i> pour carré de la distance de <i>p</i> à l'origine
+	 */
+	private static Point baselineVariation(int index, Point p, double r2) {
+		switch (index) {
+		case 0:
+			return p;
+		case 1:
+			return new Point(Math.sin(p.x()), Math.sin(p.y()));
+		case 2:
+			return new Point(p.x() / r2, p.y() / r2);
+		case 3:
+			return new Point(p.x() * Math.sin(r2) - p.y() * Math.cos(r2),
+					p.x() * Math.cos(r2) + p.y() * Math.sin(r2));
+		case 4:
+			return new Point((p.x() - p.y()) * (p.x() + p.y()) / p.r(),
+					(2 * p.x() * p.y()) / p.r());
+		default:
+			return new Point(4 * p.x() / (r2 + 4), 4 * p.y() / (r2 + 4));
+		}
+	}
+
+	/**
+	 * @return L'image de <i>p</i> par la transformation Flame de composante
+	 *         affine <i>affine</i> et de poids <i>weights</i>, calculée comme
+	 *         avant le chemin sans allocation. Depuis que les grandeurs
+	 *         polaires sont calculées une seule fois, r² vaut x² + y² ; avec
+	 *         <i>squaredRoot</i>, il est calculé comme auparavant en élevant
+	 *         r = sqrt(x² + y²) au carré.
+	 */
+	private static Point baseline(AffineTransformation affine,
+			double[] weights, Point p, boolean squaredRoot) {
+		Point tmp, result = new Point(0, 0);
+		p = affine.transformPoint(p);
+		double r2 = squaredRoot ? p.r() * p.r() : p.x() * p.x() + p.y()
+				* p.y();
+		for (int i = 0; i < weights.length; i++) {
+			if (weights[i] != 0) {
+				tmp = baselineVariation(i, p, r2);
+				result = new Point(result.x() + weights[i] * tmp.x(),
+						result.y() + weights[i] * tmp.y());
+			}
+		}
+		return result;
+	}
+
+	private static AffineTransformation randomAffine(Random random) {
+		return new AffineTransformation(random.nextGaussian(),
+				random.nextGaussian(), random.nextGaussian(),
+				random.nextGaussian(), random.nextGaussian(),
+				random.nextGaussian());
+	}
+
+	/**
+	 * @return Des poids aléatoires dont environ la moitié sont nuls
+	 */
+	private static double[] randomWeights(Random random) {
+		double[] weights = new double[Variation.values().length];
+		for (int i = 0; i < weights.length; i++) {
+			weights[i] = random.nextBoolean() ? 0 : 2 * random.nextDouble() - 1;
+		}
+		return weights;
+	}
+
+	public static void testTransformMatchesBaseline() {
+		Random random = new Random(2012);
+		double[] point = new double[2];
+		for (int t = 0; t < TRANSFORMATIONS; t++) {
+			AffineTransformation affine = randomAffine(random);
+			double[] weights = randomWeights(random);
+			FlameTransformation transformation = new FlameTransformation(
+					affine, weights);
+
+			for (int i = 0; i < POINTS; i++) {
+				Point p = new Point(6 * random.nextDouble() - 3,
+						6 * random.nextDouble() - 3);
+				Point expected = baseline(affine, weights, p, false);
+
+				point[0] = p.x();
+				point[1] = p.y();
+				transformation.transform(point);
+				assertEquals(expected.x(), point[0], 0, "abscisse de " + p);
+				assertEquals(expected.y(), point[1], 0, "ordonnée de " + p);
+
+				Point actual = transformation.transformPoint(p);
+				assertEquals(expected.x(), actual.x(), 0, "transformPoint "
+						+ p);
+				assertEquals(expected.y(), actual.y(), 0, "transformPoint "
+						+ p);
+			}
+		}
+	}
+
+	public static void testBuilderDoesNotAlterBuiltTransformation() {
+		Random random = new Random(2013);
+		double[] weights = { 0.5, 0, 0.25, 0, 0, 0.25 };
+		FlameTransformation transformation = new FlameTransformation(
+				randomAffine(random), weights);
+		Point p = new Point(0.3, -0.7);
+		Point before = transformation.transformPoint(p);
+
+		FlameTransformation.Builder builder = new FlameTransformation.Builder(
+				transformation);
+		builder.setWeight(0, 0);
+		builder.setWeight(1, 1);
+		builder.build();
+
+		Point after = transformation.transformPoint(p);
+		assertEquals(before.x(), after.x(), 0, "abscisse après modification");
+		assertEquals(before.y(), after.y(), 0, "ordonnée après modification");
+		assertEquals(0.5, transformation.weight(Variation.LINEAR), 0,
+				"poids d'origine conservé");
+	}
+
+	public static void testSquaredRadiusCloseToSquaredRoot() {
+		Random random = new Random(2014);
+		double[] point = new double[2];
+		for (int t = 0; t < TRANSFORMATIONS; t++) {
+			AffineTransformation affine = randomAffine(random);
+			double[] weights = randomWeights(random);
+			FlameTransformation transformation = new FlameTransformation(
+					affine, weights);
+
+			for (int i = 0; i < POINTS; i++) {
+				Point p = new Point(6 * random.nextDouble() - 3,
+						6 * random.nextDouble() - 3);
+				Point expected = baseline(affine, weights, p, true);
+
+				point[0] = p.x();
+				point[1] = p.y();
+				transformation.transform(point);
+				// Quelques ulps, amplifiés par le sinus de r² dans la
+				// variation tourbillon
+				double tolerance = 1e-12 * (1 + Math.abs(expected.x())
+						+ Math.abs(expected.y()));
+				assertEquals(expected.x(), point[0], tolerance, "abscisse de "
+						+ p);
+				assertEquals(expected.y(), point[1], tolerance, "ordonnée de "
+						+ p);
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.flamemaker.geometry2d.AffineTransformation;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests des orbites de l'algorithme du chaos
+ */
+public final class FlameWalkerTest {
+
+	private static final Rectangle FRAME = FlamePPMMaker.TURBULENCE_FRAME;
+
+	private static final int ITERATIONS = 1000000;
+
+	/**
+	 * Une destination qui ne fait que compter les points
+	 */
+	private static final class CountingSink implements HitSink {
+		long hits = 0;
+
+		@Override
+		public void hit(double px, double py, double colorIndex) {
+			hits++;
+		}
+	}
+
+	/**
+	 * Une transformation qui envoie tout point à l'origine puis lui applique
+	 * la variation sphérique : le point obtenu n'est pas fini
+	 */
+	private static FlameTransformation toOrigin() {
+		return new FlameTransformation(new AffineTransformation(0, 0, 0, 0,
+				0, 0), new double[] { 0, 0, 1, 0, 0, 0 });
+	}
+
+	/**
+	 * @return La fractale « turbulence » augmentée de <i>extra</i>, tirée
+	 *         avec le poids <i>weight</i> (celui des autres étant 1)
+	 */
+	private static Flame turbulenceWith(FlameTransformation extra,
+			double weight) {
+		Flame turbulence = FlamePPMMaker.turbulence();
+		List<FlameTransformation> transformations = new ArrayList<FlameTransformation>();
+		double[] weights = new double[turbulence.transformationsCount() + 1];
+		for (int i = 0; i < turbulence.transformationsCount(); i++) {
+			transformations.add(turbulence.transformation(i));
+			weights[i] = 1;
+		}
+		transformations.add(extra);
+		weights[weights.length - 1] = weight;
+		return new Flame(transformations, weights);
+	}
+
+	public static void testHealthyOrbitIsNotReseeded() {
+		CountingSink sink = new CountingSink();
+		FlameWalker walker = new FlameWalker(FlamePPMMaker.turbulence(),
+				FRAME, new XoroshiroRandomSource(1), sink);
+		walker.run(ITERATIONS);
+		assertEquals(0, walker.reseeds(), "relances de la turbulence");
+	}
+
+	public static void testOrbitReachingOriginIsReseeded() {
+		double weight = 0.003;
+		Flame flame = turbulenceWith(toOrigin(), weight);
+		CountingSink sink = new CountingSink();
+		FlameWalker walker = new FlameWalker(flame, FRAME,
+				new XoroshiroRandomSource(2), sink);
+		walker.run(ITERATIONS);
+
+		// Chaque tirage de la transformation rend le point non fini
+		double p = weight / (flame.transformationsCount() - 1 + weight);
+		double expected = ITERATIONS * p;
+		double sigma = Math.sqrt(expected * (1 - p));
+		assertTrue(Math.abs(walker.reseeds() - expected) <= 5 * sigma,
+				walker.reseeds() + " relances, environ " + expected
+						+ " attendues");
+
+		// Une orbite relancée aussitôt ne perd pas d'itérations
+		assertTrue(sink.hits > 0.99 * ITERATIONS, sink.hits
+				+ " points dans la région pour " + ITERATIONS
+				+ " itérations");
+	}
+
+	public static void testOrbitWithoutAttractorIsAbandoned() {
+		// L'une meurt à chaque itération, l'autre s'échappe en quelques-unes
+		FlameTransformation[] deadly = {
+				toOrigin(),
+				new FlameTransformation(new AffineTransformation(1e3, 0, 1,
+						0, 1e3, 1), new double[] { 1, 0, 0, 0, 0, 0 }) };
+		for (FlameTransformation transformation : deadly) {
+			CountingSink sink = new CountingSink();
+			FlameWalker walker = new FlameWalker(new Flame(
+					Arrays.asList(transformation)), FRAME,
+					new XoroshiroRandomSource(3), sink);
+			walker.run(ITERATIONS);
+			long reseeds = walker.reseeds();
+			assertEquals(64, reseeds, "relances avant abandon");
+
+			walker.run(ITERATIONS);
+			assertEquals(reseeds, walker.reseeds(),
+					"aucune relance après abandon");
+			assertEquals(0, sink.hits, "aucun point d'une orbite abandonnée");
+		}
+	}
+
+	/**
+	 * @return Le nombre de points de chaque case d'une grille de 64 x 64
+	 *         cases couvrant la région, pour une orbite de la turbulence à
+	 *         <i>lanes</i> voies
+	 */
+	private static long[] histogram(int lanes, long seed) {
+		final int size = 64;
+		final long[] counts = new long[size * size];
+		HitSink sink = new HitSink() {
+			@Override
+			public void hit(double px, double py, double colorIndex) {
+				int x = (int) ((px - FRAME.left()) / FRAME.width() * size);
+				int y = (int) ((py - FRAME.bottom()) / FRAME.height() * size);
+				counts[Math.min(y, size - 1) * size + Math.min(x, size - 1)]++;
+			}
+		};
+		new FlameWalker(FlamePPMMaker.turbulence(), FRAME,
+				new XoroshiroRandomSource(seed), sink, lanes).run(ITERATIONS);
+		return counts;
+	}
+
+	/**
+	 * @return La distance en variation totale entre les répartitions de
+	 *         deux histogrammes, entre 0 et 1
+	 */
+	private static double distance(long[] first, long[] second) {
+		double firstTotal = 0, secondTotal = 0;
+		for (int i = 0; i < first.length; i++) {
+			firstTotal += first[i];
+			secondTotal += second[i];
+		}
+
+		double distance = 0;
+		for (int i = 0; i < first.length; i++) {
+			distance += Math.abs(first[i] / firstTotal - second[i]
+					/ secondTotal);
+		}
+		return distance / 2;
+	}
+
+	public static void testLanesKeepHitDistribution() {
+		long[] reference = histogram(1, 1);
+		// L'écart entre deux orbites d'une voie sert d'étalon du bruit
+		double noise = distance(reference, histogram(1, 2));
+
+		for (int lanes : new int[] { 2, 4, FlameWalker.MAX_LANES }) {
+			double distance = distance(reference, histogram(lanes, 3));
+			assertTrue(distance < 2 * noise, lanes + " voies : écart "
+					+ distance + " pour un bruit de " + noise);
+		}
+	}
+}
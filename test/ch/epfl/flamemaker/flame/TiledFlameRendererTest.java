@@ -0,0 +1,155 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.flame;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ch.epfl.flamemaker.color.Color;
+import ch.epfl.flamemaker.color.InterpolatedPalette;
+import ch.epfl.flamemaker.color.Palette;
+import ch.epfl.flamemaker.geometry2d.Rectangle;
+import ch.epfl.flamemaker.random.RandomSource;
+import ch.epfl.flamemaker.random.XoroshiroRandomSource;
+
+/**
+ * Tests du rendu par tuiles et de l'écriture et la relecture des tuiles
+ */
+public final class TiledFlameRendererTest {
+
+	private static final Palette PALETTE = new InterpolatedPalette(
+			Arrays.asList(Color.RED, Color.GREEN, Color.BLUE));
+
+	private static File newDirectory() throws IOException {
+		File directory = File.createTempFile("tiles", "");
+		directory.delete();
+		directory.mkdir();
+		directory.deleteOnExit();
+		return directory;
+	}
+
+	public static void testTilesMatchSingleAccumulator() throws IOException {
+		Flame flame = FlamePPMMaker.sharkFin();
+		Rectangle frame = FlamePPMMaker.SHARK_FIN_FRAME;
+		int width = 90, height = 70;
+		long iterations = 20L * width * height;
+
+		File directory = newDirectory();
+		TiledFlameRenderer renderer = new TiledFlameRenderer(flame, frame,
+				width, height, 32, directory);
+		// Budget d'une seule rangée de tuiles : l'orbite est rejouée par
+		// bande
+		int bands = renderer.render(iterations, 7, 1);
+		assertEquals(renderer.tilesY(), bands, "une bande par rangée");
+
+		ByteArrayOutputStream tiled = new ByteArrayOutputStream();
+		renderer.writePPM(PALETTE, Color.BLACK, tiled);
+		renderer.deleteTiles();
+		directory.delete();
+
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				frame, width, height);
+		new FlameWalker(flame, frame, new XoroshiroRandomSource(7), builder)
+				.run(iterations);
+		assertSameImage(builder.build(), tiled.toByteArray());
+	}
+
+	public static void testParallelTilesMatchMergedOrbits()
+			throws IOException {
+		Flame flame = FlamePPMMaker.sharkFin();
+		Rectangle frame = FlamePPMMaker.SHARK_FIN_FRAME;
+		int width = 90, height = 70, walkers = 3;
+		long iterations = 20L * width * height;
+
+		File directory = newDirectory();
+		TiledFlameRenderer renderer = new TiledFlameRenderer(flame, frame,
+				width, height, 32, directory);
+		ExecutorService executor = Executors.newFixedThreadPool(walkers);
+		try {
+			int bands = renderer.render(iterations, 7, 1, executor, walkers);
+			assertEquals(renderer.tilesY(), bands, "une bande par rangée");
+		} finally {
+			executor.shutdown();
+		}
+
+		ByteArrayOutputStream tiled = new ByteArrayOutputStream();
+		renderer.writePPM(PALETTE, Color.BLACK, tiled);
+		renderer.deleteTiles();
+		directory.delete();
+
+		// Les mêmes orbites, chacune dans son accumulateur entier
+		RandomSource random = new XoroshiroRandomSource(7);
+		List<FlameAccumulator.Builder> parts = new ArrayList<FlameAccumulator.Builder>();
+		for (int w = 0; w < walkers; w++) {
+			FlameAccumulator.Builder part = newBuilder(frame, width, height);
+			new FlameWalker(flame, frame, random.split(), part)
+					.run(iterations / walkers
+							+ (w < iterations % walkers ? 1 : 0));
+			parts.add(part);
+		}
+		FlameAccumulator.Builder merged = newBuilder(frame, width, height);
+		merged.mergeAll(parts);
+
+		assertSameImage(merged.build(), tiled.toByteArray());
+	}
+
+	/**
+	 * @return Un bâtisseur de l'image entière comptant ses points comme les
+	 *         tuiles
+	 */
+	private static FlameAccumulator.Builder newBuilder(Rectangle frame,
+			int width, int height) {
+		FlameAccumulator.Builder builder = new FlameAccumulator.Builder(
+				frame, width, height, AccumulatorLayout.ROW_MAJOR,
+				ColorAccumulation.RUNNING_MEAN, HitCounters.LONG);
+		builder.setBinning(false);
+		return builder;
+	}
+
+	/**
+	 * Vérifie que l'image PPM <i>image</i> est celle de l'accumulateur
+	 * <i>expected</i>
+	 */
+	private static void assertSameImage(FlameAccumulator expected,
+			byte[] image) {
+		int width = expected.width(), height = expected.height();
+		int header = image.length - 3 * width * height;
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			expected.colorRow(PALETTE, Color.BLACK, y, row);
+			for (int x = 0; x < width; x++) {
+				int offset = header + 3 * (y * width + x);
+				int rgb = (image[offset] & 0xFF) << 16
+						| (image[offset + 1] & 0xFF) << 8
+						| (image[offset + 2] & 0xFF);
+				assertEquals(row[x] & 0xFFFFFF, rgb, "pixel (" + x + ", "
+						+ y + ")");
+			}
+		}
+	}
+
+	public static void testLongCountersDoNotOverflow() {
+		AccumulatorStorage storage = HitCounters.LONG.newStorage(4,
+				ColorAccumulation.RUNNING_MEAN);
+		long many = 3L << 31;
+
+		storage.add(1, many, 0.25);
+		storage.add(1, many, 0.75);
+		storage.hit(1, 0.5);
+
+		assertEquals(2 * many + 1, storage.hits(1), "compteur sur 64 bits");
+		assertEquals(0.5, storage.colorIndex(1), 1e-12, "moyenne des couleurs");
+		assertEquals(0, storage.hits(0), "case voisine intacte");
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * @author Hadrien Milano <Sciper : 224340>
+ * @author Christophe Tafani-Dereeper <Sciper : 223529>
+ */
+
+package ch.epfl.flamemaker.random;
+
+import static ch.epfl.flamemaker.Assertions.*;
+
+import java.util.Random;
+
+/**
+ * Tests des générateurs aléatoires
+ */
+public final class RandomSourceTest {
+
+	private static final long SEED = 2012;
+
+	private static RandomSource[] sources(long seed) {
+		return new RandomSource[] { new LegacyRandomSource(seed),
+				new XoroshiroRandomSource(seed),
+				new SplittableRandomSource(seed) };
+	}
+
+	public static void testLegacyMatchesJavaUtilRandom() {
+		LegacyRandomSource source = new LegacyRandomSource(SEED);
+		Random random = new Random(SEED);
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(random.nextInt(7), source.nextInt(7), "entier " + i);
+			assertEquals(random.nextDouble(), source.nextDouble(), 0,
+					"réel " + i);
+		}
+	}
+
+	public static void testSameSeedSameSequence() {
+		RandomSource[] first = sources(SEED), second = sources(SEED);
+		for (int s = 0; s < first.length; s++) {
+			for (int i = 0; i < 1000; i++) {
+				assertEquals(first[s].nextInt(1000), second[s].nextInt(1000),
+						first[s].getClass().getSimpleName() + " : tirage " + i);
+			}
+		}
+	}
+
+	public static void testValuesInRange() {
+		for (RandomSource source : sources(SEED)) {
+			String name = source.getClass().getSimpleName();
+			for (int i = 0; i < 100000; i++) {
+				int bound = 1 + i % 17;
+				int value = source.nextInt(bound);
+				assertTrue(value >= 0 && value < bound, name + " : " + value
+						+ " hors de [0, " + bound + "[");
+				double real = source.nextDouble();
+				assertTrue(real >= 0 && real < 1, name + " : " + real
+						+ " hors de [0, 1[");
+			}
+		}
+	}
+
+	public static void testNextIntIsUniform() {
+		int bound = 3, draws = 300000;
+		for (RandomSource source : sources(SEED)) {
+			int[] counts = new int[bound];
+			for (int i = 0; i < draws; i++) {
+				counts[source.nextInt(bound)]++;
+			}
+			for (int i = 0; i < bound; i++) {
+				assertTrue(Math.abs(counts[i] - draws / bound) < 1500, source
+						.getClass().getSimpleName()
+						+ " : " + counts[i] + " tirages de " + i);
+			}
+		}
+	}
+
+	public static void testSplitGivesDistinctStreams() {
+		for (RandomSource source : sources(SEED)) {
+			RandomSource child = source.split();
+			int same = 0;
+			for (int i = 0; i < 1000; i++) {
+				if (source.nextInt(1 << 30) == child.nextInt(1 << 30)) {
+					same++;
+				}
+			}
+			assertTrue(same < 5, source.getClass().getSimpleName()
+					+ " : suites divisées trop semblables");
+		}
+	}
+}